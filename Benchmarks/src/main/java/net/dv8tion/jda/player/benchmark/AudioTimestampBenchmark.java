@@ -0,0 +1,75 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.benchmark;
+
+import net.dv8tion.jda.player.source.AudioStream;
+import net.dv8tion.jda.player.source.AudioTimestamp;
+import net.dv8tion.jda.player.source.DecoderTelemetry;
+import net.dv8tion.jda.player.source.FFmpegProgressParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+
+/**
+ * Measures turning FFmpeg's progress output into an {@link AudioTimestamp}, which streams used to do for every chunk
+ * of FFmpeg's STDerr, against the playback clock and the {@code -progress} parser that replaced it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AudioTimestampBenchmark
+{
+    public String timestamp = "00:03:25.47";
+    public String progressLine = "size=    3584kB time=00:03:25.47 bitrate=1536.0kbits/s speed=25.1x";
+    public byte[] progressReport = ("bitrate=1536.0kbits/s\ntotal_size=39403520\nout_time_us=205470000\n"
+            + "out_time_ms=205470000\nout_time=00:03:25.470000\ndup_frames=0\ndrop_frames=0\nspeed=25.1x\n"
+            + "progress=continue\n").getBytes(StandardCharsets.US_ASCII);
+    private final FFmpegProgressParser progressParser = new FFmpegProgressParser(new DecoderTelemetry());
+    private final SyntheticAudioStream stream = new SyntheticAudioStream(TimeUnit.DAYS.toMillis(1));
+
+    @Benchmark
+    public AudioTimestamp fromFFmpegTimestamp()
+    {
+        return AudioTimestamp.fromFFmpegTimestamp(timestamp);
+    }
+
+    @Benchmark
+    public AudioTimestamp fromProgressLine()
+    {
+        Matcher matcher = AudioStream.TIME_PATTERN.matcher(progressLine);
+        return matcher.find() ? AudioTimestamp.fromFFmpegTimestamp(matcher.group()) : null;
+    }
+
+    @Benchmark
+    public DecoderTelemetry progressParser()
+    {
+        progressParser.feed(progressReport, 0, progressReport.length);
+        return progressParser.getTelemetry();
+    }
+
+    @Benchmark
+    public AudioTimestamp playbackClock()
+    {
+        stream.advancePlayback(BenchmarkPlayer.FRAME_SIZE);
+        return stream.getCurrentTimestamp();
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.benchmark;
+
+import net.dv8tion.jda.player.AbstractMusicPlayer;
+import net.dv8tion.jda.player.audio.PcmRingBuffer;
+
+/**
+ * The frame production of the JDA MusicPlayer without its JDA dependency.
+ */
+public class BenchmarkPlayer extends AbstractMusicPlayer
+{
+    //20ms of 48kHz stereo PCM, the same as AudioConnection.OPUS_FRAME_SIZE * PCM_FRAME_SIZE.
+    public static final int FRAME_SIZE = 960 * PcmRingBuffer.PCM_FRAME_SIZE;
+    private byte[] buffer = new byte[FRAME_SIZE];
+
+    public boolean canProvide()
+    {
+        return hasAudioToProvide();
+    }
+
+    public byte[] provide20MsAudio()
+    {
+        return provideFrame(buffer) ? buffer : null;
+    }
+}
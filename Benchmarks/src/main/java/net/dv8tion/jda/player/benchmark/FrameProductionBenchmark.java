@@ -0,0 +1,68 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures producing one 20ms frame the way {@code MusicPlayer#provide20MsAudio()} does, fed by a synthetic stream.
+ * Tracks are short so that track changes are part of the measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameProductionBenchmark
+{
+    @Param({"0", "2000"})
+    public int prefetchLookahead;
+
+    @Param({"1.0", "0.5"})
+    public float volume;
+
+    @Param({"10000"})
+    public long trackMillis;
+
+    private BenchmarkPlayer player;
+
+    @Setup(Level.Iteration)
+    public void setup()
+    {
+        player = new BenchmarkPlayer();
+        player.setPrefetchLookahead(prefetchLookahead);
+        player.setVolume(volume);
+        player.setRepeat(true);
+        player.getAudioQueue().add(new SyntheticSource(trackMillis));
+        player.play();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown()
+    {
+        player.stop();
+    }
+
+    @Benchmark
+    public byte[] provide20MsAudio()
+    {
+        return player.provide20MsAudio();
+    }
+}
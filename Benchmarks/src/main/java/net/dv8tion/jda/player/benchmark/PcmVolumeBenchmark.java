@@ -0,0 +1,76 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.benchmark;
+
+import net.dv8tion.jda.player.audio.PcmVolume;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link PcmVolume} against the per-sample float loop the MusicPlayers used before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PcmVolumeBenchmark
+{
+    //One 20ms frame: 960 stereo samples of 2 bytes each.
+    public static final int FRAME_SIZE = 960 * 4;
+
+    @Param({"0.35", "1.5"})
+    public float volume;
+
+    private byte[] source;
+    private byte[] frame;
+    private int gain;
+
+    @Setup
+    public void setup()
+    {
+        source = new byte[FRAME_SIZE];
+        new Random(42).nextBytes(source);
+        frame = new byte[FRAME_SIZE];
+        gain = PcmVolume.toGain(volume);
+    }
+
+    @Benchmark
+    public byte[] legacyFloatLoop()
+    {
+        System.arraycopy(source, 0, frame, 0, FRAME_SIZE);
+        short sample;
+        for (int i = 0; i < frame.length; i+=2) {
+            sample = (short)((frame[i + 1] & 0xff) | (frame[i] << 8));
+            sample = (short) (sample * volume);
+            frame[i + 1] = (byte)(sample & 0xff);
+            frame[i] = (byte)((sample >> 8) & 0xff);
+        }
+        return frame;
+    }
+
+    @Benchmark
+    public byte[] fixedPointClamped()
+    {
+        System.arraycopy(source, 0, frame, 0, FRAME_SIZE);
+        PcmVolume.apply(frame, 0, FRAME_SIZE, gain);
+        return frame;
+    }
+}
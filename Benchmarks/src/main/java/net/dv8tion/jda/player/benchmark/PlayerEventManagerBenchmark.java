@@ -0,0 +1,58 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.benchmark;
+
+import net.dv8tion.jda.player.hooks.PlayerEventManager;
+import net.dv8tion.jda.player.hooks.events.PlayEvent;
+import net.dv8tion.jda.player.hooks.events.PlayerEvent;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures dispatching one event to a varying amount of registered listeners.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayerEventManagerBenchmark
+{
+    @Param({"1", "4", "16"})
+    public int listeners;
+
+    private PlayerEventManager manager;
+    private PlayerEvent event;
+
+    @Setup
+    public void setup(Blackhole blackhole)
+    {
+        manager = new PlayerEventManager();
+        for (int i = 0; i < listeners; i++)
+            manager.register(blackhole::consume);
+        event = new PlayEvent(new BenchmarkPlayer());
+    }
+
+    @Benchmark
+    public void handle()
+    {
+        manager.handle(event);
+    }
+}
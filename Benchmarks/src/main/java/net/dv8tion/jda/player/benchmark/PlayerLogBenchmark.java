@@ -0,0 +1,83 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.benchmark;
+
+import net.dv8tion.jda.player.PlayerLog;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link PlayerLog#log(PlayerLog.Level, Object)} for messages that are printed and for messages that are
+ * below the log level. Printed output is discarded so that the console doesn't skew the results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayerLogBenchmark
+{
+    private PlayerLog log;
+    private PrintStream origOut;
+    private PrintStream origErr;
+    private PlayerLog.Level origLevel;
+
+    @Setup
+    public void setup()
+    {
+        origOut = System.out;
+        origErr = System.err;
+        origLevel = PlayerLog.LEVEL;
+        PrintStream discard = new PrintStream(new OutputStream()
+        {
+            @Override
+            public void write(int b) {}
+
+            @Override
+            public void write(byte[] b, int off, int len) {}
+        });
+        System.setOut(discard);
+        System.setErr(discard);
+
+        PlayerLog.LEVEL = PlayerLog.Level.INFO;
+        log = PlayerLog.getLog("PlayerLogBenchmark");
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        System.setOut(origOut);
+        System.setErr(origErr);
+        PlayerLog.LEVEL = origLevel;
+    }
+
+    @Benchmark
+    public void printed()
+    {
+        log.info("Started playing a synthetic source");
+    }
+
+    @Benchmark
+    public void filtered()
+    {
+        log.debug("Started playing a synthetic source");
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.benchmark;
+
+import net.dv8tion.jda.player.PlayerQueue;
+import net.dv8tion.jda.player.source.AudioSource;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link PlayerQueue} against the LinkedList the players used before, for picking the next source in
+ * shuffle mode and for listing the queue by index.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayerQueueBenchmark
+{
+    @Param({"100", "10000"})
+    public int queueSize;
+
+    private final Random random = new Random(42);
+    private LinkedList<AudioSource> linkedList;
+    private PlayerQueue playerQueue;
+
+    @Setup
+    public void setup()
+    {
+        linkedList = new LinkedList<>();
+        for (int i = 0; i < queueSize; i++)
+            linkedList.add(new SyntheticSource(1000));
+        playerQueue = new PlayerQueue(linkedList);
+    }
+
+    @Benchmark
+    public AudioSource linkedListShuffleNext()
+    {
+        //Re-adding keeps the size constant between invocations.
+        AudioSource source = linkedList.remove(random.nextInt(linkedList.size()));
+        linkedList.add(source);
+        return source;
+    }
+
+    @Benchmark
+    public AudioSource playerQueueShuffleNext()
+    {
+        AudioSource source = playerQueue.pollRandom();
+        playerQueue.add(source);
+        return source;
+    }
+
+    @Benchmark
+    public int linkedListIndexedWalk()
+    {
+        return walk(linkedList);
+    }
+
+    @Benchmark
+    public int playerQueueIndexedWalk()
+    {
+        return walk(playerQueue);
+    }
+
+    @Benchmark
+    public int playerQueueSnapshotIteration()
+    {
+        int hash = 0;
+        for (AudioSource source : playerQueue.snapshot())
+            hash += System.identityHashCode(source);
+        return hash;
+    }
+
+    private static int walk(List<AudioSource> queue)
+    {
+        int hash = 0;
+        for (int i = 0; i < queue.size(); i++)
+            hash += System.identityHashCode(queue.get(i));
+        return hash;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.benchmark;
+
+import net.dv8tion.jda.player.audio.PcmRingBuffer;
+import net.dv8tion.jda.player.source.AudioStream;
+
+import java.io.IOException;
+
+/**
+ * An in-memory stream of 48kHz, big endian, signed 16bit stereo PCM. It plays a 440hz tone for the requested duration
+ * without involving any processes, files or network, so benchmarks fed by it are reproducible on any machine.
+ */
+public class SyntheticAudioStream extends AudioStream
+{
+    //One second of PCM which is repeated for the whole duration.
+    private static final byte[] TONE = createTone(440, 1000);
+
+    private final long length;
+    private volatile long position = 0;
+    private volatile boolean closed = false;
+
+    public SyntheticAudioStream(long durationMillis)
+    {
+        this.length = durationMillis * PcmRingBuffer.BYTES_PER_MILLISECOND;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (closed)
+            throw new IOException("Stream closed");
+        if (position >= length)
+            return -1;
+        return TONE[(int) (position++ % TONE.length)] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (closed)
+            throw new IOException("Stream closed");
+        long remaining = length - position;
+        if (remaining <= 0)
+            return -1;
+
+        int amount = (int) Math.min(len, remaining);
+        int copied = 0;
+        while (copied < amount)
+        {
+            int toneOffset = (int) ((position + copied) % TONE.length);
+            int chunk = Math.min(amount - copied, TONE.length - toneOffset);
+            System.arraycopy(TONE, toneOffset, b, off + copied, chunk);
+            copied += chunk;
+        }
+        position += amount;
+        return amount;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, length - position));
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        closed = true;
+    }
+
+    private static byte[] createTone(int frequency, int durationMillis)
+    {
+        int samples = durationMillis * 48;
+        byte[] pcm = new byte[samples * PcmRingBuffer.PCM_FRAME_SIZE];
+        for (int i = 0; i < samples; i++)
+        {
+            short sample = (short) (Math.sin(2 * Math.PI * frequency * i / 48000.0) * Short.MAX_VALUE * 0.8);
+            int offset = i * PcmRingBuffer.PCM_FRAME_SIZE;
+            pcm[offset] = pcm[offset + 2] = (byte) (sample >> 8);
+            pcm[offset + 1] = pcm[offset + 3] = (byte) sample;
+        }
+        return pcm;
+    }
+}
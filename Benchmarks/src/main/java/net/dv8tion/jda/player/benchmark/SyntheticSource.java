@@ -0,0 +1,61 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.benchmark;
+
+import net.dv8tion.jda.player.source.AudioInfo;
+import net.dv8tion.jda.player.source.AudioSource;
+import net.dv8tion.jda.player.source.AudioStream;
+
+import java.io.File;
+
+/**
+ * AudioSource handing out {@link SyntheticAudioStream}s, standing in for a LocalSource in benchmarks.
+ */
+public class SyntheticSource implements AudioSource
+{
+    private final long durationMillis;
+    private final AudioInfo info = new AudioInfo();
+
+    public SyntheticSource(long durationMillis)
+    {
+        this.durationMillis = durationMillis;
+    }
+
+    @Override
+    public String getSource()
+    {
+        return "synthetic:" + durationMillis;
+    }
+
+    @Override
+    public AudioInfo getInfo()
+    {
+        return info;
+    }
+
+    @Override
+    public AudioStream asStream()
+    {
+        return new SyntheticAudioStream(durationMillis);
+    }
+
+    @Override
+    public File asFile(String path, boolean deleteOnExists)
+    {
+        throw new UnsupportedOperationException("Synthetic sources only exist in memory");
+    }
+}
@@ -16,31 +16,69 @@
 
 package net.dv8tion.jda.player;
 
+import net.dv8tion.jda.player.audio.AudioMixer;
+import net.dv8tion.jda.player.audio.OggOpusReader;
+import net.dv8tion.jda.player.audio.PcmClip;
+import net.dv8tion.jda.player.audio.PcmRingBuffer;
+import net.dv8tion.jda.player.audio.PcmVolume;
 import net.dv8tion.jda.player.hooks.PlayerEventListener;
 import net.dv8tion.jda.player.hooks.PlayerEventManager;
 import net.dv8tion.jda.player.hooks.events.*;
+import net.dv8tion.jda.player.source.AudioInfo;
 import net.dv8tion.jda.player.source.AudioSource;
 import net.dv8tion.jda.player.source.AudioStream;
 import net.dv8tion.jda.player.source.AudioTimestamp;
+import net.dv8tion.jda.player.source.DecoderTelemetry;
+import net.dv8tion.jda.player.source.PrefetchingAudioStream;
+import net.dv8tion.jda.player.source.ProcessScheduler;
 
 import java.io.IOException;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 public abstract class AbstractMusicPlayer
 {
     public static final PlayerLog LOG = PlayerLog.getLog("JDAPlayer");
+    public static final int DEFAULT_PREFETCH_LOOKAHEAD = 2000;
+    //The Opus launch args make FFmpeg put 20ms of audio into every packet.
+    protected static final int OPUS_PACKET_PCM_BYTES = 20 * PcmRingBuffer.BYTES_PER_MILLISECOND;
     protected PlayerEventManager eventManager = new PlayerEventManager();
-    protected LinkedList<AudioSource> audioQueue = new LinkedList<>();
-    protected AudioSource previousAudioSource = null;
-    protected AudioSource currentAudioSource = null;
-    protected AudioStream currentAudioStream = null;
-    protected State state = State.STOPPED;
-    protected boolean autoContinue = true;
-    protected boolean shuffle = false;
-    protected boolean repeat = false;
-    protected float volume = 1.0F;
+    protected PlayerQueue audioQueue = new PlayerQueue();
+
+    //Player state. Only changed by the holder of the mailbox token, but read from any thread.
+    protected volatile AudioSource previousAudioSource = null;
+    protected volatile AudioSource currentAudioSource = null;
+    protected volatile AudioStream currentAudioStream = null;
+    protected volatile State state = State.STOPPED;
+    protected volatile long underruns = 0;
+    protected volatile long overrunNanos = 0;
+    private final PlayerMailbox mailbox = new PlayerMailbox();
+    private volatile Transition published = new Transition(0, State.STOPPED, null, null, null);
+    //The finished stream a command to move on from was already queued for.
+    private volatile AudioStream advancing = null;
+
+    protected volatile boolean autoContinue = true;
+    protected volatile boolean shuffle = false;
+    protected volatile boolean repeat = false;
+    protected volatile float volume = 1.0F;
+    protected volatile int gain = PcmVolume.UNITY_GAIN;
+    protected volatile int prefetchLookahead = DEFAULT_PREFETCH_LOOKAHEAD;
+    protected volatile int preloadSeconds = 0;
+    protected volatile boolean opusPassthrough = false;
+    protected volatile OggOpusReader opusReader = null;
+    protected volatile boolean providingOpus = false;
+
+    //Gapless handling. loadGeneration changes every time a source is loaded so that late preloads can be discarded.
+    protected volatile int loadGeneration = 0;
+    protected volatile int preloadAt = -1;
+    protected volatile boolean preloadScheduled = false;
+    protected final AtomicReference<Preload> preload = new AtomicReference<>();
+
+    //Sound effects mixed over whatever the player provides.
+    protected final AudioMixer mixer = new AudioMixer();
 
     protected enum State
     {
@@ -62,6 +100,23 @@ public abstract class AbstractMusicPlayer
         return eventManager.getListeners();
     }
 
+    public List<PlayerEventManager.ListenerStats> getListenerStats()
+    {
+        return eventManager.getListenerStats();
+    }
+
+    /**
+     * Sets the executor that player events are dispatched on. By default events are dispatched on the thread that
+     * caused them, which for Next and Finish events is the audio sending thread, so a slow listener delays audio.
+     *
+     * @param executor
+     *      The executor to dispatch events on, or null to dispatch on the calling thread.
+     */
+    public void setEventExecutor(Executor executor)
+    {
+        eventManager.setExecutor(executor);
+    }
+
     public void setRepeat(boolean repeat)
     {
         this.repeat = repeat;
@@ -80,6 +135,122 @@ public abstract class AbstractMusicPlayer
     public void setVolume(float volume)
     {
         this.volume = volume;
+        this.gain = PcmVolume.toGain(volume);
+    }
+
+    /**
+     * Sets how many milliseconds of decoded audio are read ahead of the send thread.
+     * A value of 0 disables prefetching and makes the send thread read the decoder's pipe directly.
+     * Takes effect starting with the next loaded source.
+     *
+     * @param lookaheadMillis
+     *      Milliseconds of audio to keep buffered, 0 to disable.
+     */
+    public void setPrefetchLookahead(int lookaheadMillis)
+    {
+        if (lookaheadMillis != 0 && (lookaheadMillis < 20 || lookaheadMillis > 60000))
+            throw new IllegalArgumentException("Prefetch lookahead must be 0 or between 20 and 60000 milliseconds");
+        this.prefetchLookahead = lookaheadMillis;
+    }
+
+    public int getPrefetchLookahead()
+    {
+        return prefetchLookahead;
+    }
+
+    /**
+     * The amount of times the send thread asked for a frame that the prefetch buffer could not fully provide.
+     *
+     * @return Total underruns over the lifetime of this player.
+     */
+    public long getUnderrunCount()
+    {
+        AudioStream stream = currentAudioStream;
+        if (stream instanceof PrefetchingAudioStream)
+            return underruns + ((PrefetchingAudioStream) stream).getUnderrunCount();
+        return underruns;
+    }
+
+    /**
+     * How long the prefetch workers of this player were held up by a full prefetch buffer, see
+     * {@link PrefetchingAudioStream#getOverrunNanos()}.
+     *
+     * @return Total time over the lifetime of this player, in nanoseconds.
+     */
+    public long getOverrunNanos()
+    {
+        AudioStream stream = currentAudioStream;
+        if (stream instanceof PrefetchingAudioStream)
+            return overrunNanos + ((PrefetchingAudioStream) stream).getOverrunNanos();
+        return overrunNanos;
+    }
+
+    /**
+     * Enables Opus passthrough. Sources are then played as Opus encoded by FFmpeg, which is sent as is instead of
+     * being encoded frame by frame in the JVM. PCM is still used while the volume is not 1.0, as volume can only be
+     * applied to PCM. The mode is picked whenever a source is loaded, so enabling this or changing the volume takes
+     * effect starting with the next loaded source.
+     *
+     * @param enabled
+     *      True to play sources as Opus whenever possible.
+     * @throws UnsupportedOperationException
+     *      If this player can only send PCM.
+     */
+    public void setOpusPassthrough(boolean enabled)
+    {
+        if (enabled && !supportsOpus())
+            throw new UnsupportedOperationException("This player can only provide PCM audio");
+        this.opusPassthrough = enabled;
+    }
+
+    public boolean isOpusPassthrough()
+    {
+        return opusPassthrough;
+    }
+
+    /**
+     * Whether the last frame returned by {@link #provideAudio(byte[])} was an Opus packet rather than PCM.
+     *
+     * @return True if the last provided frame was Opus.
+     */
+    public boolean isProvidingOpus()
+    {
+        return providingOpus;
+    }
+
+    /**
+     * Plays a clip over the current audio, like a sound effect over music. The music keeps playing and no decoder
+     * is started. Effects also play while the player is paused or stopped, which makes the player provide frames
+     * for as long as an effect is playing.
+     * <p>
+     * The player's volume doesn't apply to effects, only the volume provided here. Effects can only be mixed into
+     * PCM, so while an effect is playing no source is started with Opus passthrough. A source that already plays
+     * with Opus passthrough keeps doing so: the effect keeps moving but isn't heard over it, and is heard again once
+     * the player provides PCM, like over the next source. Switching the current source over to PCM would mean
+     * restarting its decoder at the current position, which costs a process launch and a seek, can't be done for
+     * live streams, and is audible as a gap. Players that play effects often should leave Opus passthrough disabled.
+     *
+     * @param clip
+     *      The clip to play, usually shared between players with {@link PcmClip#load(net.dv8tion.jda.player.source.AudioSource)}.
+     * @param volume
+     *      The volume of the effect, 1.0 being unchanged.
+     * @return The playing effect, which can be used to change its volume or stop it early.
+     * @throws IllegalStateException
+     *      If the player already plays {@link AudioMixer#getMaxInputs()} effects.
+     */
+    public AudioMixer.Input playEffect(PcmClip clip, float volume)
+    {
+        return mixer.play(clip, volume);
+    }
+
+    public void stopEffects()
+    {
+        mixer.stopAll();
+    }
+
+    public AudioMixer getMixer()
+    {
+        return mixer;
     }
 
     public void setShuffle(boolean shuffle)
@@ -87,6 +258,27 @@ public abstract class AbstractMusicPlayer
         this.shuffle = shuffle;
     }
 
+    /**
+     * Enables the "preload next" mode. When the current source has {@code seconds} or less left, the stream
+     * for the next source in the queue is started in the background so that the switch happens without waiting
+     * on youtube-dl or FFmpeg startup.
+     * <br>Only sources with a known duration are preloaded. Takes effect starting with the next loaded source.
+     *
+     * @param seconds
+     *      How long before the end of the current source to start the next one, 0 to disable.
+     */
+    public void setPreloadNext(int seconds)
+    {
+        if (seconds < 0)
+            throw new IllegalArgumentException("Cannot preload a negative amount of seconds before the end of a source");
+        this.preloadSeconds = seconds;
+    }
+
+    public int getPreloadNext()
+    {
+        return preloadSeconds;
+    }
+
     public boolean isShuffle()
     {
         return shuffle;
@@ -94,20 +286,28 @@ public abstract class AbstractMusicPlayer
 
     public void reload(boolean autoPlay)
     {
-        reload0(autoPlay, true);
+        command(() -> reload0(autoPlay, true));
     }
 
     public void skipToNext()
     {
-        AudioSource skipped = currentAudioSource;
-        playNext(false);
+        command(() ->
+        {
+            AudioSource skipped = currentAudioSource;
+            playNext(false);
 
-        eventManager.handle(new SkipEvent(this, skipped));
-        if (state == State.STOPPED)
-            eventManager.handle(new FinishEvent(this));
+            eventManager.handle(new SkipEvent(this, skipped));
+            if (state == State.STOPPED)
+                eventManager.handle(new FinishEvent(this));
+        });
     }
 
-    public LinkedList<AudioSource> getAudioQueue()
+    /**
+     * The queue of sources to play next. It can be modified from any thread, also while the player is running.
+     *
+     * @return The queue of this player.
+     */
+    public PlayerQueue getAudioQueue()
     {
         return audioQueue;
     }
@@ -124,32 +324,100 @@ public abstract class AbstractMusicPlayer
 
     public AudioTimestamp getCurrentTimestamp()
     {
-        if (currentAudioStream != null)
-            return currentAudioStream.getCurrentTimestamp();
-        else
-            return null;
+        AudioStream stream = currentAudioStream;
+        return stream != null ? stream.getCurrentTimestamp() : null;
+    }
+
+    /**
+     * A view of the player: state, sources and position belong to the same moment. The queue, volume, repeat and
+     * shuffle are read right after that and might already include later changes.
+     * Cheap enough to be polled by dashboards, it takes no locks and never waits for a running command.
+     *
+     * @return An immutable snapshot of this player.
+     */
+    public PlayerSnapshot getSnapshot()
+    {
+        Transition current = published;
+        AudioTimestamp timestamp = current.stream != null ? current.stream.getCurrentTimestamp() : null;
+        return new PlayerSnapshot(current.version, current.state == State.PLAYING, current.state == State.PAUSED,
+                current.source, current.previousSource, timestamp, audioQueue.snapshot(), volume, repeat, shuffle);
+    }
+
+    /**
+     * The progress of the decoder of the current source. See {@link #isDecoderFallingBehind()} for whether it keeps
+     * up with playback.
+     *
+     * @return The decoder's telemetry, or null if nothing is playing or the current stream has no FFmpeg decoder.
+     */
+    public DecoderTelemetry getDecoderTelemetry()
+    {
+        AudioStream stream = currentAudioStream;
+        return stream != null ? stream.getDecoderTelemetry() : null;
+    }
+
+    /**
+     * Whether the decoder of the current source is about to fall behind playback, judged by how much decoded audio
+     * is ahead of what was played. Warns before the prefetch buffer runs dry.
+     *
+     * @return True if the current stream's decoder reports less than {@link DecoderTelemetry#LOW_LEAD_MILLIS} ahead.
+     */
+    public boolean isDecoderFallingBehind()
+    {
+        AudioStream stream = currentAudioStream;
+        DecoderTelemetry telemetry = stream != null ? stream.getDecoderTelemetry() : null;
+        return telemetry != null && telemetry.isFallingBehind(stream.getCurrentTimestamp());
     }
 
     public void play()
     {
-        play0(true);
+        command(() -> play0(true));
+    }
+
+    /**
+     * Moves playback of the current source to the provided position.
+     * <p>
+     * If the current stream already has the audio at that position, like a track served from the PCM cache or a
+     * position within the prefetched audio, the stream just moves there. Otherwise only a new FFmpeg is started,
+     * which seeks in its input before decoding: in the file for local sources, with HTTP range requests on the media
+     * URL for remote sources.
+     *
+     * @param position
+     *      The position in the current source.
+     * @throws IllegalStateException
+     *      If the player is stopped.
+     * @throws UnsupportedOperationException
+     *      If the current source can't be started at a position, like a live stream.
+     */
+    public void seek(AudioTimestamp position)
+    {
+        if (position == null)
+            throw new NullPointerException("Cannot seek to a null position");
+
+        command(() -> seek0(position));
     }
 
     public void pause()
     {
-        if (state == State.PAUSED)
-            return;
+        command(() ->
+        {
+            if (state == State.PAUSED)
+                return;
 
-        if (state == State.STOPPED)
-            throw new IllegalStateException("Cannot pause a stopped player!");
+            if (state == State.STOPPED)
+                throw new IllegalStateException("Cannot pause a stopped player!");
 
-        state = State.PAUSED;
-        eventManager.handle(new PauseEvent(this));
+            state = State.PAUSED;
+            eventManager.handle(new PauseEvent(this));
+        });
     }
 
     public void stop()
     {
-        stop0(true);
+        command(() ->
+        {
+            stop0(true);
+            discardPreload();
+        });
     }
 
     public boolean isPlaying()
@@ -167,8 +435,81 @@ public abstract class AbstractMusicPlayer
         return state == State.STOPPED;
     }
 
+    /**
+     * Whether the send handler should ask for frames: while playing, and while effects are playing over a paused or
+     * stopped player.
+     *
+     * @return True if {@link #provideAudio(byte[])} may return a frame.
+     */
+    protected boolean hasAudioToProvide()
+    {
+        return state == State.PLAYING || mixer.isActive();
+    }
+
     // ========= Internal Functions ==========
 
+    /**
+     * Runs a control command through the mailbox, so that it never overlaps with another command or with the send
+     * thread moving on to the next source. Waits until the command ran and rethrows whatever it threw.
+     * Commands issued from within a command, like by a listener of an event it fired, run right away. Commands
+     * issued from the send thread run on another thread after the current frame, the caller doesn't wait for them.
+     *
+     * @param task
+     *      The command. Changes the player state through the protected internals.
+     */
+    protected void command(Runnable task)
+    {
+        mailbox.execute(published(task));
+    }
+
+    //Like command(Runnable), but never waits. Exceptions are only logged.
+    private void commandLater(Runnable task)
+    {
+        mailbox.submit(published(task));
+    }
+
+    private Runnable published(Runnable task)
+    {
+        return () ->
+        {
+            try
+            {
+                task.run();
+            }
+            finally
+            {
+                publish();
+            }
+        };
+    }
+
+    //Only while holding the mailbox token, the single writer.
+    private void publish()
+    {
+        Transition last = published;
+        if (last.state == state && last.source == currentAudioSource && last.stream == currentAudioStream
+                && last.previousSource == previousAudioSource)
+            return;
+        published = new Transition(last.version + 1, state, currentAudioSource, previousAudioSource, currentAudioStream);
+    }
+
+    protected void seek0(AudioTimestamp position)
+    {
+        AudioSource source = currentAudioSource;
+        AudioStream stream = currentAudioStream;
+        if (state == State.STOPPED || source == null || stream == null)
+            throw new IllegalStateException("Cannot seek in a stopped player!");
+
+        if (!stream.seek(position))
+        {
+            AudioStream seeked = openStream(source, position);
+            if (seeked == null)
+                throw new UnsupportedOperationException("The current source can't be started at a position");
+            replaceStream(stream, seeked);
+        }
+        eventManager.handle(new SeekEvent(this, position));
+    }
+
     protected void play0(boolean fireEvent)
     {
         if (state == State.PLAYING)
@@ -182,10 +523,11 @@ public abstract class AbstractMusicPlayer
             return;
         }
 
-        if (audioQueue.isEmpty())
+        AudioSource source = audioQueue.poll();
+        if (source == null)
             throw new IllegalStateException("MusicPlayer: The audio queue is empty! Cannot start playing.");
 
-        loadFromSource(audioQueue.removeFirst());
+        loadFromQueue(source, takePreload(source));
         state = State.PLAYING;
 
         if (fireEvent)
@@ -198,9 +540,16 @@ public abstract class AbstractMusicPlayer
             return;
 
         state = State.STOPPED;
+        AudioStream stream = currentAudioStream;
         try
         {
-            currentAudioStream.close();
+            if (stream instanceof PrefetchingAudioStream)
+            {
+                underruns += ((PrefetchingAudioStream) stream).getUnderrunCount();
+                overrunNanos += ((PrefetchingAudioStream) stream).getOverrunNanos();
+            }
+            if (stream != null)
+                stream.close();
         }
         catch (IOException e)
         {
@@ -211,6 +560,8 @@ public abstract class AbstractMusicPlayer
             previousAudioSource = currentAudioSource;
             currentAudioSource = null;
             currentAudioStream = null;
+            opusReader = null;
+            providingOpus = false;
         }
 
         if (fireEvent)
@@ -234,23 +585,24 @@ public abstract class AbstractMusicPlayer
     protected void playNext(boolean fireEvent)
     {
         stop0(false);
-        if (audioQueue.isEmpty())
+        //In shuffle mode this is the source the preloader peeked at, unless it was removed from the queue since.
+        AudioSource source = shuffle ? audioQueue.pollRandom() : audioQueue.poll();
+        //If the next source was already started in the background, use it.
+        playNext(source, source != null ? takePreload(source) : null, fireEvent);
+    }
+
+    //Plays a source that was just taken out of the queue, or finishes if there was none.
+    private void playNext(AudioSource source, AudioStream preloadedStream, boolean fireEvent)
+    {
+        if (source == null)
         {
+            discardPreload();
             if (fireEvent)
                 eventManager.handle(new FinishEvent(this));
             return;
         }
 
-        AudioSource source;
-        if (shuffle)
-        {
-            Random rand = new Random();
-            source = audioQueue.remove(rand.nextInt(audioQueue.size()));
-        }
-        else
-            source = audioQueue.removeFirst();
-        loadFromSource(source);
-
+        loadFromQueue(source, preloadedStream);
         play0(false);
         if (fireEvent)
             eventManager.handle(new NextEvent(this));
@@ -274,10 +626,421 @@ public abstract class AbstractMusicPlayer
             stop0(true);
     }
 
+    /**
+     * Whether the send handler of this player can send Opus packets as they are. Players that can override this.
+     *
+     * @return True if {@link #provideAudio(byte[])} may return Opus packets.
+     */
+    protected boolean supportsOpus()
+    {
+        return false;
+    }
+
+    protected boolean canPassthroughOpus()
+    {
+        return opusPassthrough && gain == PcmVolume.UNITY_GAIN && !mixer.isActive();
+    }
+
     protected void loadFromSource(AudioSource source)
     {
-        AudioStream stream = source.asStream();
+        loadFromSource(source, null);
+    }
+
+    //Puts a source that can't be opened back at the front of the queue, so that playing it can be tried again.
+    private void loadFromQueue(AudioSource source, AudioStream preloadedStream)
+    {
+        try
+        {
+            loadFromSource(source, preloadedStream);
+        }
+        catch (IllegalStateException e)
+        {
+            audioQueue.add(0, source);
+            throw e;
+        }
+    }
+
+    /**
+     * Makes the source the current one, with the preloaded stream if there is one or a newly opened one otherwise.
+     *
+     * @throws IllegalStateException
+     *      If no stream could be opened for the source, like when its decoder wasn't admitted in time.
+     */
+    protected void loadFromSource(AudioSource source, AudioStream preloadedStream)
+    {
+        discardPreload();
+        AudioStream stream = preloadedStream != null ? preloadedStream : openStream(source);
+        if (stream == null)
+            throw new IllegalStateException("Could not open a stream for " + source.getSource());
+        //It was started behind the sources that were playing back then, now it is the one playing.
+        if (preloadedStream != null)
+            stream.promote(ProcessScheduler.Priority.PLAYBACK);
+        int generation = ++loadGeneration;
+        preloadAt = -1;
+        preloadScheduled = false;
         currentAudioSource = source;
         currentAudioStream = stream;
+        opusReader = stream.isOpus() ? new OggOpusReader(stream) : null;
+
+        if (preloadSeconds > 0)
+        {
+            //Figuring out the duration might mean launching youtube-dl, so never do it on the calling thread.
+            try
+            {
+                AudioStream.getWorkerPool().submit("MusicPlayer preload timer", () ->
+                {
+                    AudioInfo info = source.getInfo();
+                    if (info == null || info.isLive() || info.getDuration() == null || generation != loadGeneration)
+                        return;
+                    preloadAt = Math.max(0, info.getDuration().getTotalSeconds() - preloadSeconds);
+                });
+            }
+            catch (RejectedExecutionException e)
+            {
+                //The next source then starts once this one ended, like without preloading.
+                LOG.debug("No worker free to time the preload of " + source.getSource());
+            }
+        }
+    }
+
+    protected AudioStream openStream(AudioSource source)
+    {
+        return openStream(source, null);
+    }
+
+    /**
+     * @param position
+     *      Where to start the source, or null for the beginning.
+     */
+    protected AudioStream openStream(AudioSource source, AudioTimestamp position)
+    {
+        AudioStream stream = null;
+        if (canPassthroughOpus())
+            stream = position == null ? source.asOpusStream() : source.asOpusStream(position);
+        if (stream == null)
+            stream = position == null ? source.asStream() : source.asStream(position);
+        if (stream != null && prefetchLookahead > 0 && !stream.isBuffered())
+        {
+            try
+            {
+                stream = new PrefetchingAudioStream(stream, prefetchLookahead);
+            }
+            catch (RejectedExecutionException e)
+            {
+                //Reading the pipe on the send thread beats not playing at all.
+                LOG.warn("No worker free to prefetch " + source.getSource() + ", reading it directly");
+            }
+        }
+        return stream;
+    }
+
+    //Swaps the stream of the current source, keeping everything else about the loaded source.
+    protected void replaceStream(AudioStream previous, AudioStream stream)
+    {
+        if (previous instanceof PrefetchingAudioStream)
+        {
+            underruns += ((PrefetchingAudioStream) previous).getUnderrunCount();
+            overrunNanos += ((PrefetchingAudioStream) previous).getOverrunNanos();
+        }
+        opusReader = stream.isOpus() ? new OggOpusReader(stream) : null;
+        currentAudioStream = stream;
+        closeQuietly(previous);
+    }
+
+    /**
+     * Produces the next frame of PCM for the send handler: reads it, pads a short read with silence and applies
+     * the volume. Only for players that don't support Opus passthrough, see {@link #provideAudio(byte[])}.
+     *
+     * @param buffer
+     *      The frame buffer to fill.
+     * @return True if the buffer holds a frame to send, false if there is nothing to send.
+     */
+    protected boolean provideFrame(byte[] buffer)
+    {
+        return provideAudio(buffer) != null;
+    }
+
+    /**
+     * Produces the next 20ms frame for the send handler. That's either the provided PCM buffer, filled and with the
+     * volume applied, or an Opus packet if the current source is played with Opus passthrough.
+     * {@link #isProvidingOpus()} tells which of the two was returned.
+     * <p>
+     * If the current source ends and moving on is cheap, like switching to a preloaded source or stopping at the end of
+     * the queue, the player moves on immediately and, if it is still playing afterwards, provides this same frame from
+     * the new stream. This is what lets a preloaded source start on the frame right after the previous one ended.
+     * Anything that has to open a new stream runs as a command on another thread instead.
+     * <p>
+     * Effects started with {@link #playEffect(PcmClip, float)} are mixed into PCM frames, or into silence if the
+     * player has nothing to provide itself.
+     *
+     * <p>
+     * Frames and control commands never overlap, so a frame never sees a half applied command. If a command is running
+     * right now, this frame is skipped instead of waiting for it. Commands are never run on the send thread.
+     *
+     * @param pcmBuffer
+     *      The PCM frame buffer to fill.
+     * @return The frame to send, or null if there is nothing to send.
+     */
+    protected byte[] provideAudio(byte[] pcmBuffer)
+    {
+        if (!mailbox.tryAcquireFrame())
+            return null;
+        try
+        {
+            byte[] frame = provideAudio0(pcmBuffer);
+            return mixEffects(frame, pcmBuffer);
+        }
+        finally
+        {
+            mailbox.releaseFrame();
+        }
+    }
+
+    private byte[] provideAudio0(byte[] pcmBuffer)
+    {
+        AudioStream stream = currentAudioStream;
+        if (state != State.PLAYING || stream == null)
+            return null;
+        try
+        {
+            checkPreload();
+            byte[] frame = readAudio(pcmBuffer);
+            if (frame != null || !isCurrentStreamFinished())
+                return frame;
+            //A stream replaced by a seek ends as soon as it is closed.
+            if (stream != currentAudioStream)
+                return null;
+            if (!advanceNow())
+            {
+                advanceLater(stream);
+                return null;
+            }
+
+            publish();
+            if (state == State.PLAYING && currentAudioStream != null)
+                return readAudio(pcmBuffer);
+            return null;
+        }
+        catch (IOException e)
+        {
+            if (stream != currentAudioStream)
+                return null;
+            LOG.debug("A source closed unexpectantly? Oh well I guess...");
+            if (!advanceNow())
+            {
+                advanceLater(stream);
+                return null;
+            }
+            publish();
+            return null;
+        }
+    }
+
+    //Moves on from a finished source like sourceFinished(), but only if that doesn't open a stream, which might mean
+    // waiting on youtube-dl and FFmpeg. Runs on the send thread, so nothing in here waits for a lock. The next source
+    // only leaves the queue if it is the preloaded one, checked and removed in one step so that a concurrent change
+    // of the queue can't slip in another source.
+    private boolean advanceNow()
+    {
+        if (!autoContinue)
+        {
+            stop0(true);
+            return true;
+        }
+        if (repeat)
+            return false;
+
+        if (audioQueue.isEmpty())
+        {
+            //Anything queued from here on is queued after the player finished.
+            stop0(false);
+            playNext(null, null, true);
+            return true;
+        }
+
+        //Commands don't run during a frame, and the preloader only fills an empty slot, so this stays the preload.
+        Preload ready = preload.get();
+        if (ready == null || ready.generation != loadGeneration || !isPlayable(ready.stream)
+                || !audioQueue.pollIfNext(ready.source, shuffle))
+            return false;
+        preload.set(null);
+        stop0(false);
+        playNext(ready.source, ready.stream, true);
+        return true;
+    }
+
+    private void advanceLater(AudioStream finished)
+    {
+        if (advancing == finished)
+            return;
+        advancing = finished;
+        commandLater(() ->
+        {
+            //Unless a command already moved on.
+            if (currentAudioStream == finished)
+                sourceFinished();
+        });
+    }
+
+    private byte[] mixEffects(byte[] frame, byte[] pcmBuffer)
+    {
+        if (!mixer.isActive())
+            return frame;
+
+        if (frame == null)
+        {
+            //Nothing playing, or the stream is starved. The effects play over silence.
+            providingOpus = false;
+            return mixer.mix(pcmBuffer, 0, pcmBuffer.length, false) ? pcmBuffer : null;
+        }
+        if (providingOpus)
+        {
+            mixer.skip(OPUS_PACKET_PCM_BYTES);
+            return frame;
+        }
+        mixer.mix(frame, 0, frame.length, true);
+        return frame;
+    }
+
+    private byte[] readAudio(byte[] pcmBuffer) throws IOException
+    {
+        //Only what is handed out here moves the playback position, silence padding and starved frames don't.
+        AudioStream stream = currentAudioStream;
+        OggOpusReader reader = opusReader;
+        if (reader != null)
+        {
+            //The reader reuses the array, it is sent before the next frame is read.
+            byte[] packet = reader.readPacket();
+            providingOpus = packet != null;
+            if (packet != null)
+                stream.advancePlayback(OPUS_PACKET_PCM_BYTES);
+            return packet;
+        }
+
+        providingOpus = false;
+        int amountRead = stream.read(pcmBuffer, 0, pcmBuffer.length);
+        if (amountRead < 0)
+            return null;
+
+        stream.advancePlayback(amountRead);
+
+        if (amountRead < pcmBuffer.length)
+            Arrays.fill(pcmBuffer, amountRead, pcmBuffer.length, (byte) 0);
+        PcmVolume.apply(pcmBuffer, 0, pcmBuffer.length, gain);
+        return pcmBuffer;
+    }
+
+    private boolean isCurrentStreamFinished()
+    {
+        //A PCM read only returns null at the end of the stream, an Opus read also when no full packet is buffered yet.
+        OggOpusReader reader = opusReader;
+        return reader == null || reader.isFinished();
+    }
+
+    protected void checkPreload()
+    {
+        int at = preloadAt;
+        if (at < 0 || preloadScheduled || repeat)
+            return;
+
+        AudioTimestamp timestamp = currentAudioStream.getCurrentTimestamp();
+        if (timestamp == null || timestamp.getTotalSeconds() < at)
+            return;
+
+        preloadScheduled = true;
+        int generation = loadGeneration;
+        try
+        {
+            AudioStream.getWorkerPool().submit("MusicPlayer preloader", () -> preloadNext(generation));
+        }
+        catch (RejectedExecutionException e)
+        {
+            LOG.debug("No worker free to preload the next source");
+        }
+    }
+
+    protected void preloadNext(int generation)
+    {
+        AudioSource next = shuffle ? audioQueue.peekRandom() : audioQueue.peek();
+        if (next == null)
+            return;
+
+        //Runs behind the decoders of players that are waiting on audio right now.
+        AudioStream stream = ProcessScheduler.runWith(ProcessScheduler.Priority.PREFETCH, () -> openStream(next));
+        if (stream == null)
+            return;
+        if (generation != loadGeneration || !preload.compareAndSet(null, new Preload(generation, next, stream)))
+            closeQuietly(stream);
+        else
+            LOG.debug("Preloaded next source: " + next.getSource());
+    }
+
+    protected AudioStream takePreload(AudioSource source)
+    {
+        Preload next = preload.get();
+        if (next == null || next.source != source || next.generation != loadGeneration || !preload.compareAndSet(next, null))
+            return null;
+        if (isPlayable(next.stream))
+            return next.stream;
+        closeQuietly(next.stream);
+        return null;
+    }
+
+    //The volume might have changed or an effect started since the stream was preloaded as Opus.
+    private boolean isPlayable(AudioStream preloadedStream)
+    {
+        return !preloadedStream.isOpus() || canPassthroughOpus();
+    }
+
+    protected void discardPreload()
+    {
+        Preload next = preload.getAndSet(null);
+        if (next != null)
+            closeQuietly(next.stream);
+    }
+
+    private static void closeQuietly(AudioStream stream)
+    {
+        try
+        {
+            stream.close();
+        }
+        catch (IOException e)
+        {
+            LOG.log(e);
+        }
+    }
+
+    //What getSnapshot() reads. Replaced as a whole so that readers never see half of a state change.
+    private static final class Transition
+    {
+        private final long version;
+        private final State state;
+        private final AudioSource source;
+        private final AudioSource previousSource;
+        private final AudioStream stream;
+
+        private Transition(long version, State state, AudioSource source, AudioSource previousSource, AudioStream stream)
+        {
+            this.version = version;
+            this.state = state;
+            this.source = source;
+            this.previousSource = previousSource;
+            this.stream = stream;
+        }
+    }
+
+    protected static final class Preload
+    {
+        protected final int generation;
+        protected final AudioSource source;
+        protected final AudioStream stream;
+
+        protected Preload(int generation, AudioSource source, AudioStream stream)
+        {
+            this.generation = generation;
+            this.source = source;
+            this.stream = stream;
+        }
     }
 }
@@ -0,0 +1,191 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serializes the control commands of a player with its audio sending thread, without locks.
+ * <p>
+ * Commands are queued and run by a thread that holds the drain token, so only one thread changes the player at a
+ * time and commands run in the order they were submitted. A command thread takes the token if it is free and runs the
+ * queue itself. The send thread only ever tries to take the token for a frame and never waits for it, and it never
+ * runs commands: whatever was queued while it held the token is handed to a drain thread once the frame is done.
+ */
+final class PlayerMailbox
+{
+    private static final AtomicInteger threadCount = new AtomicInteger(0);
+    private static final ExecutorService DRAINER = Executors.newCachedThreadPool(r ->
+    {
+        Thread t = new Thread(r, "PlayerMailbox drainer " + threadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final ConcurrentLinkedQueue<Command> commands = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean token = new AtomicBoolean(false);
+    private volatile Thread owner = null;
+    //Whether the owner is the send thread providing a frame. Only accessed by the owner.
+    private boolean inFrame = false;
+
+    /**
+     * Runs the command on a thread that holds the token and waits for it to finish.
+     * Exceptions thrown by the command are rethrown to the caller.
+     */
+    void execute(Runnable task)
+    {
+        if (owner == Thread.currentThread())
+        {
+            //Called from within a frame, like a listener that reacts to the end of a source by skipping. Nobody can
+            // wait on the send thread, so it runs once the frame is done.
+            if (inFrame)
+            {
+                submit(task);
+                return;
+            }
+            //Called from within a command.
+            task.run();
+            return;
+        }
+
+        Command command = new Command(task, false);
+        commands.add(command);
+        drain();
+        command.await();
+    }
+
+    /**
+     * Queues the command without waiting for it. Exceptions thrown by the command are logged.
+     */
+    void submit(Runnable task)
+    {
+        commands.add(new Command(task, true));
+        //The owner picks it up before it lets go of the token.
+        if (owner != Thread.currentThread())
+            handOff();
+    }
+
+    /**
+     * Takes the token for the send thread if no other thread holds it. Never blocks.
+     *
+     * @return True if the calling thread now holds the token and has to {@link #releaseFrame()} it.
+     */
+    boolean tryAcquireFrame()
+    {
+        if (!tryAcquire())
+            return false;
+        inFrame = true;
+        return true;
+    }
+
+    void releaseFrame()
+    {
+        inFrame = false;
+        unlock();
+        //Anything queued meanwhile has a caller waiting on it that might have missed the token.
+        if (!commands.isEmpty())
+            handOff();
+    }
+
+    private boolean tryAcquire()
+    {
+        if (!token.compareAndSet(false, true))
+            return false;
+        owner = Thread.currentThread();
+        return true;
+    }
+
+    private void drain()
+    {
+        while (!commands.isEmpty() && tryAcquire())
+        {
+            try
+            {
+                Command command;
+                while ((command = commands.poll()) != null)
+                    command.run();
+            }
+            finally
+            {
+                unlock();
+            }
+        }
+    }
+
+    private void handOff()
+    {
+        DRAINER.execute(this::drain);
+    }
+
+    private void unlock()
+    {
+        owner = null;
+        token.set(false);
+    }
+
+    private static final class Command
+    {
+        private final Runnable task;
+        private final boolean detached;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private Command(Runnable task, boolean detached)
+        {
+            this.task = task;
+            this.detached = detached;
+        }
+
+        private void run()
+        {
+            try
+            {
+                task.run();
+                done.complete(null);
+            }
+            catch (Throwable t)
+            {
+                //Nobody waits for a detached command to rethrow it to.
+                if (detached)
+                    AbstractMusicPlayer.LOG.log(t);
+                done.completeExceptionally(t);
+            }
+        }
+
+        private void await()
+        {
+            try
+            {
+                done.join();
+            }
+            catch (CompletionException e)
+            {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw e;
+            }
+        }
+    }
+}
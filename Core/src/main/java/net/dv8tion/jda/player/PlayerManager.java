@@ -0,0 +1,338 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player;
+
+import net.dv8tion.jda.player.audio.PcmBufferPool;
+import net.dv8tion.jda.player.hooks.PlayerEventListener;
+import net.dv8tion.jda.player.source.ProcessScheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Owns the players of many guilds and the resources they share.
+ * <p>
+ * All players of a manager dispatch their events on one shared executor and borrow their prefetch buffers from one
+ * {@link PcmBufferPool}. The {@link ProcessScheduler} installed by the manager caps the FFmpeg, ffprobe and
+ * youtube-dl processes running at once across all guilds, so a burst of guilds pressing play queues up for a moment
+ * instead of starting thousands of processes, with playback going ahead of prefetching, metadata and imports.
+ * Players that haven't been playing or used for the idle timeout are stopped and dropped.
+ * <p>
+ * The scheduler and the buffer pool are installed as the process wide defaults, so there should be one manager per JVM.
+ *
+ * @param <P>
+ *      The type of player, like the JDA or D4J MusicPlayer.
+ */
+public class PlayerManager<P extends AbstractMusicPlayer>
+{
+    public static final int DEFAULT_MAX_PROCESSES = 512;
+    public static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+    public static final long DEFAULT_BUFFER_POOL_BYTES = 64L * 1024 * 1024;
+
+    private final Function<String, P> playerFactory;
+    private final ConcurrentHashMap<String, ManagedPlayer<P>> players = new ConcurrentHashMap<>();
+    private final ProcessScheduler scheduler;
+    private final PcmBufferPool bufferPool;
+    private final ExecutorService eventExecutor;
+    private final ScheduledExecutorService janitor;
+    private final AtomicLong evictions = new AtomicLong(0);
+    private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private volatile BiConsumer<String, P> evictionListener = null;
+
+    /**
+     * Creates a manager with the default limits.
+     *
+     * @param playerFactory
+     *      Creates the player of a guild, given the guild's id.
+     */
+    public PlayerManager(Function<String, P> playerFactory)
+    {
+        this(playerFactory, DEFAULT_MAX_PROCESSES);
+    }
+
+    /**
+     * @param playerFactory
+     *      Creates the player of a guild, given the guild's id.
+     * @param maxProcesses
+     *      The maximum amount of processes running at once, over all guilds. Every playing or preloaded source counts
+     *      as one. The caps of the single priority classes can be changed through {@link #getProcessScheduler()}.
+     */
+    public PlayerManager(Function<String, P> playerFactory, int maxProcesses)
+    {
+        if (playerFactory == null)
+            throw new NullPointerException("Cannot create players with a null factory");
+
+        this.playerFactory = playerFactory;
+        this.scheduler = new ProcessScheduler(maxProcesses);
+        this.bufferPool = new PcmBufferPool(DEFAULT_BUFFER_POOL_BYTES);
+        ProcessScheduler.setDefault(scheduler);
+        PcmBufferPool.setDefault(bufferPool);
+
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        this.eventExecutor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), r ->
+        {
+            Thread t = new Thread(r, "PlayerManager event dispatcher " + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.janitor = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread t = new Thread(r, "PlayerManager idle eviction");
+            t.setDaemon(true);
+            return t;
+        });
+        janitor.scheduleWithFixedDelay(this::evictIdle, 30, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * The player of the guild, created if the guild has none yet. Getting a player counts as using it, so it
+     * won't be evicted for another idle timeout.
+     *
+     * @param guildId
+     *      The id of the guild.
+     * @return The player of the guild.
+     */
+    public P getPlayer(String guildId)
+    {
+        if (guildId == null)
+            throw new NullPointerException("Cannot get the player of a null guild id");
+
+        //Touching inside of compute keeps a concurrent eviction from dropping the player that is being handed out.
+        return players.compute(guildId, (id, managed) ->
+        {
+            if (managed == null)
+                managed = new ManagedPlayer<>(createPlayer(id));
+            managed.touch();
+            return managed;
+        }).player;
+    }
+
+    /**
+     * @param guildId
+     *      The id of the guild.
+     * @return The player of the guild, or null if it has none. Doesn't count as using it.
+     */
+    public P getExistingPlayer(String guildId)
+    {
+        ManagedPlayer<P> managed = players.get(guildId);
+        return managed != null ? managed.player : null;
+    }
+
+    /**
+     * Stops and drops the player of the guild.
+     *
+     * @param guildId
+     *      The id of the guild.
+     * @return The removed player, or null if the guild had none.
+     */
+    public P removePlayer(String guildId)
+    {
+        ManagedPlayer<P> managed = players.remove(guildId);
+        if (managed == null)
+            return null;
+        dispose(managed.player);
+        return managed.player;
+    }
+
+    /**
+     * @return The players by guild id. Unmodifiable.
+     */
+    public Map<String, P> getPlayers()
+    {
+        Map<String, P> view = new HashMap<>();
+        players.forEach((id, managed) -> view.put(id, managed.player));
+        return Collections.unmodifiableMap(view);
+    }
+
+    public int getPlayerCount()
+    {
+        return players.size();
+    }
+
+    public int getPlayingCount()
+    {
+        int playing = 0;
+        for (ManagedPlayer<P> managed : players.values())
+        {
+            if (managed.player.isPlaying())
+                playing++;
+        }
+        return playing;
+    }
+
+    /**
+     * Sets after how long players that aren't playing are stopped and dropped. Paused players count as idle.
+     *
+     * @param idleTimeout
+     *      Milliseconds without playing or being used, 0 to never evict.
+     */
+    public void setIdleTimeout(long idleTimeout)
+    {
+        if (idleTimeout < 0)
+            throw new IllegalArgumentException("The idle timeout cannot be negative");
+        this.idleTimeout = idleTimeout;
+    }
+
+    public long getIdleTimeout()
+    {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets a listener that is told about every evicted player, for example to close the guild's audio connection.
+     *
+     * @param listener
+     *      Called with the guild id and the player after it was stopped, or null.
+     */
+    public void setEvictionListener(BiConsumer<String, P> listener)
+    {
+        this.evictionListener = listener;
+    }
+
+    public long getEvictionCount()
+    {
+        return evictions.get();
+    }
+
+    public ProcessScheduler getProcessScheduler()
+    {
+        return scheduler;
+    }
+
+    public PcmBufferPool getBufferPool()
+    {
+        return bufferPool;
+    }
+
+    /**
+     * Stops all players and releases the shared resources. The scheduler and buffer pool are uninstalled if they are
+     * still the defaults.
+     */
+    public void shutdown()
+    {
+        janitor.shutdownNow();
+        for (String guildId : new ArrayList<>(players.keySet()))
+            removePlayer(guildId);
+        eventExecutor.shutdown();
+
+        synchronized (ProcessScheduler.class)
+        {
+            if (ProcessScheduler.getDefault() == scheduler)
+                ProcessScheduler.setDefault(null);
+        }
+        synchronized (PcmBufferPool.class)
+        {
+            if (PcmBufferPool.getDefault() == bufferPool)
+                PcmBufferPool.setDefault(null);
+        }
+        bufferPool.clear();
+    }
+
+    protected void evictIdle()
+    {
+        long timeout = idleTimeout;
+        if (timeout == 0)
+            return;
+
+        long now = System.currentTimeMillis();
+        for (String guildId : players.keySet())
+        {
+            //Deciding inside of computeIfPresent keeps a concurrent getPlayer from handing out the evicted player.
+            AtomicReference<ManagedPlayer<P>> evicted = new AtomicReference<>();
+            players.computeIfPresent(guildId, (id, managed) ->
+            {
+                if (!managed.isIdle(now, timeout))
+                    return managed;
+                evicted.set(managed);
+                return null;
+            });
+            P player = evicted.get() != null ? evicted.get().player : null;
+            if (player == null)
+                continue;
+
+            evictions.incrementAndGet();
+            AbstractMusicPlayer.LOG.debug("Evicting the idle player of guild " + guildId);
+            dispose(player);
+            BiConsumer<String, P> listener = evictionListener;
+            if (listener != null)
+            {
+                try
+                {
+                    listener.accept(guildId, player);
+                }
+                catch (Throwable t)
+                {
+                    AbstractMusicPlayer.LOG.log(t);
+                }
+            }
+        }
+    }
+
+    private P createPlayer(String guildId)
+    {
+        P player = playerFactory.apply(guildId);
+        if (player == null)
+            throw new IllegalStateException("The player factory returned null for guild " + guildId);
+        player.setEventExecutor(eventExecutor);
+        return player;
+    }
+
+    private void dispose(P player)
+    {
+        try
+        {
+            player.stop();
+            player.getAudioQueue().clear();
+        }
+        catch (Throwable t)
+        {
+            AbstractMusicPlayer.LOG.log(t);
+        }
+    }
+
+    private static final class ManagedPlayer<P extends AbstractMusicPlayer>
+    {
+        private final P player;
+        private volatile long lastActive;
+
+        private ManagedPlayer(P player)
+        {
+            this.player = player;
+            //Any event means the player is in use. Events are dispatched on the shared executor, never on the audio thread.
+            PlayerEventListener activity = event -> touch();
+            player.addEventListener(activity);
+        }
+
+        private void touch()
+        {
+            lastActive = System.currentTimeMillis();
+        }
+
+        private boolean isIdle(long now, long timeout)
+        {
+            return !player.isPlaying() && now - lastActive > timeout;
+        }
+    }
+}
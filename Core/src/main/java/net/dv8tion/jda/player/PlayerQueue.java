@@ -0,0 +1,605 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player;
+
+import net.dv8tion.jda.player.source.AudioSource;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * The queue of a player. A thread-safe list that is cheap to modify anywhere and to pick random entries from.
+ * <p>
+ * Internally the queue is a persistent treap ordered by position. Indexed access, insertion and removal take
+ * O(log n), bulk additions O(k + log n). Modifications never change existing nodes, they build a new tree that
+ * shares everything it didn't touch with the old one. That lets reads, iteration and {@link #snapshot()} go without
+ * locking: they simply look at whichever tree was current when they started. Modifications don't lock either, they
+ * swap in their new tree with a compare-and-set and start over if another modification came first. So the filter of
+ * {@link #removeIf(Predicate)} may see an entry more than once.
+ * <p>
+ * Random picks draw a position in O(1), but fetching and removing the entry there is indexed access like any other,
+ * so {@link #peekRandom()} and {@link #pollRandom()} take O(log n). A bag with O(1) removal would need a second
+ * structure that tracks the position of every entry in the queue, and keeping that up to date costs O(log n) per
+ * change as well.
+ * <p>
+ * Iterators are snapshots. They never throw a {@link ConcurrentModificationException}, don't see later changes and
+ * don't support {@link Iterator#remove()}; use {@link #removeIf(Predicate)} instead.
+ */
+public class PlayerQueue extends AbstractList<AudioSource>
+{
+    private static final State EMPTY = new State(null, -1);
+
+    private final AtomicReference<State> state = new AtomicReference<>(EMPTY);
+
+    public PlayerQueue() {}
+
+    public PlayerQueue(Collection<? extends AudioSource> sources)
+    {
+        addAll(sources);
+    }
+
+    @Override
+    public int size()
+    {
+        return size(state.get().root);
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return state.get().root == null;
+    }
+
+    @Override
+    public AudioSource get(int index)
+    {
+        return get(state.get().root, index);
+    }
+
+    /**
+     * An immutable copy of the queue as it is right now. Takes constant time, as it shares the queue's tree.
+     *
+     * @return The current entries of the queue.
+     */
+    public List<AudioSource> snapshot()
+    {
+        return new Snapshot(state.get().root);
+    }
+
+    @Override
+    public Iterator<AudioSource> iterator()
+    {
+        return new TreeIterator(state.get().root);
+    }
+
+    @Override
+    public int indexOf(Object o)
+    {
+        int index = 0;
+        for (AudioSource source : this)
+        {
+            if (Objects.equals(o, source))
+                return index;
+            index++;
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o)
+    {
+        int index = 0;
+        int last = -1;
+        for (AudioSource source : this)
+        {
+            if (Objects.equals(o, source))
+                last = index;
+            index++;
+        }
+        return last;
+    }
+
+    // ========= Queue operations ==========
+
+    /**
+     * @return The first entry, or null if the queue is empty.
+     */
+    public AudioSource peek()
+    {
+        Node current = state.get().root;
+        return current == null ? null : get(current, 0);
+    }
+
+    /**
+     * Removes the first entry.
+     *
+     * @return The removed entry, or null if the queue is empty.
+     */
+    public AudioSource poll()
+    {
+        while (true)
+        {
+            State current = state.get();
+            if (current.root == null)
+                return null;
+            AudioSource first = get(current.root, 0);
+            if (tryRemove(current, 0))
+                return first;
+        }
+    }
+
+    /**
+     * Picks a random entry without removing it. The picked entry stays picked, so repeated calls and the next
+     * {@link #pollRandom()} return the same entry, until it is removed.
+     *
+     * @return The picked entry, or null if the queue is empty.
+     */
+    public AudioSource peekRandom()
+    {
+        while (true)
+        {
+            State current = state.get();
+            if (current.root == null)
+                return null;
+            if (current.randomPick >= 0)
+                return get(current.root, current.randomPick);
+
+            int pick = ThreadLocalRandom.current().nextInt(current.root.size);
+            if (state.compareAndSet(current, new State(current.root, pick)))
+                return get(current.root, pick);
+        }
+    }
+
+    /**
+     * Removes a random entry, the one picked by {@link #peekRandom()} if there is one. Polling the whole queue this
+     * way plays every entry exactly once in random order, like drawing from a shuffle bag.
+     *
+     * @return The removed entry, or null if the queue is empty.
+     */
+    public AudioSource pollRandom()
+    {
+        while (true)
+        {
+            State current = state.get();
+            if (current.root == null)
+                return null;
+            int index = current.randomPick >= 0 ? current.randomPick : ThreadLocalRandom.current().nextInt(current.root.size);
+            AudioSource picked = get(current.root, index);
+            if (tryRemove(current, index))
+                return picked;
+        }
+    }
+
+    /**
+     * Removes the entry that {@link #poll()}, or {@link #pollRandom()} if {@code random} is set, would remove, but
+     * only if that is the provided instance. For a random poll, that needs an entry picked by {@link #peekRandom()}.
+     * Makes a single attempt and never waits, so it can also fail because another modification came first.
+     *
+     * @param expected
+     *      The entry expected to be next.
+     * @param random
+     *      Whether the next entry is the randomly picked one rather than the first.
+     * @return True if the expected entry was removed.
+     */
+    public boolean pollIfNext(AudioSource expected, boolean random)
+    {
+        State current = state.get();
+        if (current.root == null)
+            return false;
+        int index = random ? current.randomPick : 0;
+        return index >= 0 && get(current.root, index) == expected && tryRemove(current, index);
+    }
+
+    // ========= Modifications ==========
+
+    @Override
+    public AudioSource set(int index, AudioSource source)
+    {
+        while (true)
+        {
+            State current = state.get();
+            AudioSource previous = get(current.root, index);
+            int pick = index == current.randomPick ? -1 : current.randomPick;
+            if (state.compareAndSet(current, new State(set(current.root, index, source), pick)))
+                return previous;
+        }
+    }
+
+    @Override
+    public boolean add(AudioSource source)
+    {
+        while (true)
+        {
+            State current = state.get();
+            if (tryInsert(current, size(current.root), new Node(source)))
+                return true;
+        }
+    }
+
+    @Override
+    public void add(int index, AudioSource source)
+    {
+        Node added = new Node(source);
+        while (true)
+        {
+            State current = state.get();
+            if (index < 0 || index > size(current.root))
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size(current.root));
+            if (tryInsert(current, index, added))
+                return;
+        }
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends AudioSource> sources)
+    {
+        Node added = build(sources.toArray(new AudioSource[0]));
+        if (added == null)
+            return false;
+        while (true)
+        {
+            State current = state.get();
+            if (tryInsert(current, size(current.root), added))
+                return true;
+        }
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends AudioSource> sources)
+    {
+        Node added = build(sources.toArray(new AudioSource[0]));
+        while (true)
+        {
+            State current = state.get();
+            if (index < 0 || index > size(current.root))
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size(current.root));
+            if (added == null)
+                return false;
+            if (tryInsert(current, index, added))
+                return true;
+        }
+    }
+
+    @Override
+    public AudioSource remove(int index)
+    {
+        while (true)
+        {
+            State current = state.get();
+            if (index < 0 || index >= size(current.root))
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size(current.root));
+            AudioSource removed = get(current.root, index);
+            if (tryRemove(current, index))
+                return removed;
+        }
+    }
+
+    @Override
+    public boolean remove(Object o)
+    {
+        while (true)
+        {
+            State current = state.get();
+            int index = 0;
+            for (Iterator<AudioSource> it = new TreeIterator(current.root); it.hasNext(); index++)
+            {
+                if (Objects.equals(o, it.next()))
+                    break;
+            }
+            if (index == size(current.root))
+                return false;
+            if (tryRemove(current, index))
+                return true;
+        }
+    }
+
+    /**
+     * Removes every entry matching the filter, in a single pass over the queue. If the queue is changed while the
+     * filter runs, the pass starts over on the changed queue.
+     *
+     * @param filter
+     *      Returns true for entries to remove.
+     * @return True if any entry was removed.
+     */
+    @Override
+    public boolean removeIf(Predicate<? super AudioSource> filter)
+    {
+        while (true)
+        {
+            State current = state.get();
+            List<AudioSource> kept = new ArrayList<>(size(current.root));
+            for (Iterator<AudioSource> it = new TreeIterator(current.root); it.hasNext();)
+            {
+                AudioSource source = it.next();
+                if (!filter.test(source))
+                    kept.add(source);
+            }
+            if (kept.size() == size(current.root))
+                return false;
+
+            if (state.compareAndSet(current, new State(build(kept.toArray(new AudioSource[0])), -1)))
+            {
+                modCount++;
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> sources)
+    {
+        return removeIf(sources::contains);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> sources)
+    {
+        return removeIf(source -> !sources.contains(source));
+    }
+
+    @Override
+    public void clear()
+    {
+        state.set(EMPTY);
+        modCount++;
+    }
+
+    //Inserts the tree of new nodes at the index, unless the queue isn't the provided state anymore.
+    private boolean tryInsert(State current, int index, Node added)
+    {
+        Node[] parts = split(current.root, index);
+        int pick = current.randomPick >= index ? current.randomPick + added.size : current.randomPick;
+        if (!state.compareAndSet(current, new State(merge(merge(parts[0], added), parts[1]), pick)))
+            return false;
+        modCount++;
+        return true;
+    }
+
+    //Removes the entry at the index, unless the queue isn't the provided state anymore.
+    private boolean tryRemove(State current, int index)
+    {
+        Node[] parts = split(current.root, index);
+        Node[] rest = split(parts[1], 1);
+        int pick = current.randomPick;
+        if (index == pick)
+            pick = -1;
+        else if (index < pick)
+            pick--;
+        if (!state.compareAndSet(current, new State(merge(parts[0], rest[1]), pick)))
+            return false;
+        modCount++;
+        return true;
+    }
+
+    //The tree and the index of the entry peekRandom() picked for the next pollRandom(), -1 if none.
+    // Replaced as a whole, so that the pick always belongs to the tree next to it.
+    private static final class State
+    {
+        private final Node root;
+        private final int randomPick;
+
+        private State(Node root, int randomPick)
+        {
+            this.root = root;
+            this.randomPick = randomPick;
+        }
+    }
+
+    // ========= Treap ==========
+
+    private static final class Node
+    {
+        private final AudioSource value;
+        private final int priority;
+        //Only ever changed by build() before the node is reachable from the root.
+        private Node left;
+        private Node right;
+        private int size;
+
+        private Node(AudioSource value)
+        {
+            this(value, ThreadLocalRandom.current().nextInt(), null, null);
+        }
+
+        private Node(AudioSource value, int priority, Node left, Node right)
+        {
+            this.value = value;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = size(left) + size(right) + 1;
+        }
+
+        private Node withLeft(Node left)
+        {
+            return new Node(value, priority, left, right);
+        }
+
+        private Node withRight(Node right)
+        {
+            return new Node(value, priority, left, right);
+        }
+    }
+
+    private static int size(Node node)
+    {
+        return node == null ? 0 : node.size;
+    }
+
+    private static AudioSource get(Node node, int index)
+    {
+        if (index < 0 || index >= size(node))
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size(node));
+
+        while (true)
+        {
+            int leftSize = size(node.left);
+            if (index < leftSize)
+                node = node.left;
+            else if (index == leftSize)
+                return node.value;
+            else
+            {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    private static Node set(Node node, int index, AudioSource value)
+    {
+        int leftSize = size(node.left);
+        if (index < leftSize)
+            return node.withLeft(set(node.left, index, value));
+        if (index > leftSize)
+            return node.withRight(set(node.right, index - leftSize - 1, value));
+        return new Node(value, node.priority, node.left, node.right);
+    }
+
+    //Splits into the first {count} entries and the rest.
+    private static Node[] split(Node node, int count)
+    {
+        if (node == null)
+            return new Node[2];
+
+        int leftSize = size(node.left);
+        if (count <= leftSize)
+        {
+            Node[] parts = split(node.left, count);
+            parts[1] = node.withLeft(parts[1]);
+            return parts;
+        }
+        else
+        {
+            Node[] parts = split(node.right, count - leftSize - 1);
+            parts[0] = node.withRight(parts[0]);
+            return parts;
+        }
+    }
+
+    //Concatenates two trees.
+    private static Node merge(Node first, Node second)
+    {
+        if (first == null)
+            return second;
+        if (second == null)
+            return first;
+
+        if (first.priority > second.priority)
+            return first.withRight(merge(first.right, second));
+        else
+            return second.withLeft(merge(first, second.left));
+    }
+
+    //Builds a tree of the provided entries in linear time, keeping the right spine on a stack.
+    private static Node build(AudioSource[] sources)
+    {
+        if (sources.length == 0)
+            return null;
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Node[] spine = new Node[sources.length];
+        int height = 0;
+        for (AudioSource source : sources)
+        {
+            Node node = new Node(source, random.nextInt(), null, null);
+            Node last = null;
+            while (height > 0 && spine[height - 1].priority < node.priority)
+                last = spine[--height];
+            node.left = last;
+            if (height > 0)
+                spine[height - 1].right = node;
+            spine[height++] = node;
+        }
+        Node top = spine[0];
+        updateSizes(top);
+        return top;
+    }
+
+    private static int updateSizes(Node node)
+    {
+        if (node == null)
+            return 0;
+        node.size = updateSizes(node.left) + updateSizes(node.right) + 1;
+        return node.size;
+    }
+
+    /**
+     * In-order iterator over a fixed tree.
+     */
+    private static final class TreeIterator implements Iterator<AudioSource>
+    {
+        private final Deque<Node> path = new ArrayDeque<>();
+
+        private TreeIterator(Node root)
+        {
+            descend(root);
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return !path.isEmpty();
+        }
+
+        @Override
+        public AudioSource next()
+        {
+            if (path.isEmpty())
+                throw new NoSuchElementException();
+            Node node = path.pop();
+            descend(node.right);
+            return node.value;
+        }
+
+        private void descend(Node node)
+        {
+            for (; node != null; node = node.left)
+                path.push(node);
+        }
+    }
+
+    private static final class Snapshot extends AbstractList<AudioSource>
+    {
+        private final Node root;
+
+        private Snapshot(Node root)
+        {
+            this.root = root;
+        }
+
+        @Override
+        public AudioSource get(int index)
+        {
+            return PlayerQueue.get(root, index);
+        }
+
+        @Override
+        public int size()
+        {
+            return PlayerQueue.size(root);
+        }
+
+        @Override
+        public Iterator<AudioSource> iterator()
+        {
+            return new TreeIterator(root);
+        }
+    }
+}
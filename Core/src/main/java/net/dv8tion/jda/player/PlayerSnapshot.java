@@ -0,0 +1,135 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player;
+
+import net.dv8tion.jda.player.source.AudioSource;
+import net.dv8tion.jda.player.source.AudioTimestamp;
+
+import java.util.List;
+
+/**
+ * An immutable, consistent view of a player, for dashboards and status commands.
+ * <p>
+ * State and sources always belong to the same point in time, as they are published together whenever a command or
+ * the end of a source changes them. The queue, volume, repeat and shuffle are read right after and might be a little
+ * newer. Taking a snapshot takes no locks and copies nothing, the queue is shared with the {@link PlayerQueue} as it
+ * was when it was read.
+ */
+public final class PlayerSnapshot
+{
+    private final long version;
+    private final boolean playing;
+    private final boolean paused;
+    private final AudioSource currentSource;
+    private final AudioSource previousSource;
+    private final AudioTimestamp timestamp;
+    private final List<AudioSource> queue;
+    private final float volume;
+    private final boolean repeat;
+    private final boolean shuffle;
+
+    PlayerSnapshot(long version, boolean playing, boolean paused, AudioSource currentSource,
+                   AudioSource previousSource, AudioTimestamp timestamp, List<AudioSource> queue,
+                   float volume, boolean repeat, boolean shuffle)
+    {
+        this.version = version;
+        this.playing = playing;
+        this.paused = paused;
+        this.currentSource = currentSource;
+        this.previousSource = previousSource;
+        this.timestamp = timestamp;
+        this.queue = queue;
+        this.volume = volume;
+        this.repeat = repeat;
+        this.shuffle = shuffle;
+    }
+
+    /**
+     * Increases with every change to the state or the current source, so a dashboard can tell whether anything
+     * besides the timestamp changed since its last snapshot.
+     *
+     * @return The version of the player state this snapshot was taken from.
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+    public boolean isPlaying()
+    {
+        return playing;
+    }
+
+    public boolean isPaused()
+    {
+        return paused;
+    }
+
+    public boolean isStopped()
+    {
+        return !playing && !paused;
+    }
+
+    public AudioSource getCurrentAudioSource()
+    {
+        return currentSource;
+    }
+
+    public AudioSource getPreviousAudioSource()
+    {
+        return previousSource;
+    }
+
+    /**
+     * @return The playback position in the current source, or null if nothing is loaded.
+     */
+    public AudioTimestamp getCurrentTimestamp()
+    {
+        return timestamp;
+    }
+
+    /**
+     * @return The sources that were queued, in order. Unmodifiable.
+     */
+    public List<AudioSource> getAudioQueue()
+    {
+        return queue;
+    }
+
+    public float getVolume()
+    {
+        return volume;
+    }
+
+    public boolean isRepeat()
+    {
+        return repeat;
+    }
+
+    public boolean isShuffle()
+    {
+        return shuffle;
+    }
+
+    @Override
+    public String toString()
+    {
+        String state = playing ? "PLAYING" : paused ? "PAUSED" : "STOPPED";
+        return "PlayerSnapshot(" + state + ", v" + version + ", " + (timestamp != null ? timestamp.getTimestamp() : "-")
+                + ", queue=" + queue.size() + ")";
+    }
+}
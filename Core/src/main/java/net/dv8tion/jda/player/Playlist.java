@@ -16,14 +16,24 @@
 
 package net.dv8tion.jda.player;
 
+import net.dv8tion.jda.player.source.AudioInfo;
 import net.dv8tion.jda.player.source.AudioSource;
+import net.dv8tion.jda.player.source.AudioStream;
+import net.dv8tion.jda.player.source.ProcessScheduler;
 import net.dv8tion.jda.player.source.RemoteSource;
+import net.dv8tion.jda.player.source.YoutubeDLResolver;
 import org.json.JSONObject;
-import sun.misc.IOUtils;
 
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 public class Playlist
 {
@@ -36,6 +46,9 @@ public class Playlist
                     "-4",                   //For OVH users
                     "--flat-playlist"       //Get ONLY the urls of the playlist if this is a playlist.
             ));
+    public static final int DEFAULT_RESOLVE_PARALLELISM = 4;
+    public static final int DEFAULT_RESOLVE_BATCH_SIZE = 10;
+
     protected List<AudioSource> sources;
     protected Queue<AudioSource> currentOrder;
     protected AudioSource endOfList;
@@ -57,42 +70,188 @@ public class Playlist
         return Collections.unmodifiableList(sources);
     }
 
+    public List<CompletableFuture<AudioInfo>> resolveInfo(BiConsumer<AudioSource, AudioInfo> inOrderCallback)
+    {
+        return resolveInfo(DEFAULT_RESOLVE_PARALLELISM, DEFAULT_RESOLVE_BATCH_SIZE, inOrderCallback);
+    }
+
+    /**
+     * Resolves the {@link AudioInfo} of every source in this playlist concurrently.
+     * <br>RemoteSources are grouped into batches that are each resolved by a single youtube-dl process, and at most
+     * {@code parallelism} batches (or single sources) are resolved at the same time, on workers of the shared
+     * {@link net.dv8tion.jda.player.source.StreamWorkerPool}.
+     * <p>
+     * The callback is called once per source, in playlist order, as soon as that source and all sources
+     * before it are resolved. This means the first entries can be queued while the rest are still resolving.
+     *
+     * @param parallelism
+     *      Maximum amount of concurrent resolutions.
+     * @param batchSize
+     *      Maximum amount of RemoteSources resolved by a single youtube-dl process.
+     * @param inOrderCallback
+     *      Called with each source and its info (null if resolving it threw), in playlist order. May be null.
+     * @return One future per source, in playlist order.
+     */
+    public List<CompletableFuture<AudioInfo>> resolveInfo(int parallelism, int batchSize, BiConsumer<AudioSource, AudioInfo> inOrderCallback)
+    {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be at least 1");
+
+        List<AudioSource> toResolve = new ArrayList<>(sources);
+        //Futures are matched to sources by index, as the same source instance may be in the playlist more than once.
+        List<CompletableFuture<AudioInfo>> futures = new ArrayList<>(toResolve.size());
+        for (int i = 0; i < toResolve.size(); i++)
+            futures.add(new CompletableFuture<>());
+
+        if (inOrderCallback != null)
+        {
+            AtomicInteger nextToDeliver = new AtomicInteger(0);
+            for (CompletableFuture<AudioInfo> future : futures)
+                future.whenComplete((info, error) -> deliverInOrder(toResolve, futures, nextToDeliver, inOrderCallback));
+        }
+
+        //Each runner takes tasks until none are left, so at most parallelism of them run at once.
+        Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        List<Integer> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < toResolve.size(); i++)
+        {
+            AudioSource source = toResolve.get(i);
+            if (source instanceof RemoteSource)
+            {
+                batch.add(i);
+                if (batch.size() >= batchSize)
+                {
+                    tasks.add(batchTask(batch, toResolve, futures));
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            else
+            {
+                CompletableFuture<AudioInfo> future = futures.get(i);
+                tasks.add(() -> complete(future, source));
+            }
+        }
+        if (!batch.isEmpty())
+            tasks.add(batchTask(batch, toResolve, futures));
+
+        int runners = Math.min(parallelism, tasks.size());
+        for (int i = 0; i < runners; i++)
+        {
+            try
+            {
+                AudioStream.getWorkerPool().submit("Playlist Resolver", () ->
+                {
+                    Runnable task;
+                    while ((task = tasks.poll()) != null)
+                        task.run();
+                });
+            }
+            catch (RejectedExecutionException e)
+            {
+                //The runners that did start take over the rest.
+                if (i > 0)
+                    break;
+                for (CompletableFuture<AudioInfo> future : futures)
+                    future.completeExceptionally(e);
+                break;
+            }
+        }
+
+        return futures;
+    }
+
     public static Playlist getPlaylist(String url, String guildId)
+    {
+        return getPlaylist(url, guildId, null);
+    }
+
+    /**
+     * Enumerates the sources at the provided url, handing each one to {@code onSource} as soon as youtube-dl
+     * prints it, instead of waiting for the whole playlist to be listed. This lets the first entry start playing
+     * while the rest of a large playlist is still being enumerated.
+     * <br>This method blocks until the enumeration is complete, so call it from a background thread if needed.
+     *
+     * @param url
+     *      The url of the playlist or single source.
+     * @param guildId
+     *      The id of the guild the sources are for.
+     * @param onSource
+     *      Called with each source in playlist order as it is discovered. May be null.
+     * @return The complete Playlist.
+     */
+    public static Playlist getPlaylist(String url, String guildId, Consumer<AudioSource> onSource)
+    {
+        List<AudioSource> sources = new ArrayList<>();
+        YoutubeDLResolver resolver = YoutubeDLResolver.getDefault();
+        if (resolver == null || !listWithResolver(resolver, url, guildId, sources, onSource))
+            listWithYoutubeDL(url, guildId, sources, onSource);
+
+        //Now that we have all the sources we can create our Playlist object.
+        Playlist playlist = new Playlist("New Playlist", guildId);
+        playlist.sources = sources;
+        return playlist;
+    }
+
+    //Returns false if the worker failed before listing anything, in which case youtube-dl should be started instead.
+    private static boolean listWithResolver(YoutubeDLResolver resolver, String url, String guildId,
+                                            List<AudioSource> sources, Consumer<AudioSource> onSource)
+    {
+        try
+        {
+            resolver.listPlaylist(url, (entry, playlistEntry) ->
+                    addSource(sources, new RemoteSource(entry.getString(playlistEntry ? "url" : "webpage_url"), guildId), onSource));
+            return true;
+        }
+        catch (YoutubeDLResolver.ResolveException e)
+        {
+            AbstractMusicPlayer.LOG.warn("Could not list playlist: " + e.getMessage());
+            return true;
+        }
+        catch (IOException e)
+        {
+            AbstractMusicPlayer.LOG.debug("youtube-dl worker failed while listing a playlist: " + e.getMessage());
+            return !sources.isEmpty();
+        }
+    }
+
+    private static void listWithYoutubeDL(String url, String guildId, List<AudioSource> sources, Consumer<AudioSource> onSource)
     {
         List<String> infoArgs = new LinkedList<>();
         infoArgs.addAll(YOUTUBE_DL_PLAYLIST_ARGS);
         infoArgs.add("--"); //Url separator. Deals with YT ids that start with --
         infoArgs.add( url);
 
-        //Fire up Youtube-dl and get all sources from the provided url.
-        List<AudioSource> sources = new ArrayList<>();
-        Scanner scan = null;
+        //Fire up Youtube-dl and get all sources from the provided url, one JSON line per source.
+        ProcessScheduler.Ticket ticket = null;
         Process infoProcess = null;
-        InputStream infoStream = null;
+        BufferedReader reader = null;
         try
         {
+            ticket = ProcessScheduler.admit(ProcessScheduler.Priority.BULK);
             infoProcess = new ProcessBuilder().command(infoArgs).start();
-            infoStream = infoProcess.getInputStream();
-            byte[] infoData = IOUtils.readFully(infoStream, -1, false);
-            if (infoData == null || infoData.length == 0)
-                throw new NullPointerException("The YT-DL playlist process resulted in a null or zero-length INFO!");
+            reader = new BufferedReader(new InputStreamReader(infoProcess.getInputStream()));
 
-            String sInfo = new String(infoData);
-            scan = new Scanner(sInfo);
+            String line = reader.readLine();
+            if (line == null || line.isEmpty())
+                throw new NullPointerException("The YT-DL playlist process resulted in a null or zero-length INFO!");
 
-            JSONObject source = new JSONObject(scan.nextLine());
+            JSONObject source = new JSONObject(line);
             if (source.has("_type"))//Is a playlist
             {
-                sources.add(new RemoteSource(source.getString("url"), guildId));
-                while (scan.hasNextLine())
+                do
                 {
-                    source = new JSONObject(scan.nextLine());
-                    sources.add(new RemoteSource(source.getString("url"), guildId));
+                    if (line.isEmpty())
+                        continue;
+                    source = new JSONObject(line);
+                    addSource(sources, new RemoteSource(source.getString("url"), guildId), onSource);
                 }
+                while ((line = reader.readLine()) != null);
             }
             else                    //Single source link
             {
-                sources.add(new RemoteSource(source.getString("webpage_url"), guildId));
+                addSource(sources, new RemoteSource(source.getString("webpage_url"), guildId), onSource);
             }
         }
         catch (IOException e)
@@ -101,12 +260,6 @@ public class Playlist
         }
         finally
         {
-            try
-            {
-                if (scan != null)
-                    scan.close();
-            }
-            catch (Throwable ignored) {}
             try
             {
                 if (infoProcess != null)
@@ -115,15 +268,96 @@ public class Playlist
             catch (Throwable ignored) {}
             try
             {
-                if (infoStream != null)
-                    infoStream.close();
+                if (reader != null)
+                    reader.close();
             }
             catch (Throwable ignore){}
+            if (ticket != null)
+                ticket.close();
         }
+    }
 
-        //Now that we have all the sources we can create our Playlist object.
-        Playlist playlist = new Playlist("New Playlist", guildId);
-        playlist.sources = sources;
-        return playlist;
+    private static void addSource(List<AudioSource> sources, AudioSource source, Consumer<AudioSource> onSource)
+    {
+        sources.add(source);
+        if (onSource != null)
+        {
+            try
+            {
+                onSource.accept(source);
+            }
+            catch (Throwable t)
+            {
+                AbstractMusicPlayer.LOG.log(t);
+            }
+        }
+    }
+
+    private static Runnable batchTask(List<Integer> batch, List<AudioSource> sources,
+                                      List<CompletableFuture<AudioInfo>> futures)
+    {
+        List<RemoteSource> batchSources = new ArrayList<>(batch.size());
+        for (int index : batch)
+            batchSources.add((RemoteSource) sources.get(index));
+
+        return () ->
+        {
+            try
+            {
+                RemoteSource.resolveInfo(batchSources, resolved ->
+                {
+                    //Completes every entry of the source, it may be in the batch more than once.
+                    for (int index : batch)
+                    {
+                        if (sources.get(index) == resolved && !futures.get(index).isDone())
+                            complete(futures.get(index), resolved);
+                    }
+                });
+            }
+            finally
+            {
+                //Anything the batch didn't report on still needs its future completed.
+                for (int index : batch)
+                {
+                    CompletableFuture<AudioInfo> future = futures.get(index);
+                    if (!future.isDone())
+                        complete(future, sources.get(index));
+                }
+            }
+        };
+    }
+
+    private static void complete(CompletableFuture<AudioInfo> future, AudioSource source)
+    {
+        try
+        {
+            future.complete(source.getInfo());
+        }
+        catch (Throwable t)
+        {
+            future.completeExceptionally(t);
+        }
+    }
+
+    private static void deliverInOrder(List<AudioSource> sources, List<CompletableFuture<AudioInfo>> futures,
+                                       AtomicInteger nextToDeliver, BiConsumer<AudioSource, AudioInfo> callback)
+    {
+        synchronized (nextToDeliver)
+        {
+            int next;
+            while ((next = nextToDeliver.get()) < futures.size() && futures.get(next).isDone())
+            {
+                nextToDeliver.incrementAndGet();
+                try
+                {
+                    AudioInfo info = futures.get(next).isCompletedExceptionally() ? null : futures.get(next).join();
+                    callback.accept(sources.get(next), info);
+                }
+                catch (Throwable t)
+                {
+                    AbstractMusicPlayer.LOG.log(t);
+                }
+            }
+        }
     }
 }
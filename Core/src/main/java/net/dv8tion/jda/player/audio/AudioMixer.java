@@ -0,0 +1,286 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.audio;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Mixes any number of {@link PcmClip}s over the PCM frames of a player, like sound effects over music.
+ * <p>
+ * Inputs are added and stopped from any thread. {@link #mix(byte[], int, int, boolean)} is only called by the thread
+ * producing the frames and doesn't allocate: the inputs are an array that is only replaced when one is added or ends,
+ * and the samples are summed into a preallocated int buffer with the per-input gain in the same Q12 fixed-point as
+ * {@link PcmVolume}. The sum is clamped to the 16bit range once at the end, so loud inputs saturate instead of
+ * wrapping around.
+ */
+public class AudioMixer
+{
+    public static final int DEFAULT_MAX_INPUTS = 8;
+    private static final Input[] NO_INPUTS = new Input[0];
+
+    private final AtomicReference<Input[]> inputs = new AtomicReference<>(NO_INPUTS);
+    private final int maxInputs;
+
+    //Only used by the mixing thread. Sized for a 20ms frame, only grows if larger frames are mixed.
+    private int[] sum = new int[20 * PcmRingBuffer.BYTES_PER_MILLISECOND / 2];
+
+    public AudioMixer()
+    {
+        this(DEFAULT_MAX_INPUTS);
+    }
+
+    /**
+     * @param maxInputs
+     *      How many inputs may play at the same time.
+     */
+    public AudioMixer(int maxInputs)
+    {
+        if (maxInputs < 1)
+            throw new IllegalArgumentException("AudioMixer needs to allow at least 1 input");
+        this.maxInputs = maxInputs;
+    }
+
+    /**
+     * Starts playing the provided clip from its beginning, on top of whatever is already playing.
+     *
+     * @param clip
+     *      The clip to play.
+     * @param volume
+     *      The volume of this input, 1.0 being unchanged.
+     * @return The input, which can be used to change its volume or stop it early.
+     * @throws IllegalStateException
+     *      If the mixer already plays its maximum amount of inputs.
+     */
+    public Input play(PcmClip clip, float volume)
+    {
+        if (clip == null)
+            throw new NullPointerException("Cannot mix a null clip");
+
+        Input input = new Input(clip, volume);
+        Input[] current;
+        Input[] next;
+        do
+        {
+            current = inputs.get();
+            if (current.length >= maxInputs)
+                throw new IllegalStateException("The mixer already plays " + maxInputs + " inputs");
+            next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = input;
+        }
+        while (!inputs.compareAndSet(current, next));
+        return input;
+    }
+
+    /**
+     * Stops all inputs.
+     */
+    public void stopAll()
+    {
+        for (Input input : inputs.getAndSet(NO_INPUTS))
+            input.stop();
+    }
+
+    public boolean isActive()
+    {
+        return inputs.get().length > 0;
+    }
+
+    public int getInputCount()
+    {
+        return inputs.get().length;
+    }
+
+    public int getMaxInputs()
+    {
+        return maxInputs;
+    }
+
+    /**
+     * Mixes the next samples of every input into {@code pcm[offset, offset + length)}.
+     *
+     * @param pcm
+     *      Big endian, signed 16bit stereo PCM.
+     * @param offset
+     *      Offset of the first sample. Must be even.
+     * @param length
+     *      Amount of bytes to mix. Must be even.
+     * @param overlay
+     *      True to mix on top of the samples already in the buffer, false to overwrite them.
+     * @return True if anything was mixed. If false, the buffer was left untouched.
+     */
+    public boolean mix(byte[] pcm, int offset, int length, boolean overlay)
+    {
+        Input[] active = inputs.get();
+        if (active.length == 0)
+            return false;
+
+        int samples = length >> 1;
+        int[] sum = this.sum;
+        if (sum.length < samples)
+            sum = this.sum = new int[samples];
+
+        int end = offset + (samples << 1);
+        if (overlay)
+        {
+            for (int i = offset, s = 0; i < end; i += 2, s++)
+                sum[s] = (pcm[i] << 8) | (pcm[i + 1] & 0xff);
+        }
+        else
+        {
+            Arrays.fill(sum, 0, samples, 0);
+        }
+
+        boolean ended = false;
+        for (int n = 0; n < active.length; n++)
+            ended |= active[n].mixInto(sum, samples);
+
+        for (int i = offset, s = 0; i < end; i += 2, s++)
+        {
+            int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sum[s]));
+            pcm[i] = (byte) (sample >> 8);
+            pcm[i + 1] = (byte) sample;
+        }
+
+        if (ended)
+            removeEnded();
+        return true;
+    }
+
+    /**
+     * Moves every input forward without mixing it anywhere, for frames that can't be mixed into like Opus packets.
+     *
+     * @param length
+     *      Amount of bytes of PCM the frame lasts.
+     */
+    public void skip(int length)
+    {
+        Input[] active = inputs.get();
+        boolean ended = false;
+        for (int n = 0; n < active.length; n++)
+            ended |= active[n].advance(length & ~1);
+
+        if (ended)
+            removeEnded();
+    }
+
+    private void removeEnded()
+    {
+        Input[] current;
+        Input[] next;
+        do
+        {
+            current = inputs.get();
+            int live = 0;
+            for (Input input : current)
+            {
+                if (!input.finished)
+                    live++;
+            }
+            if (live == current.length)
+                return;
+
+            next = live == 0 ? NO_INPUTS : new Input[live];
+            int i = 0;
+            for (Input input : current)
+            {
+                if (!input.finished)
+                    next[i++] = input;
+            }
+        }
+        while (!inputs.compareAndSet(current, next));
+    }
+
+    /**
+     * One clip being played by the mixer. Every input has its own position, the clip itself is shared.
+     */
+    public static class Input
+    {
+        private final PcmClip clip;
+        private volatile float volume;
+        private volatile int gain;
+        private volatile boolean finished = false;
+        //Only used by the mixing thread.
+        private int position = 0;
+
+        private Input(PcmClip clip, float volume)
+        {
+            this.clip = clip;
+            setVolume(volume);
+        }
+
+        public PcmClip getClip()
+        {
+            return clip;
+        }
+
+        public float getVolume()
+        {
+            return volume;
+        }
+
+        public void setVolume(float volume)
+        {
+            this.volume = volume;
+            this.gain = PcmVolume.toGain(volume);
+        }
+
+        /**
+         * Stops this input. It is removed from the mixer with the next mixed frame.
+         */
+        public void stop()
+        {
+            finished = true;
+        }
+
+        /**
+         * @return True once the whole clip was played or the input was stopped.
+         */
+        public boolean isFinished()
+        {
+            return finished;
+        }
+
+        private boolean mixInto(int[] sum, int samples)
+        {
+            if (finished)
+                return true;
+
+            byte[] pcm = clip.pcm;
+            int gain = this.gain;
+            int end = Math.min(pcm.length, position + (samples << 1));
+            for (int i = position, s = 0; i < end; i += 2, s++)
+                sum[s] += (((pcm[i] << 8) | (pcm[i + 1] & 0xff)) * gain) >> PcmVolume.GAIN_SHIFT;
+            return advanceTo(end);
+        }
+
+        private boolean advance(int length)
+        {
+            if (finished)
+                return true;
+            return advanceTo(Math.min(clip.pcm.length, position + length));
+        }
+
+        private boolean advanceTo(int end)
+        {
+            position = end;
+            if (end >= clip.pcm.length)
+                finished = true;
+            return finished;
+        }
+    }
+}
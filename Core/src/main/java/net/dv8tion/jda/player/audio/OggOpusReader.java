@@ -0,0 +1,185 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.audio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits an Ogg Opus byte stream, as written by FFmpeg's ogg muxer, into the Opus packets it contains.
+ * <p>
+ * The reader never waits on its own. If the underlying stream returns 0 bytes (like a
+ * {@link net.dv8tion.jda.player.source.PrefetchingAudioStream} that has nothing buffered), {@link #readPacket()}
+ * returns null. The next call continues from where this one stopped. Use {@link #isFinished()} to tell that apart
+ * from the end of the stream. CRCs are not checked; the stream comes from a local pipe.
+ * <p>
+ * Packets are handed out in arrays owned by the reader, so reading doesn't allocate once the packet sizes of the
+ * stream were seen.
+ */
+public class OggOpusReader
+{
+    private static final int PAGE_HEADER_SIZE = 27;
+    //The first two packets of an Ogg Opus stream are the OpusHead and OpusTags headers.
+    private static final int HEADER_PACKETS = 2;
+    //The largest Opus frame. Larger packets, with several frames, get a new array every time.
+    private static final int MAX_REUSED_LENGTH = 1275;
+
+    private final InputStream in;
+    private final byte[] data = new byte[8192];
+    private int start = 0;
+    private int end = 0;
+
+    private final byte[] segmentTable = new byte[255];
+    private int segmentCount = 0;
+    private int segmentIndex = 0;
+
+    private byte[] packet = new byte[1024];
+    private int packetLength = 0;
+    //Senders like JDA take a whole array as the packet, so there is one reused array per packet length.
+    private final byte[][] packetsByLength = new byte[MAX_REUSED_LENGTH + 1][];
+    private long packetsRead = 0;
+    private boolean finished = false;
+
+    public OggOpusReader(InputStream in)
+    {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next audio packet, skipping the Opus header packets.
+     * <p>
+     * The returned array belongs to the reader and is exactly as long as the packet. It is overwritten by a later
+     * packet of the same length, so the packet has to be used (or copied) before the next call.
+     *
+     * @return The next Opus packet, or null if no complete packet is available right now or the stream ended.
+     * @throws IOException
+     *      If the underlying stream failed or isn't an Ogg stream.
+     */
+    public byte[] readPacket() throws IOException
+    {
+        while (true)
+        {
+            if (segmentIndex == segmentCount)
+            {
+                if (!readPageHeader())
+                    return null;
+                continue;
+            }
+
+            int lace = segmentTable[segmentIndex] & 0xff;
+            if (!ensureAvailable(lace))
+                return null;
+
+            if (packetLength + lace > packet.length)
+                packet = Arrays.copyOf(packet, Math.max(packet.length * 2, packetLength + lace));
+            System.arraycopy(data, start, packet, packetLength, lace);
+            packetLength += lace;
+            start += lace;
+            segmentIndex++;
+
+            //A lacing value of 255 means the packet continues in the next segment, possibly on the next page.
+            if (lace < 255)
+            {
+                int length = packetLength;
+                packetLength = 0;
+                if (packetsRead++ >= HEADER_PACKETS)
+                    return handOut(length);
+            }
+        }
+    }
+
+    /**
+     * Whether the underlying stream has ended. Once this is true, {@link #readPacket()} will only return null.
+     *
+     * @return True if the end of the stream was reached.
+     */
+    public boolean isFinished()
+    {
+        return finished;
+    }
+
+    /**
+     * The amount of audio packets read so far. Every packet is 20ms of audio when FFmpeg was started with
+     * {@code -frame_duration 20}.
+     *
+     * @return The amount of audio packets returned by {@link #readPacket()}.
+     */
+    public long getPacketCount()
+    {
+        return Math.max(0, packetsRead - HEADER_PACKETS);
+    }
+
+    private byte[] handOut(int length)
+    {
+        byte[] out = length <= MAX_REUSED_LENGTH ? packetsByLength[length] : null;
+        if (out == null)
+        {
+            out = new byte[length];
+            if (length <= MAX_REUSED_LENGTH)
+                packetsByLength[length] = out;
+        }
+        System.arraycopy(packet, 0, out, 0, length);
+        return out;
+    }
+
+    private boolean readPageHeader() throws IOException
+    {
+        if (!ensureAvailable(PAGE_HEADER_SIZE))
+            return false;
+        if (data[start] != 'O' || data[start + 1] != 'g' || data[start + 2] != 'g' || data[start + 3] != 'S')
+            throw new IOException("Lost sync with the Ogg stream, expected a page header");
+
+        int segments = data[start + PAGE_HEADER_SIZE - 1] & 0xff;
+        if (!ensureAvailable(PAGE_HEADER_SIZE + segments))
+            return false;
+
+        System.arraycopy(data, start + PAGE_HEADER_SIZE, segmentTable, 0, segments);
+        start += PAGE_HEADER_SIZE + segments;
+        segmentCount = segments;
+        segmentIndex = 0;
+        return true;
+    }
+
+    private boolean ensureAvailable(int amount) throws IOException
+    {
+        while (end - start < amount)
+        {
+            if (finished)
+                return false;
+            if (start > 0)
+            {
+                System.arraycopy(data, start, data, 0, end - start);
+                end -= start;
+                start = 0;
+            }
+
+            //Only ask for what is missing, rounded up to whole PCM frames since a PcmRingBuffer only hands those out.
+            int missing = (amount - (end - start) + PcmRingBuffer.PCM_FRAME_SIZE - 1) & -PcmRingBuffer.PCM_FRAME_SIZE;
+            int amountRead = in.read(data, end, Math.min(missing, data.length - end));
+            if (amountRead < 0)
+            {
+                finished = true;
+                return false;
+            }
+            if (amountRead == 0)
+                return false;
+            end += amountRead;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.audio;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recycles the backing arrays of {@link PcmRingBuffer}s.
+ * <p>
+ * Every prefetched source needs a ring of a few hundred kilobytes. With many players starting and stopping sources
+ * those are allocated and dropped all the time, and arrays that large are expensive for the garbage collector. Rings
+ * created through {@link PcmRingBuffer#forLookahead(int)} borrow their array from the default pool and give it back
+ * once the stream is done with it. The pool keeps at most {@code maxBytes} of idle arrays, anything past that is left
+ * to the garbage collector.
+ */
+public class PcmBufferPool
+{
+    private static PcmBufferPool defaultPool = null;
+
+    private final long maxBytes;
+    private final ConcurrentHashMap<Integer, ConcurrentLinkedQueue<byte[]>> idle = new ConcurrentHashMap<>();
+    private final AtomicLong idleBytes = new AtomicLong(0);
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+
+    public PcmBufferPool(long maxBytes)
+    {
+        if (maxBytes < 1)
+            throw new IllegalArgumentException("PcmBufferPool size limit must be positive");
+        this.maxBytes = maxBytes;
+    }
+
+    public static synchronized PcmBufferPool getDefault()
+    {
+        return defaultPool;
+    }
+
+    /**
+     * Sets the pool that new prefetch rings borrow their arrays from. There is no pool by default.
+     *
+     * @param pool
+     *      The pool to use, or null to allocate every ring.
+     */
+    public static synchronized void setDefault(PcmBufferPool pool)
+    {
+        defaultPool = pool;
+    }
+
+    /**
+     * @param capacity
+     *      The exact length of the array.
+     * @return An idle array of that length, or a new one if there is none.
+     */
+    public byte[] acquire(int capacity)
+    {
+        ConcurrentLinkedQueue<byte[]> arrays = idle.get(capacity);
+        byte[] array = arrays != null ? arrays.poll() : null;
+        if (array == null)
+        {
+            misses.incrementAndGet();
+            return new byte[capacity];
+        }
+        idleBytes.addAndGet(-array.length);
+        hits.incrementAndGet();
+        return array;
+    }
+
+    /**
+     * Hands an array back. It must not be used by the caller anymore afterwards.
+     *
+     * @param array
+     *      An array from {@link #acquire(int)}.
+     */
+    public void release(byte[] array)
+    {
+        if (idleBytes.addAndGet(array.length) > maxBytes)
+        {
+            idleBytes.addAndGet(-array.length);
+            return;
+        }
+        idle.computeIfAbsent(array.length, k -> new ConcurrentLinkedQueue<>()).add(array);
+    }
+
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    public long getIdleBytes()
+    {
+        return idleBytes.get();
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    public void clear()
+    {
+        for (ConcurrentLinkedQueue<byte[]> arrays : idle.values())
+        {
+            byte[] array;
+            while ((array = arrays.poll()) != null)
+                idleBytes.addAndGet(-array.length);
+        }
+    }
+}
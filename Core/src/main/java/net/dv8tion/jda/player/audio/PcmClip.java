@@ -0,0 +1,199 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.audio;
+
+import net.dv8tion.jda.player.source.AudioSource;
+import net.dv8tion.jda.player.source.AudioStream;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A short piece of audio, like a sound effect, decoded once into memory.
+ * <p>
+ * Clips are immutable, so one clip can be played by any number of {@link AudioMixer}s at the same time without
+ * starting a decoder for every play. {@link #load(AudioSource)} keeps every loaded clip so that all guilds share
+ * the same decoded audio.
+ */
+public class PcmClip
+{
+    //Anything longer should be played as a regular source instead of being kept in memory.
+    public static final int MAX_CLIP_MILLIS = 30 * 1000;
+    private static final ConcurrentHashMap<String, CompletableFuture<PcmClip>> LOADED = new ConcurrentHashMap<>();
+
+    private final String name;
+    final byte[] pcm;
+
+    /**
+     * @param name
+     *      The name of the clip, usually the source it was decoded from.
+     * @param pcm
+     *      48kHz, big endian, signed 16bit stereo PCM. The array is used as is and must not be changed afterwards.
+     */
+    public PcmClip(String name, byte[] pcm)
+    {
+        if (pcm == null)
+            throw new NullPointerException("PcmClip audio cannot be null");
+        if (pcm.length % PcmRingBuffer.PCM_FRAME_SIZE != 0)
+            throw new IllegalArgumentException("PcmClip audio must consist of whole stereo samples");
+
+        this.name = name;
+        this.pcm = pcm;
+    }
+
+    /**
+     * Gets the shared clip of the provided source, decoding it on the calling thread the first time.
+     * Concurrent loads of the same source wait for the one decode instead of starting their own.
+     *
+     * @param source
+     *      The source of the clip.
+     * @return The shared clip.
+     * @throws IOException
+     *      If the source could not be decoded or is longer than {@link #MAX_CLIP_MILLIS}.
+     */
+    public static PcmClip load(AudioSource source) throws IOException
+    {
+        String key = source.getSource();
+        CompletableFuture<PcmClip> future = LOADED.get(key);
+        if (future == null)
+        {
+            CompletableFuture<PcmClip> created = new CompletableFuture<>();
+            future = LOADED.putIfAbsent(key, created);
+            if (future == null)
+            {
+                future = created;
+                try
+                {
+                    created.complete(decode(source));
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    //Don't keep failures, a later load may succeed.
+                    LOADED.remove(key, created);
+                    created.completeExceptionally(e);
+                }
+            }
+        }
+
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for clip " + key, e);
+        }
+    }
+
+    /**
+     * @param source
+     *      The source the clip was loaded from.
+     * @return The shared clip of that source, or null if it isn't loaded (yet).
+     */
+    public static PcmClip getLoaded(String source)
+    {
+        CompletableFuture<PcmClip> future = LOADED.get(source);
+        return future != null && future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+    }
+
+    /**
+     * Forgets the shared clip of the provided source. Mixers still playing it keep playing it to the end.
+     *
+     * @param source
+     *      The source the clip was loaded from.
+     */
+    public static void unload(String source)
+    {
+        LOADED.remove(source);
+    }
+
+    /**
+     * Decodes the whole source into a new clip that isn't shared.
+     *
+     * @param source
+     *      The source to decode.
+     * @return The decoded clip.
+     * @throws IOException
+     *      If the source could not be decoded or is longer than {@link #MAX_CLIP_MILLIS}.
+     */
+    public static PcmClip decode(AudioSource source) throws IOException
+    {
+        int maxLength = MAX_CLIP_MILLIS * PcmRingBuffer.BYTES_PER_MILLISECOND;
+        AudioStream opened = source.asStream();
+        if (opened == null)
+            throw new IOException("Could not open a stream for " + source.getSource());
+        try (AudioStream stream = opened)
+        {
+            byte[] pcm = new byte[64 * 1024];
+            int length = 0;
+            while (true)
+            {
+                if (length == pcm.length)
+                {
+                    if (length >= maxLength)
+                    {
+                        if (stream.read() == -1)
+                            break;
+                        throw new IOException("Clip is longer than " + MAX_CLIP_MILLIS + "ms: " + source.getSource());
+                    }
+                    pcm = Arrays.copyOf(pcm, Math.min(maxLength, length * 2));
+                }
+
+                int amountRead = stream.read(pcm, length, pcm.length - length);
+                if (amountRead < 0)
+                    break;
+                length += amountRead;
+            }
+
+            length -= length % PcmRingBuffer.PCM_FRAME_SIZE;
+            return new PcmClip(source.getSource(), Arrays.copyOf(pcm, length));
+        }
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getLength()
+    {
+        return pcm.length;
+    }
+
+    public long getDurationMillis()
+    {
+        return pcm.length / PcmRingBuffer.BYTES_PER_MILLISECOND;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PcmClip(" + name + ", " + getDurationMillis() + "ms)";
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.audio;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer/single-consumer byte ring for PCM data.
+ * <p>
+ * Exactly one thread may call {@link #write(byte[], int, int)} and {@link #finish()}, and exactly one (other) thread
+ * may call {@link #read(byte[], int, int)}. Neither side ever blocks; callers decide how to wait.
+ */
+public class PcmRingBuffer
+{
+    //48kHz, 16bit, stereo.
+    public static final int BYTES_PER_MILLISECOND = 48 * 2 * 2;
+    public static final int PCM_FRAME_SIZE = 4;
+
+    private final byte[] buffer;
+    private final int mask;
+    private final PcmBufferPool pool;
+    private final AtomicBoolean recycled = new AtomicBoolean(false);
+
+    //Positions only ever increase. The index into the buffer is (position & mask).
+    private final AtomicLong writePosition = new AtomicLong(0);
+    private final AtomicLong readPosition = new AtomicLong(0);
+    private volatile boolean finished = false;
+    private volatile boolean primed = false;
+
+    private final AtomicLong underruns = new AtomicLong(0);
+
+    public PcmRingBuffer(int minimumCapacity)
+    {
+        this(minimumCapacity, null);
+    }
+
+    /**
+     * @param minimumCapacity
+     *      The least amount of bytes the ring has to hold. Rounded up to the next power of two.
+     * @param pool
+     *      The pool to borrow the array from, or null to allocate it. A borrowed array is given back by
+     *      {@link #recycle()}.
+     */
+    public PcmRingBuffer(int minimumCapacity, PcmBufferPool pool)
+    {
+        if (minimumCapacity < PCM_FRAME_SIZE)
+            throw new IllegalArgumentException("PcmRingBuffer capacity must be at least " + PCM_FRAME_SIZE + " bytes");
+
+        int capacity = Integer.highestOneBit(minimumCapacity - 1) << 1;
+        this.pool = pool;
+        this.buffer = pool != null ? pool.acquire(capacity) : new byte[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public static PcmRingBuffer forLookahead(int lookaheadMillis)
+    {
+        return new PcmRingBuffer(lookaheadMillis * BYTES_PER_MILLISECOND, PcmBufferPool.getDefault());
+    }
+
+    /**
+     * Copies as much of the provided data as currently fits into the ring. Producer side only.
+     * A full ring is the normal state of a lookahead buffer, the producer just tries again later.
+     *
+     * @return The amount of bytes that were actually written.
+     */
+    public int write(byte[] src, int offset, int length)
+    {
+        long write = writePosition.get();
+        long read = readPosition.get();
+        int free = buffer.length - (int) (write - read);
+        int amount = Math.min(free, length);
+        if (amount <= 0)
+            return 0;
+
+        int index = (int) (write & mask);
+        int firstPart = Math.min(amount, buffer.length - index);
+        System.arraycopy(src, offset, buffer, index, firstPart);
+        System.arraycopy(src, offset + firstPart, buffer, 0, amount - firstPart);
+
+        writePosition.lazySet(write + amount);
+        primed = true;
+        return amount;
+    }
+
+    /**
+     * Copies up to {@code length} bytes out of the ring, rounded down to whole PCM frames so that a partially
+     * produced sample never reaches the consumer. Requests for less than a frame, like single bytes, are served
+     * as they are. Consumer side only.
+     * If the ring can't fill the request after it has started receiving data, the call is counted as an underrun.
+     *
+     * @return The amount of bytes copied, or -1 if the producer finished and everything has been consumed.
+     */
+    public int read(byte[] dst, int offset, int length)
+    {
+        long read = readPosition.get();
+        long write = writePosition.get();
+        int available = (int) (write - read);
+        boolean done = finished;
+        if (available == 0 && done)
+        {
+            //Re-check in case the last write landed between reading the position and the flag.
+            if (writePosition.get() == read)
+                return -1;
+            write = writePosition.get();
+            available = (int) (write - read);
+        }
+
+        int amount = Math.min(available, length);
+        if (!done && length >= PCM_FRAME_SIZE)
+            amount -= amount % PCM_FRAME_SIZE;
+        if (amount < length && !done && primed)
+            underruns.incrementAndGet();
+        if (amount <= 0)
+            return 0;
+
+        int index = (int) (read & mask);
+        int firstPart = Math.min(amount, buffer.length - index);
+        System.arraycopy(buffer, index, dst, offset, firstPart);
+        System.arraycopy(buffer, 0, dst, offset + firstPart, amount - firstPart);
+
+        readPosition.lazySet(read + amount);
+        return amount;
+    }
+
+    /**
+     * Discards up to {@code length} buffered bytes, rounded down to whole PCM frames. Consumer side only.
+     *
+     * @return The amount of bytes discarded.
+     */
+    public int skip(int length)
+    {
+        long read = readPosition.get();
+        int amount = Math.min((int) (writePosition.get() - read), length);
+        amount -= amount % PCM_FRAME_SIZE;
+        if (amount <= 0)
+            return 0;
+
+        readPosition.lazySet(read + amount);
+        return amount;
+    }
+
+    /**
+     * Marks that the producer will not write anymore. Once the remaining data is read, {@link #read(byte[], int, int)}
+     * returns -1.
+     */
+    public void finish()
+    {
+        finished = true;
+    }
+
+    public boolean isFinished()
+    {
+        return finished;
+    }
+
+    public int available()
+    {
+        return (int) (writePosition.get() - readPosition.get());
+    }
+
+    public int capacity()
+    {
+        return buffer.length;
+    }
+
+    public long getUnderrunCount()
+    {
+        return underruns.get();
+    }
+
+    /**
+     * Gives the array back to the pool it was borrowed from. Only once neither the producer nor the consumer will
+     * touch the ring again, the counters and {@link #available()} stay usable.
+     */
+    public void recycle()
+    {
+        if (pool != null && recycled.compareAndSet(false, true))
+            pool.release(buffer);
+    }
+}
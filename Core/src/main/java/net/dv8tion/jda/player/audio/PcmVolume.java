@@ -0,0 +1,81 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.audio;
+
+/**
+ * Applies gain to big endian, signed 16bit PCM in place.
+ * <p>
+ * The gain is applied in Q12 fixed-point and the result is clamped to the 16bit range instead of wrapping around.
+ * The loop is a plain counted loop over the array without allocations or calls so that the JIT can unroll and
+ * vectorize it.
+ */
+public class PcmVolume
+{
+    //Q12 keeps gains up to 8x within int range for any 16bit sample.
+    public static final int GAIN_SHIFT = 12;
+    public static final int UNITY_GAIN = 1 << GAIN_SHIFT;
+    public static final float MAX_VOLUME = 8.0F;
+
+    private PcmVolume() {}
+
+    /**
+     * Converts a float volume into the fixed-point gain used by {@link #apply(byte[], int, int, int)}.
+     *
+     * @param volume
+     *      The volume, 1.0 being unchanged.
+     * @return The fixed-point gain.
+     */
+    public static int toGain(float volume)
+    {
+        if (volume <= 0)
+            return 0;
+        return Math.round(Math.min(volume, MAX_VOLUME) * UNITY_GAIN);
+    }
+
+    public static void apply(byte[] pcm, int offset, int length, float volume)
+    {
+        apply(pcm, offset, length, toGain(volume));
+    }
+
+    /**
+     * Scales the samples in {@code pcm[offset, offset + length)} by the provided fixed-point gain.
+     *
+     * @param pcm
+     *      Big endian, signed 16bit PCM.
+     * @param offset
+     *      Offset of the first sample. Must be even.
+     * @param length
+     *      Amount of bytes to process. Must be even.
+     * @param gain
+     *      Gain from {@link #toGain(float)}.
+     */
+    public static void apply(byte[] pcm, int offset, int length, int gain)
+    {
+        if (gain == UNITY_GAIN)
+            return;
+
+        int end = offset + (length & ~1);
+        for (int i = offset; i < end; i += 2)
+        {
+            int sample = (pcm[i] << 8) | (pcm[i + 1] & 0xff);
+            sample = (sample * gain) >> GAIN_SHIFT;
+            sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+            pcm[i] = (byte) (sample >> 8);
+            pcm[i + 1] = (byte) sample;
+        }
+    }
+}
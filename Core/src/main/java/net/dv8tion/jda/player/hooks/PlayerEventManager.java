@@ -18,49 +18,239 @@ package net.dv8tion.jda.player.hooks;
 
 
 import net.dv8tion.jda.player.AbstractMusicPlayer;
-import net.dv8tion.jda.player.JDAPlayerInfo;
 import net.dv8tion.jda.player.hooks.events.PlayerEvent;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Dispatches {@link PlayerEvent PlayerEvents} to the registered listeners.
+ * <p>
+ * Listeners are kept in an array that is replaced as a whole on every register/unregister, so dispatching just
+ * iterates the current array without locking or copying. By default events are dispatched on the thread that fired
+ * them, which for NextEvent and FinishEvent is the audio sending thread. Provide an executor with
+ * {@link #setExecutor(Executor)} to dispatch on that executor instead. Events are still delivered one at a time and
+ * in the order they were fired.
+ */
 public class PlayerEventManager
 {
-    private final List<PlayerEventListener> listeners = new LinkedList<>();
+    private static final ListenerStats[] EMPTY = new ListenerStats[0];
+
+    private final AtomicReference<ListenerStats[]> listeners = new AtomicReference<>(EMPTY);
+    private final Queue<PlayerEvent> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private volatile Executor executor = null;
 
     public PlayerEventManager() {}
 
     public void register(PlayerEventListener listener)
     {
-        if (listeners.contains(listener))
-            throw new IllegalArgumentException("Attempted to register a listener that is already registered");
-        listeners.add(listener);
+        if (listener == null)
+            throw new NullPointerException("Cannot register a null listener");
+
+        ListenerStats[] current;
+        ListenerStats[] updated;
+        do
+        {
+            current = listeners.get();
+            if (indexOf(current, listener) > -1)
+                throw new IllegalArgumentException("Attempted to register a listener that is already registered");
+            updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = new ListenerStats(listener);
+        }
+        while (!listeners.compareAndSet(current, updated));
     }
 
     public void unregister(PlayerEventListener listener)
     {
-        listeners.remove(listener);
+        ListenerStats[] current;
+        ListenerStats[] updated;
+        do
+        {
+            current = listeners.get();
+            int index = indexOf(current, listener);
+            if (index < 0)
+                return;
+            updated = new ListenerStats[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        }
+        while (!listeners.compareAndSet(current, updated));
     }
 
     public void handle(PlayerEvent event)
     {
-        List<PlayerEventListener> listenerCopy = new LinkedList<>(listeners);
-        for (PlayerEventListener listener : listenerCopy)
+        Executor exec = executor;
+        if (exec == null)
         {
+            dispatch(event);
+            return;
+        }
+
+        pending.add(event);
+        scheduleDrain(exec);
+    }
+
+    /**
+     * Sets the executor events are dispatched on.
+     *
+     * @param executor
+     *      The executor to dispatch on, or null to dispatch on the thread that fired the event.
+     */
+    public void setExecutor(Executor executor)
+    {
+        this.executor = executor;
+        //Deliver anything still queued for the old executor unless a drain is already doing so.
+        if (executor == null && !pending.isEmpty() && draining.compareAndSet(false, true))
+            drain();
+    }
+
+    public Executor getExecutor()
+    {
+        return executor;
+    }
+
+    public List<PlayerEventListener> getListeners()
+    {
+        ListenerStats[] current = listeners.get();
+        List<PlayerEventListener> list = new ArrayList<>(current.length);
+        for (ListenerStats stats : current)
+            list.add(stats.listener);
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Timing metrics of every registered listener, in registration order.
+     *
+     * @return An unmodifiable list of the stats of each listener.
+     */
+    public List<ListenerStats> getListenerStats()
+    {
+        return Collections.unmodifiableList(Arrays.asList(listeners.get()));
+    }
+
+    private void dispatch(PlayerEvent event)
+    {
+        for (ListenerStats stats : listeners.get())
+        {
+            long start = System.nanoTime();
             try
             {
-                listener.onEvent(event);
+                stats.listener.onEvent(event);
             }
             catch (Throwable throwable)
             {
+                stats.failures.incrementAndGet();
                 AbstractMusicPlayer.LOG.log(throwable);
             }
+            finally
+            {
+                stats.record(System.nanoTime() - start);
+            }
         }
     }
 
-    public List<PlayerEventListener> getListeners()
+    private void scheduleDrain(Executor exec)
+    {
+        //Only one drain runs at a time, which keeps the events in order.
+        if (!draining.compareAndSet(false, true))
+            return;
+        try
+        {
+            exec.execute(this::drain);
+        }
+        catch (RejectedExecutionException e)
+        {
+            //The executor was shut down. Don't lose the events, deliver them here instead.
+            AbstractMusicPlayer.LOG.debug("PlayerEventManager executor rejected dispatch, dispatching on the calling thread");
+            drain();
+        }
+    }
+
+    //Must only be called by whoever set the draining flag.
+    private void drain()
+    {
+        do
+        {
+            PlayerEvent event;
+            while ((event = pending.poll()) != null)
+                dispatch(event);
+            draining.set(false);
+        }
+        while (!pending.isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    private static int indexOf(ListenerStats[] array, PlayerEventListener listener)
+    {
+        for (int i = 0; i < array.length; i++)
+        {
+            if (array[i].listener.equals(listener))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * How often and for how long a single listener ran.
+     */
+    public static class ListenerStats
     {
-        return Collections.unmodifiableList(listeners);
+        private final PlayerEventListener listener;
+        private final AtomicLong invocations = new AtomicLong(0);
+        private final AtomicLong failures = new AtomicLong(0);
+        private final AtomicLong totalNanos = new AtomicLong(0);
+        private final AtomicLong maxNanos = new AtomicLong(0);
+
+        private ListenerStats(PlayerEventListener listener)
+        {
+            this.listener = listener;
+        }
+
+        public PlayerEventListener getListener()
+        {
+            return listener;
+        }
+
+        public long getInvocations()
+        {
+            return invocations.get();
+        }
+
+        public long getFailures()
+        {
+            return failures.get();
+        }
+
+        public long getTotalNanos()
+        {
+            return totalNanos.get();
+        }
+
+        public long getMaxNanos()
+        {
+            return maxNanos.get();
+        }
+
+        public long getAverageNanos()
+        {
+            long count = invocations.get();
+            return count == 0 ? 0 : totalNanos.get() / count;
+        }
+
+        private void record(long nanos)
+        {
+            invocations.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
     }
 }
@@ -30,6 +30,7 @@ public abstract class PlayerListenerAdapter implements PlayerEventListener
     public void onRepeat(RepeatEvent event) {}
     public void onReload(ReloadEvent event) {}
     public void onNext(NextEvent event) {}
+    public void onSeek(SeekEvent event) {}
 
     @Override
     public void onEvent(PlayerEvent event)
@@ -52,5 +53,7 @@ public abstract class PlayerListenerAdapter implements PlayerEventListener
             onReload((ReloadEvent) event);
         else if(event instanceof NextEvent)
             onNext((NextEvent) event);
+        else if (event instanceof SeekEvent)
+            onSeek((SeekEvent) event);
     }
 }
@@ -0,0 +1,36 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.hooks.events;
+
+import net.dv8tion.jda.player.AbstractMusicPlayer;
+import net.dv8tion.jda.player.source.AudioTimestamp;
+
+public class SeekEvent extends PlayerEvent
+{
+    protected final AudioTimestamp position;
+
+    public SeekEvent(AbstractMusicPlayer player, AudioTimestamp position)
+    {
+        super(player);
+        this.position = position;
+    }
+
+    public AudioTimestamp getPosition()
+    {
+        return position;
+    }
+}
@@ -18,9 +18,17 @@ package net.dv8tion.jda.player.source;
 
 import org.json.JSONObject;
 
-public class AudioInfo
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+public class AudioInfo implements Serializable
 {
-    protected JSONObject jsonInfo;
+    private static final long serialVersionUID = 1L;
+
+    //JSONObject isn't Serializable, so it is written by hand in writeObject/readObject.
+    protected transient JSONObject jsonInfo;
     protected String title;
     protected String origin;
     protected String id;
@@ -85,4 +93,59 @@ public class AudioInfo
     {
         return duration;
     }
-}
\ No newline at end of file
+
+    /**
+     * Converts this info into a JSON representation that can be turned back into an AudioInfo
+     * using {@link #fromJson(JSONObject)}.
+     *
+     * @return JSON representation of this AudioInfo.
+     */
+    public JSONObject toJson()
+    {
+        JSONObject json = new JSONObject();
+        json.put("json_info", jsonInfo);
+        json.put("title", title);
+        json.put("origin", origin);
+        json.put("id", id);
+        json.put("encoding", encoding);
+        json.put("description", description);
+        json.put("extractor", extractor);
+        json.put("thumbnail", thumbnail);
+        json.put("error", error);
+        json.put("is_live", isLive);
+        json.put("duration", duration != null ? duration.getTotalSeconds() : -1);
+        return json;
+    }
+
+    public static AudioInfo fromJson(JSONObject json)
+    {
+        AudioInfo info = new AudioInfo();
+        info.jsonInfo = json.optJSONObject("json_info");
+        info.title = json.optString("title", null);
+        info.origin = json.optString("origin", null);
+        info.id = json.optString("id", null);
+        info.encoding = json.optString("encoding", null);
+        info.description = json.optString("description", null);
+        info.extractor = json.optString("extractor", null);
+        info.thumbnail = json.optString("thumbnail", null);
+        info.error = json.optString("error", null);
+        info.isLive = json.optBoolean("is_live", false);
+        info.duration = json.optInt("duration", -1) != -1
+                ? AudioTimestamp.fromSeconds(json.getInt("duration"))
+                : null;
+        return info;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+        out.defaultWriteObject();
+        out.writeObject(jsonInfo != null ? jsonInfo.toString() : null);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        String json = (String) in.readObject();
+        jsonInfo = json != null ? new JSONObject(json) : null;
+    }
+}
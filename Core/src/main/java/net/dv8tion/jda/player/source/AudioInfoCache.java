@@ -0,0 +1,472 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.source;
+
+import net.dv8tion.jda.player.AbstractMusicPlayer;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide cache of resolved {@link AudioInfo}, shared by every {@link RemoteSource}.
+ * <p>
+ * Entries are keyed by {@code extractor:id} when youtube-dl provided one (so different links to the same video share
+ * an entry) with a secondary index from the requested URL. The cache is bounded with LRU eviction and entries expire
+ * after a TTL. Optionally, entries are also appended to a JSON lines file which is read back on startup.
+ * Invalidations append a {@code removed} line, so an invalidated entry doesn't come back after a restart.
+ */
+public class AudioInfoCache
+{
+    public static final int DEFAULT_MAX_ENTRIES = 2000;
+    public static final long DEFAULT_TTL = TimeUnit.HOURS.toMillis(24);
+
+    //Parts of youtube-dl's info that are large and are not needed once the info has been resolved.
+    //Also used by the MediaUrlCache for the info it keeps.
+    static final List<String> STRIPPED_KEYS =
+            Collections.unmodifiableList(Arrays.asList(
+                    "formats",
+                    "thumbnails",
+                    "subtitles",
+                    "automatic_captions"
+            ));
+
+    private static AudioInfoCache defaultCache = new AudioInfoCache(DEFAULT_MAX_ENTRIES, DEFAULT_TTL, null);
+
+    private final int maxEntries;
+    private final long ttl;
+    private final File persistFile;
+    private final Map<String, CacheEntry> entries;
+    private final Map<String, String> urlIndex;
+    //Lines are written outside of the cache's monitor, so that a slow disk never holds up lookups.
+    private final Object persistLock = new Object();
+    //Guarded by this.
+    private final List<String> pendingLines = new ArrayList<>();
+    //Guarded by persistLock.
+    private Writer persistWriter;
+    private int persistedLines = 0;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+
+    /**
+     * @param maxEntries
+     *      Maximum amount of AudioInfo objects kept in memory.
+     * @param ttl
+     *      Time in milliseconds after which an entry is considered stale.
+     * @param persistFile
+     *      JSON lines file to persist the cache to, or null for a memory only cache.
+     */
+    public AudioInfoCache(int maxEntries, long ttl, File persistFile)
+    {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("AudioInfoCache must be able to hold at least 1 entry");
+        if (ttl < 1)
+            throw new IllegalArgumentException("AudioInfoCache TTL must be positive");
+
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.persistFile = persistFile;
+        this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest)
+            {
+                if (size() > AudioInfoCache.this.maxEntries)
+                {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.urlIndex = new LinkedHashMap<String, String>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+            {
+                return size() > AudioInfoCache.this.maxEntries * 2;
+            }
+        };
+
+        if (persistFile != null)
+        {
+            loadPersisted();
+            compact(snapshotLines());
+        }
+    }
+
+    public static synchronized AudioInfoCache getDefault()
+    {
+        return defaultCache;
+    }
+
+    /**
+     * Replaces the cache used by all RemoteSources.
+     *
+     * @param cache
+     *      The new cache, or null to disable caching.
+     */
+    public static synchronized void setDefault(AudioInfoCache cache)
+    {
+        defaultCache = cache;
+    }
+
+    /**
+     * Gets the cached info for the provided URL or {@code extractor:id} key.
+     *
+     * @param url
+     *      The URL that was used to resolve the info.
+     * @return The cached AudioInfo, or null if there is no fresh entry.
+     */
+    public synchronized AudioInfo get(String url)
+    {
+        String key = urlIndex.get(url);
+        CacheEntry entry = entries.get(key != null ? key : url);
+        if (entry == null || entry.isExpired(ttl))
+        {
+            if (entry != null)
+                entries.remove(key != null ? key : url);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.info;
+    }
+
+    /**
+     * Caches successfully resolved info. Infos with an error are ignored.
+     * The cache keeps a copy without the large parts of youtube-dl's info, the provided info is left as it is.
+     *
+     * @param url
+     *      The URL that was used to resolve the info.
+     * @param info
+     *      The resolved info.
+     */
+    public void put(String url, AudioInfo info)
+    {
+        if (info == null || info.getError() != null)
+            return;
+
+        AudioInfo stripped = strippedCopy(info);
+        String key = keyOf(url, stripped);
+        CacheEntry entry = new CacheEntry(stripped, System.currentTimeMillis());
+        String line = persistFile != null ? toLine(key, Collections.singletonList(url), entry) : null;
+        synchronized (this)
+        {
+            entries.put(key, entry);
+            urlIndex.put(url, key);
+            if (line != null)
+                pendingLines.add(line);
+        }
+        if (line != null)
+            persist();
+    }
+
+    public void invalidate(String url)
+    {
+        String line = null;
+        synchronized (this)
+        {
+            String key = urlIndex.remove(url);
+            entries.remove(key != null ? key : url);
+            //Written even if the entry wasn't in memory, the file may still hold it.
+            if (persistFile != null)
+            {
+                line = toRemovedLine(key != null ? key : url, url);
+                pendingLines.add(line);
+            }
+        }
+        if (line != null)
+            persist();
+    }
+
+    public synchronized void clear()
+    {
+        entries.clear();
+        urlIndex.clear();
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    public double getHitRate()
+    {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    private static String keyOf(String url, AudioInfo info)
+    {
+        if (info.getExtractor() != null && info.getId() != null)
+            return info.getExtractor() + ":" + info.getId();
+        return url;
+    }
+
+    private static AudioInfo strippedCopy(AudioInfo info)
+    {
+        JSONObject json = info.toJson();
+        JSONObject jsonInfo = info.getJsonInfo();
+        if (jsonInfo != null)
+            json.put("json_info", strip(jsonInfo));
+        return AudioInfo.fromJson(json);
+    }
+
+    /**
+     * Copies youtube-dl info without its {@link #STRIPPED_KEYS}. Only the top level is copied, so the values are
+     * shared with the original.
+     *
+     * @param jsonInfo
+     *      The youtube-dl info.
+     * @return The copy.
+     */
+    static JSONObject strip(JSONObject jsonInfo)
+    {
+        JSONObject copy = new JSONObject();
+        for (String key : new ArrayList<>(jsonInfo.keySet()))
+        {
+            if (!STRIPPED_KEYS.contains(key))
+                copy.put(key, jsonInfo.opt(key));
+        }
+        return copy;
+    }
+
+    // ========= Persistence ==========
+
+    private void loadPersisted()
+    {
+        if (persistFile.exists())
+        {
+            try (BufferedReader reader = Files.newBufferedReader(persistFile.toPath(), StandardCharsets.UTF_8))
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    if (line.isEmpty())
+                        continue;
+                    try
+                    {
+                        JSONObject json = new JSONObject(line);
+                        String key = json.getString("key");
+                        JSONArray urls = json.optJSONArray("urls");
+                        if (json.optBoolean("removed", false))
+                        {
+                            //Drops what the lines before it added. Compaction only writes live entries, so it goes then.
+                            entries.remove(key);
+                            for (int i = 0; urls != null && i < urls.length(); i++)
+                                urlIndex.remove(urls.getString(i));
+                            continue;
+                        }
+
+                        CacheEntry entry = new CacheEntry(AudioInfo.fromJson(json.getJSONObject("info")), json.getLong("time"));
+                        if (entry.isExpired(ttl))
+                            continue;
+
+                        entries.put(key, entry);
+                        for (int i = 0; urls != null && i < urls.length(); i++)
+                            urlIndex.put(urls.getString(i), key);
+                    }
+                    catch (JSONException e)
+                    {
+                        AbstractMusicPlayer.LOG.debug("Skipping corrupt AudioInfoCache line: " + e.getMessage());
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                AbstractMusicPlayer.LOG.log(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the lines that were added since the last write. Whoever gets here first writes the lines of every put
+     * that is waiting behind it, with a single flush.
+     */
+    private void persist()
+    {
+        synchronized (persistLock)
+        {
+            List<String> lines;
+            synchronized (this)
+            {
+                if (pendingLines.isEmpty())
+                    return;
+                lines = new ArrayList<>(pendingLines);
+                pendingLines.clear();
+            }
+
+            //The file only ever grows, so rewrite it once it holds a lot more lines than we have live entries.
+            if (persistedLines > maxEntries && persistedLines > size() * 2)
+            {
+                rewrite(snapshotLines());
+                return;
+            }
+
+            try
+            {
+                if (persistWriter == null)
+                    persistWriter = openWriter(true);
+                for (String line : lines)
+                {
+                    persistWriter.write(line);
+                    persistWriter.write('\n');
+                }
+                persistWriter.flush();
+                persistedLines += lines.size();
+            }
+            catch (IOException e)
+            {
+                AbstractMusicPlayer.LOG.log(e);
+            }
+        }
+    }
+
+    //The entries are only collected under the cache's monitor, they are written to JSON outside of it.
+    private List<String> snapshotLines()
+    {
+        List<Map.Entry<String, CacheEntry>> snapshot;
+        Map<String, List<String>> urlsByKey = new HashMap<>();
+        synchronized (this)
+        {
+            snapshot = new ArrayList<>(entries.entrySet());
+            for (Map.Entry<String, String> url : urlIndex.entrySet())
+                urlsByKey.computeIfAbsent(url.getValue(), k -> new ArrayList<>()).add(url.getKey());
+        }
+
+        List<String> lines = new ArrayList<>(snapshot.size());
+        for (Map.Entry<String, CacheEntry> entry : snapshot)
+        {
+            List<String> urls = urlsByKey.getOrDefault(entry.getKey(), Collections.emptyList());
+            lines.add(toLine(entry.getKey(), urls, entry.getValue()));
+        }
+        return lines;
+    }
+
+    private void compact(List<String> lines)
+    {
+        synchronized (persistLock)
+        {
+            rewrite(lines);
+        }
+    }
+
+    //Only while holding persistLock.
+    private void rewrite(List<String> lines)
+    {
+        File temp = new File(persistFile.getPath() + ".tmp");
+        try
+        {
+            if (persistWriter != null)
+            {
+                persistWriter.close();
+                persistWriter = null;
+            }
+
+            File parent = persistFile.getAbsoluteFile().getParentFile();
+            if (!parent.exists())
+                parent.mkdirs();
+
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))
+            {
+                for (String line : lines)
+                {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+            Files.move(temp.toPath(), persistFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            persistedLines = lines.size();
+        }
+        catch (IOException e)
+        {
+            AbstractMusicPlayer.LOG.log(e);
+            temp.delete();
+        }
+    }
+
+    private Writer openWriter(boolean append) throws IOException
+    {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(persistFile, append), StandardCharsets.UTF_8));
+    }
+
+    private static String toLine(String key, List<String> urls, CacheEntry entry)
+    {
+        JSONObject json = new JSONObject();
+        json.put("key", key);
+        json.put("urls", new JSONArray(urls));
+        json.put("time", entry.created);
+        json.put("info", entry.info.toJson());
+        return json.toString();
+    }
+
+    private static String toRemovedLine(String key, String url)
+    {
+        JSONObject json = new JSONObject();
+        json.put("key", key);
+        json.put("urls", new JSONArray(Collections.singletonList(url)));
+        json.put("removed", true);
+        return json.toString();
+    }
+
+    private static class CacheEntry
+    {
+        private final AudioInfo info;
+        private final long created;
+
+        private CacheEntry(AudioInfo info, long created)
+        {
+            this.info = info;
+            this.created = created;
+        }
+
+        private boolean isExpired(long ttl)
+        {
+            return System.currentTimeMillis() - created > ttl;
+        }
+    }
+}
@@ -25,5 +25,40 @@ public interface AudioSource
     String getSource();
     AudioInfo getInfo();
     AudioStream asStream();
+
+    /**
+     * Creates a stream of 20ms Opus packets in an Ogg container which can be sent to Discord without being encoded
+     * again on our side. Volume can't be applied to such a stream.
+     *
+     * @return An Ogg Opus stream, or null if this source can only provide PCM.
+     */
+    default AudioStream asOpusStream()
+    {
+        return null;
+    }
+
+    /**
+     * Creates a stream that starts at the provided position instead of the beginning of the source.
+     *
+     * @param position
+     *      The position to start at.
+     * @return A stream starting at the position, or null if this source can only be played from the beginning.
+     */
+    default AudioStream asStream(AudioTimestamp position)
+    {
+        return null;
+    }
+
+    /**
+     * Like {@link #asOpusStream()}, but starting at the provided position.
+     *
+     * @param position
+     *      The position to start at.
+     * @return An Ogg Opus stream starting at the position, or null if this source can't provide one.
+     */
+    default AudioStream asOpusStream(AudioTimestamp position)
+    {
+        return null;
+    }
     File asFile(String path, boolean deleteOnExists) throws FileAlreadyExistsException, FileNotFoundException;
 }
@@ -15,17 +15,189 @@
  */
 package net.dv8tion.jda.player.source;
 
+import net.dv8tion.jda.player.audio.PcmRingBuffer;
+
 import java.io.BufferedInputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 public abstract class AudioStream extends BufferedInputStream
 {
+    /**
+     * @deprecated FFmpeg is launched with {@code -progress} instead, see {@link #getDecoderTelemetry()}.
+     */
+    @Deprecated
     public static final Pattern TIME_PATTERN = Pattern.compile("(?<=time=).*?(?= bitrate)");
 
+    private final List<Future<?>> workers = new CopyOnWriteArrayList<>();
+    private final AtomicInteger activeWorkers = new AtomicInteger(0);
+    private volatile long startMillis = 0;
+    //Position in the source of the audio played so far, in bytes of PCM.
+    private final AtomicLong playbackPosition = new AtomicLong(0);
+
     public AudioStream()
     {
         super(null);
     }
 
-    public abstract AudioTimestamp getCurrentTimestamp();
+    /**
+     * The position in the source of the audio that was played so far. This counts the audio the player actually
+     * handed out, so it doesn't run ahead by what is still buffered, stands still while paused or starved and
+     * follows seeks. Can be called from any thread.
+     *
+     * @return The current playback position.
+     */
+    public AudioTimestamp getCurrentTimestamp()
+    {
+        return AudioTimestamp.fromMilliseconds(playbackPosition.get() / PcmRingBuffer.BYTES_PER_MILLISECOND);
+    }
+
+    /**
+     * Moves the playback position forward by audio that was handed out to be sent.
+     * Called by the player for every frame it provides from this stream.
+     *
+     * @param pcmBytes
+     *      The amount of audio played, in bytes of 48kHz 16bit stereo PCM. For Opus streams that is the PCM the
+     *      packet decodes to.
+     */
+    public void advancePlayback(int pcmBytes)
+    {
+        playbackPosition.addAndGet(pcmBytes);
+    }
+
+    /**
+     * The progress of the FFmpeg process decoding this stream, for streams that are decoded by FFmpeg launched
+     * with {@code -progress}.
+     *
+     * @return The decoder's telemetry, or null if this stream has no decoder that reports it.
+     */
+    public DecoderTelemetry getDecoderTelemetry()
+    {
+        return null;
+    }
+
+    /**
+     * Moves the processes of this stream to a more important {@link ProcessScheduler.Priority} class, like a
+     * preloaded stream once its source starts playing. Streams without processes ignore it.
+     *
+     * @param priority
+     *      The new class.
+     */
+    public void promote(ProcessScheduler.Priority priority) {}
+
+    /**
+     * Moves this stream to the provided position without starting any processes. This is only possible if the
+     * stream already has the audio at that position, like a stream over cached PCM.
+     * Safe to call while another thread reads from this stream.
+     *
+     * @param position
+     *      The position in the source to continue at.
+     * @return True if the stream now continues at the position, false if it can't get there on its own and was
+     *         left unchanged.
+     */
+    public boolean seek(AudioTimestamp position)
+    {
+        return false;
+    }
+
+    /**
+     * The position in the source that this stream started at. Streams of sources started somewhere else than
+     * the beginning, with {@link AudioSource#asStream(AudioTimestamp)}, don't start at 0.
+     *
+     * @return The position this stream started at.
+     */
+    public AudioTimestamp getStartPosition()
+    {
+        return AudioTimestamp.fromMilliseconds(startMillis);
+    }
+
+    /**
+     * Sets where in the source this stream starts, which also moves the playback position there.
+     * Streams that seek in place use this to move the playback position with them.
+     *
+     * @param position
+     *      The position, null for the beginning.
+     */
+    protected void setStartPosition(AudioTimestamp position)
+    {
+        this.startMillis = position != null ? position.getTotalMilliseconds() : 0;
+        playbackPosition.set(startMillis * PcmRingBuffer.BYTES_PER_MILLISECOND);
+    }
+
+    /**
+     * Whether this stream provides Ogg Opus, as created by {@link AudioSource#asOpusStream()}, instead of
+     * 48kHz 16bit stereo PCM.
+     *
+     * @return True if this stream provides Ogg Opus.
+     */
+    public boolean isOpus()
+    {
+        return false;
+    }
+
+    /**
+     * Whether reads are served from a buffer that is already filled ahead of time in the background, like the ring
+     * of a {@link BroadcastSource}. The player doesn't prefetch those, that would only copy the audio once more, so
+     * their bulk reads have to return 0 rather than wait when the buffer is empty.
+     *
+     * @return True if this stream needs no prefetching.
+     */
+    public boolean isBuffered()
+    {
+        return false;
+    }
+
+    /**
+     * The pool that services the process pipes of all streams, {@link StreamWorkerPool#getDefault()}.
+     * Use {@link StreamWorkerPool#setDefault(StreamWorkerPool)} to change it.
+     *
+     * @return The shared StreamWorkerPool
+     */
+    public static StreamWorkerPool getWorkerPool()
+    {
+        return StreamWorkerPool.getDefault();
+    }
+
+    /**
+     * The amount of pipe workers that this stream currently has running on the shared {@link StreamWorkerPool}.
+     *
+     * @return Amount of running workers for this stream.
+     */
+    public int getActiveWorkers()
+    {
+        return activeWorkers.get();
+    }
+
+    /**
+     * Runs a task of this stream on the shared {@link StreamWorkerPool}. It is interrupted by {@link #stopWorkers()}.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException
+     *      If the pool has no free worker.
+     */
+    protected void startWorker(String name, Runnable task)
+    {
+        workers.add(getWorkerPool().submit(name, () ->
+        {
+            activeWorkers.incrementAndGet();
+            try
+            {
+                task.run();
+            }
+            finally
+            {
+                activeWorkers.decrementAndGet();
+            }
+        }));
+    }
+
+    protected void stopWorkers()
+    {
+        for (Future<?> worker : workers)
+            worker.cancel(true);
+        workers.clear();
+    }
 }
@@ -16,8 +16,12 @@
 
 package net.dv8tion.jda.player.source;
 
-public class AudioTimestamp
+import java.io.Serializable;
+
+public class AudioTimestamp implements Serializable
 {
+    private static final long serialVersionUID = 1L;
+
     protected int hours;
     protected int minutes;
     protected int seconds;
@@ -69,6 +73,11 @@ public class AudioTimestamp
         return (hours * 3600) + (minutes * 60) + seconds;
     }
 
+    public long getTotalMilliseconds()
+    {
+        return getTotalSeconds() * 1000L + milliseconds;
+    }
+
     @Override
     public String toString()
     {
@@ -101,6 +110,14 @@ public class AudioTimestamp
         return new AudioTimestamp(hours, minutes, seconds, milliseconds);
     }
 
+    public static AudioTimestamp fromMilliseconds(long milliseconds)
+    {
+        int seconds = (int) (milliseconds / 1000);
+        AudioTimestamp timestamp = fromSeconds(seconds);
+        timestamp.milliseconds = (int) (milliseconds % 1000);
+        return timestamp;
+    }
+
     public static AudioTimestamp fromSeconds(int seconds)
     {
         int hours = seconds / 3600;
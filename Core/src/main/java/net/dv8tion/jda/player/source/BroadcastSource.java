@@ -0,0 +1,393 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.source;
+
+import net.dv8tion.jda.player.AbstractMusicPlayer;
+import net.dv8tion.jda.player.audio.PcmRingBuffer;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays one source to any number of players with a single decoder, like a radio station.
+ * <p>
+ * The first stream opened starts the decoder of the wrapped source, which writes into a ring shared by all
+ * listeners. Every stream has its own cursor into that ring and starts at the live edge, so a player that joins
+ * later hears what the others hear right now. A listener that falls too far behind skips ahead to the live edge
+ * instead of holding up the decoder or the other listeners. The decoder is paced to real time and torn down when
+ * the last stream is closed.
+ * <p>
+ * The streams are PCM only, so every player still applies its own volume. Meant for live streams, sources with a
+ * duration play along a shared timeline instead of from the start for every player. Use {@link #of(AudioSource)}
+ * to share one broadcast between all guilds playing the same source.
+ */
+public class BroadcastSource implements AudioSource
+{
+    //Long enough for a slow listener to catch up, small enough to be shared by hundreds of guilds.
+    public static final int RING_MILLIS = 8000;
+    //How far behind the live edge a new or skipping listener starts, so that it has a little buffered.
+    public static final int JOIN_MILLIS = 100;
+    //How far the decoder may read ahead of real time.
+    public static final int LEAD_MILLIS = 500;
+
+    private static final int CHUNK_SIZE = 20 * PcmRingBuffer.BYTES_PER_MILLISECOND;
+    private static final long WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final ConcurrentHashMap<String, BroadcastSource> SHARED = new ConcurrentHashMap<>();
+
+    private final AudioSource source;
+    private final AtomicLong skips = new AtomicLong(0);
+    //Guarded by this.
+    private Decoder decoder = null;
+    //Whether this was the shared broadcast of its source and was dropped from the map when its last listener left.
+    private boolean retired = false;
+
+    public BroadcastSource(AudioSource source)
+    {
+        if (source == null)
+            throw new NullPointerException("Cannot broadcast a null AudioSource");
+        this.source = source;
+    }
+
+    /**
+     * The broadcast of the provided source that all players should share, created if there is none yet.
+     * Sources are told apart by {@link AudioSource#getSource()}.
+     *
+     * @param source
+     *      The source to broadcast.
+     * @return The shared broadcast.
+     */
+    public static BroadcastSource of(AudioSource source)
+    {
+        return SHARED.computeIfAbsent(source.getSource(), k -> new BroadcastSource(source));
+    }
+
+    public AudioSource getBroadcastedSource()
+    {
+        return source;
+    }
+
+    @Override
+    public String getSource()
+    {
+        return source.getSource();
+    }
+
+    @Override
+    public AudioInfo getInfo()
+    {
+        return source.getInfo();
+    }
+
+    /**
+     * Joins the broadcast at the live edge, starting the decoder if nobody is listening yet.
+     *
+     * @return A stream of the broadcast, or null if the wrapped source couldn't provide one.
+     */
+    @Override
+    public synchronized AudioStream asStream()
+    {
+        //Handed out by of() right before its last listener left. Join whichever broadcast took its place instead of
+        // starting a second decoder for the same source.
+        if (retired)
+            return of(source).asStream();
+
+        //A decoder whose source ended keeps serving its listeners until they move on, newcomers get a new one.
+        if (decoder == null || decoder.finished)
+        {
+            AudioStream stream = source.asStream();
+            if (stream == null)
+                return null;
+            try
+            {
+                decoder = new Decoder(stream);
+            }
+            catch (RejectedExecutionException e)
+            {
+                AbstractMusicPlayer.LOG.log(e);
+                try
+                {
+                    stream.close();
+                }
+                catch (Throwable ignored) {}
+                return null;
+            }
+            AbstractMusicPlayer.LOG.debug("Started broadcasting " + source.getSource());
+        }
+        decoder.listeners++;
+        return new BroadcastStream(decoder);
+    }
+
+    @Override
+    public File asFile(String path, boolean deleteOnExists) throws FileAlreadyExistsException, FileNotFoundException
+    {
+        return source.asFile(path, deleteOnExists);
+    }
+
+    public synchronized int getListenerCount()
+    {
+        return decoder != null ? decoder.listeners : 0;
+    }
+
+    public synchronized boolean isDecoding()
+    {
+        return decoder != null && !decoder.finished;
+    }
+
+    /**
+     * @return How many times a listener fell behind and skipped ahead to the live edge.
+     */
+    public long getSkipCount()
+    {
+        return skips.get();
+    }
+
+    private synchronized void leave(Decoder left)
+    {
+        if (--left.listeners > 0)
+            return;
+
+        left.stop();
+        if (decoder == left)
+        {
+            decoder = null;
+            //Under the same lock as asStream(), so a join either comes first and keeps this alive, or sees it retired.
+            if (SHARED.remove(source.getSource(), this))
+                retired = true;
+            AbstractMusicPlayer.LOG.debug("Stopped broadcasting " + source.getSource() + ", nobody is listening anymore");
+        }
+    }
+
+    /**
+     * One run of the wrapped source's decoder and the ring it writes into. Single writer, any number of readers.
+     */
+    private final class Decoder
+    {
+        private final AudioStream stream;
+        private final byte[] ring;
+        private final int mask;
+        private final long startNanos = System.nanoTime();
+        private final Future<?> pump;
+        //Total bytes written. Published after the bytes are in the ring.
+        private volatile long written = 0;
+        private volatile boolean finished = false;
+        private volatile boolean stopped = false;
+        //Guarded by BroadcastSource.this.
+        private int listeners = 0;
+
+        private Decoder(AudioStream stream)
+        {
+            int capacity = Integer.highestOneBit(RING_MILLIS * PcmRingBuffer.BYTES_PER_MILLISECOND - 1) << 1;
+            this.stream = stream;
+            this.ring = new byte[capacity];
+            this.mask = capacity - 1;
+            this.pump = AudioStream.getWorkerPool().submit("BroadcastSource decoder", this::pump);
+        }
+
+        private void pump()
+        {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            try
+            {
+                while (!stopped)
+                {
+                    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+                    long allowed = (elapsedMillis + LEAD_MILLIS) * PcmRingBuffer.BYTES_PER_MILLISECOND - written;
+                    if (allowed <= 0)
+                    {
+                        LockSupport.parkNanos(WAIT_NANOS);
+                        continue;
+                    }
+
+                    int amountRead = stream.read(chunk, 0, (int) Math.min(chunk.length, allowed));
+                    if (amountRead < 0)
+                        break;
+
+                    long position = written;
+                    int index = (int) (position & mask);
+                    int firstPart = Math.min(amountRead, ring.length - index);
+                    System.arraycopy(chunk, 0, ring, index, firstPart);
+                    System.arraycopy(chunk, firstPart, ring, 0, amountRead - firstPart);
+                    written = position + amountRead;
+                }
+            }
+            catch (IOException e)
+            {
+                if (!stopped)
+                    AbstractMusicPlayer.LOG.log(e);
+            }
+            finally
+            {
+                finished = true;
+            }
+        }
+
+        private void stop()
+        {
+            stopped = true;
+            pump.cancel(true);
+            try
+            {
+                stream.close();
+            }
+            catch (IOException e)
+            {
+                AbstractMusicPlayer.LOG.log(e);
+            }
+        }
+
+        private long liveEdge()
+        {
+            return Math.max(0, written - JOIN_MILLIS * PcmRingBuffer.BYTES_PER_MILLISECOND) & ~(PcmRingBuffer.PCM_FRAME_SIZE - 1);
+        }
+
+        //Where in the source the audio at the position in the broadcast is.
+        private AudioTimestamp positionOf(long position)
+        {
+            return AudioTimestamp.fromMilliseconds(stream.getStartPosition().getTotalMilliseconds()
+                    + position / PcmRingBuffer.BYTES_PER_MILLISECOND);
+        }
+
+        //Whether the bytes from the position on could have been overwritten. Accounts for the chunk being written.
+        private boolean isOverwritten(long position)
+        {
+            return written + CHUNK_SIZE > position + ring.length;
+        }
+    }
+
+    /**
+     * A listener's cursor into the broadcast. The ring already buffers ahead of the listeners, so bulk reads never
+     * wait for the decoder: they return 0 while there is nothing new, like a starved {@link PrefetchingAudioStream}.
+     */
+    private final class BroadcastStream extends AudioStream
+    {
+        private final Decoder decoder;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        private long cursor;
+
+        private BroadcastStream(Decoder decoder)
+        {
+            this.decoder = decoder;
+            this.cursor = decoder.liveEdge();
+            //Playback starts where the listener joined, which keeps it comparable to the shared decoder's telemetry.
+            setStartPosition(decoder.positionOf(cursor));
+        }
+
+        @Override
+        public DecoderTelemetry getDecoderTelemetry()
+        {
+            return decoder.stream.getDecoderTelemetry();
+        }
+
+        @Override
+        public boolean isBuffered()
+        {
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            //Single bytes are never read on the send thread, so this one waits like a pipe.
+            byte[] single = new byte[1];
+            int amountRead;
+            while ((amountRead = read(single, 0, 1)) == 0)
+            {
+                if (Thread.interrupted())
+                    throw new InterruptedIOException("Interrupted while waiting for the broadcast");
+                LockSupport.parkNanos(WAIT_NANOS);
+            }
+            return amountRead == 1 ? single[0] & 0xff : -1;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException
+        {
+            while (true)
+            {
+                if (closed.get())
+                    throw new IOException("Stream closed");
+
+                if (decoder.isOverwritten(cursor))
+                    skipToLiveEdge();
+
+                long available = decoder.written - cursor;
+                //Whole PCM frames only, unless a single byte was asked for.
+                int amount = (int) Math.min(available, len);
+                if (len >= PcmRingBuffer.PCM_FRAME_SIZE)
+                    amount -= amount % PcmRingBuffer.PCM_FRAME_SIZE;
+
+                if (amount > 0)
+                {
+                    int index = (int) (cursor & decoder.mask);
+                    int firstPart = Math.min(amount, decoder.ring.length - index);
+                    System.arraycopy(decoder.ring, index, b, off, firstPart);
+                    System.arraycopy(decoder.ring, 0, b, off + firstPart, amount - firstPart);
+
+                    //The decoder lapped this listener while copying, what was copied is garbage.
+                    if (decoder.isOverwritten(cursor))
+                    {
+                        skipToLiveEdge();
+                        continue;
+                    }
+                    cursor += amount;
+                    return amount;
+                }
+
+                if (decoder.finished && cursor >= decoder.written)
+                    return -1;
+                return 0;
+            }
+        }
+
+        @Override
+        public int available() throws IOException
+        {
+            return (int) Math.max(0, decoder.written - cursor);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            //Not synchronized, so it never waits for a read in progress.
+            if (!closed.compareAndSet(false, true))
+                return;
+            leave(decoder);
+            try
+            {
+                super.close();
+            }
+            catch (Throwable ignored) {}
+        }
+
+        private void skipToLiveEdge()
+        {
+            cursor = decoder.liveEdge();
+            setStartPosition(decoder.positionOf(cursor));
+            skips.incrementAndGet();
+        }
+    }
+}
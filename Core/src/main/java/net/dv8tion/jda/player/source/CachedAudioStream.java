@@ -0,0 +1,109 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.source;
+
+import net.dv8tion.jda.player.audio.PcmRingBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Plays already decoded PCM straight out of a memory-mapped file from the {@link PcmDiskCache}.
+ * No processes or workers are involved, and seeking only moves the position in the mapping.
+ */
+public class CachedAudioStream extends AudioStream
+{
+    private MappedByteBuffer data;
+
+    public CachedAudioStream(File file) throws IOException
+    {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel())
+        {
+            this.data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    @Override
+    public synchronized boolean seek(AudioTimestamp position)
+    {
+        MappedByteBuffer buffer = data;
+        if (buffer == null)
+            return false;
+
+        long target = position.getTotalMilliseconds() * PcmRingBuffer.BYTES_PER_MILLISECOND;
+        buffer.position((int) Math.min(target, buffer.limit()));
+        setStartPosition(position);
+        return true;
+    }
+
+    @Override
+    public synchronized int read() throws IOException
+    {
+        MappedByteBuffer buffer = ensureOpen();
+        return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException
+    {
+        MappedByteBuffer buffer = ensureOpen();
+        if (!buffer.hasRemaining())
+            return -1;
+
+        int amount = Math.min(len, buffer.remaining());
+        buffer.get(b, off, amount);
+        return amount;
+    }
+
+    @Override
+    public synchronized long skip(long n) throws IOException
+    {
+        MappedByteBuffer buffer = ensureOpen();
+        int amount = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + amount);
+        return amount;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        return ensureOpen().remaining();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        data = null;
+        try
+        {
+            super.close();
+        }
+        catch (Throwable ignored) {}
+    }
+
+    private MappedByteBuffer ensureOpen() throws IOException
+    {
+        MappedByteBuffer buffer = data;
+        if (buffer == null)
+            throw new IOException("Stream closed");
+        return buffer;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.source;
+
+/**
+ * Progress of the FFmpeg process decoding a stream, as reported by FFmpeg's {@code -progress} output.
+ * <p>
+ * Updated by the stream's STDerr worker about twice per second and readable from any thread. Whether the decoder keeps
+ * up is judged by how far its output is ahead of playback, see {@link #isFallingBehind(AudioTimestamp)}.
+ */
+public class DecoderTelemetry
+{
+    /**
+     * Decoded audio that is less than this far ahead of playback counts as falling behind. FFmpeg reports about
+     * twice per second, so the reported lead can be half a second short.
+     */
+    public static final long LOW_LEAD_MILLIS = 1000;
+
+    private volatile long startMillis = 0;
+    private volatile long outTimeMicros = 0;
+    private volatile long speedMillis = -1;
+    private volatile long bitrate = -1;
+    private volatile long totalSize = 0;
+    private volatile long droppedFrames = 0;
+    private volatile long duplicatedFrames = 0;
+    private volatile long updates = 0;
+    private volatile long lastUpdate = 0;
+    private volatile boolean finished = false;
+
+    /**
+     * How far FFmpeg has decoded, counted from where it started decoding.
+     *
+     * @return The decoder's output time.
+     */
+    public AudioTimestamp getOutTime()
+    {
+        return AudioTimestamp.fromMilliseconds(outTimeMicros / 1000);
+    }
+
+    public long getOutTimeMicros()
+    {
+        return outTimeMicros;
+    }
+
+    /**
+     * Where in the source FFmpeg has decoded to, its output time counted from where in the source it started.
+     *
+     * @return The position of the last decoded audio.
+     */
+    public AudioTimestamp getDecodedPosition()
+    {
+        return AudioTimestamp.fromMilliseconds(startMillis + outTimeMicros / 1000);
+    }
+
+    /**
+     * How much decoded audio is ahead of playback, wherever it is buffered between the decoder and the player.
+     *
+     * @param playbackPosition
+     *      The position in the source that was played, like {@link AudioStream#getCurrentTimestamp()} of the stream
+     *      the player reads.
+     * @return The lead in milliseconds. Negative if FFmpeg's last report is behind playback.
+     */
+    public long getLeadMillis(AudioTimestamp playbackPosition)
+    {
+        return startMillis + outTimeMicros / 1000 - playbackPosition.getTotalMilliseconds();
+    }
+
+    /**
+     * How many seconds of audio FFmpeg decoded per second since it started. This is an average that includes the
+     * time the decoder was throttled, so a low speed alone doesn't mean it falls behind.
+     *
+     * @return The decode speed, or -1 if FFmpeg hasn't reported it yet.
+     */
+    public float getSpeed()
+    {
+        long speed = speedMillis;
+        return speed < 0 ? -1 : speed / 1000F;
+    }
+
+    /**
+     * @return The bitrate of the decoded output in bits per second, or -1 if FFmpeg hasn't reported it yet.
+     */
+    public long getBitrate()
+    {
+        return bitrate;
+    }
+
+    /**
+     * @return The amount of bytes FFmpeg has written so far.
+     */
+    public long getTotalSize()
+    {
+        return totalSize;
+    }
+
+    public long getDroppedFrames()
+    {
+        return droppedFrames;
+    }
+
+    public long getDuplicatedFrames()
+    {
+        return duplicatedFrames;
+    }
+
+    /**
+     * @return The amount of progress reports received so far.
+     */
+    public long getUpdateCount()
+    {
+        return updates;
+    }
+
+    /**
+     * @return When the last progress report was received in epoch milliseconds, or 0 if there was none yet.
+     */
+    public long getLastUpdate()
+    {
+        return lastUpdate;
+    }
+
+    /**
+     * @return True once FFmpeg reported that it is done decoding.
+     */
+    public boolean isFinished()
+    {
+        return finished;
+    }
+
+    /**
+     * Whether the decoder is about to fall behind playback: less than {@link #LOW_LEAD_MILLIS} of decoded audio is
+     * ahead of the playback position. Only judged once FFmpeg reported at least twice, as the first report covers the
+     * startup.
+     * <p>
+     * This goes by buffer depth rather than FFmpeg's speed. The speed is averaged since the start and drops whenever
+     * the decoder is throttled by full buffers or paused playback, while such a decoder is far ahead.
+     *
+     * @param playbackPosition
+     *      The position in the source that was played, see {@link #getLeadMillis(AudioTimestamp)}.
+     * @return True if playback is about to catch up with the decoder.
+     */
+    public boolean isFallingBehind(AudioTimestamp playbackPosition)
+    {
+        return !finished && updates >= 2 && getLeadMillis(playbackPosition) < LOW_LEAD_MILLIS;
+    }
+
+    /**
+     * Sets where in the source the decoder starts, for decoders launched with an input seek.
+     */
+    void setStartPosition(AudioTimestamp position)
+    {
+        this.startMillis = position != null ? position.getTotalMilliseconds() : 0;
+    }
+
+    void update(long outTimeMicros, long speedMillis, long bitrate, long totalSize, long droppedFrames,
+                long duplicatedFrames, boolean finished)
+    {
+        if (outTimeMicros >= 0)
+            this.outTimeMicros = outTimeMicros;
+        if (speedMillis >= 0)
+            this.speedMillis = speedMillis;
+        if (bitrate >= 0)
+            this.bitrate = bitrate;
+        if (totalSize >= 0)
+            this.totalSize = totalSize;
+        if (droppedFrames >= 0)
+            this.droppedFrames = droppedFrames;
+        if (duplicatedFrames >= 0)
+            this.duplicatedFrames = duplicatedFrames;
+        this.lastUpdate = System.currentTimeMillis();
+        this.updates = updates + 1;     //Only the stream's STDerr worker updates.
+        if (finished)
+            this.finished = true;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DecoderTelemetry(time=" + getOutTime().getFullTimestamp() + ", speed=" + getSpeed() + "x, bitrate="
+                + bitrate + ", dropped=" + droppedFrames + ", duplicated=" + duplicatedFrames + ")";
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.source;
+
+import net.dv8tion.jda.player.AbstractMusicPlayer;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps FFmpeg processes started ahead of time, waiting on STDin.
+ * <p>
+ * A {@link RemoteStream} that pipes youtube-dl into FFmpeg always starts FFmpeg with the same command, as the input
+ * only arrives through STDin later. So instead of starting FFmpeg on every track change, the stream takes over one of
+ * the idle processes of this pool and only has to start youtube-dl. Taken processes are replaced in the background.
+ * <p>
+ * Only the commands the pool was created with are pooled, by default {@link RemoteSource#FFMPEG_LAUNCH_ARGS} and
+ * {@link RemoteSource#OPUS_FFMPEG_LAUNCH_ARGS}. Idle processes don't take a slot of the {@link ProcessScheduler},
+ * the stream taking one over is admitted like any other. There is no pool by default.
+ */
+public class FFmpegProcessPool
+{
+    public static final int DEFAULT_SIZE = 2;
+    private static FFmpegProcessPool defaultPool = null;
+
+    private final int size;
+    private final Map<List<String>, Commands> commands = new HashMap<>();
+    private volatile boolean shutdown = false;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong spawned = new AtomicLong(0);
+    private final AtomicLong failures = new AtomicLong(0);
+
+    public FFmpegProcessPool()
+    {
+        this(DEFAULT_SIZE);
+    }
+
+    public FFmpegProcessPool(int size)
+    {
+        this(size, Arrays.asList(RemoteSource.FFMPEG_LAUNCH_ARGS, RemoteSource.OPUS_FFMPEG_LAUNCH_ARGS));
+    }
+
+    /**
+     * Creates the pool and starts filling it right away.
+     *
+     * @param size
+     *      How many idle processes to keep of each command.
+     * @param commands
+     *      The FFmpeg commands to keep processes of. They have to read their input from STDin.
+     */
+    public FFmpegProcessPool(int size, List<List<String>> commands)
+    {
+        if (size < 1)
+            throw new IllegalArgumentException("A FFmpegProcessPool has to keep at least 1 process per command");
+        this.size = size;
+        for (List<String> command : commands)
+            this.commands.put(Collections.unmodifiableList(new ArrayList<>(command)), new Commands());
+        for (List<String> command : this.commands.keySet())
+            refill(command);
+    }
+
+    public static synchronized FFmpegProcessPool getDefault()
+    {
+        return defaultPool;
+    }
+
+    /**
+     * Sets the pool RemoteStreams take their FFmpeg processes from. There is none by default.
+     * A replaced pool keeps its idle processes until it is {@link #shutdown()}.
+     *
+     * @param pool
+     *      The pool to use, or null to start FFmpeg for every stream.
+     */
+    public static synchronized void setDefault(FFmpegProcessPool pool)
+    {
+        defaultPool = pool;
+    }
+
+    /**
+     * Takes over an idle process of the provided command. Its STDin, STDout and STDerr are untouched.
+     *
+     * @param command
+     *      The FFmpeg command.
+     * @return The running process, or null if the command isn't pooled or no process is idle right now.
+     */
+    public Process take(List<String> command)
+    {
+        Commands pooled = commands.get(command);
+        if (pooled == null || shutdown)
+            return null;
+
+        Process process;
+        while ((process = pooled.idle.poll()) != null)
+        {
+            pooled.idleCount.decrementAndGet();
+            //Killed from the outside while it was waiting.
+            if (process.isAlive())
+                break;
+        }
+        refill(command);
+
+        if (process == null)
+        {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return process;
+    }
+
+    public int getSize()
+    {
+        return size;
+    }
+
+    public int getIdleCount()
+    {
+        int idle = 0;
+        for (Commands pooled : commands.values())
+            idle += pooled.idleCount.get();
+        return idle;
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    public long getSpawnCount()
+    {
+        return spawned.get();
+    }
+
+    public long getFailureCount()
+    {
+        return failures.get();
+    }
+
+    /**
+     * Stops refilling and kills all idle processes. Processes that were already taken over are left alone.
+     */
+    public void shutdown()
+    {
+        shutdown = true;
+        for (Commands pooled : commands.values())
+        {
+            Process process;
+            while ((process = pooled.idle.poll()) != null)
+            {
+                pooled.idleCount.decrementAndGet();
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    //Tops the command up to the pool size on a worker, unless a refill of it is already running.
+    private void refill(List<String> command)
+    {
+        Commands pooled = commands.get(command);
+        if (shutdown || pooled.idleCount.get() >= size || !pooled.refilling.compareAndSet(false, true))
+            return;
+
+        try
+        {
+            submitRefill(command, pooled);
+        }
+        catch (RejectedExecutionException e)
+        {
+            //Tried again with the next take.
+            pooled.refilling.set(false);
+        }
+    }
+
+    private void submitRefill(List<String> command, Commands pooled)
+    {
+        AudioStream.getWorkerPool().submit("FFmpegProcessPool refill", () ->
+        {
+            try
+            {
+                while (!shutdown && pooled.idleCount.get() < size)
+                {
+                    Process process = new ProcessBuilder().command(command).start();
+                    spawned.incrementAndGet();
+                    pooled.idle.add(process);
+                    pooled.idleCount.incrementAndGet();
+                }
+            }
+            catch (IOException e)
+            {
+                //Tried again with the next take.
+                failures.incrementAndGet();
+                AbstractMusicPlayer.LOG.debug("Could not start an idle FFmpeg process: " + e.getMessage());
+            }
+            finally
+            {
+                pooled.refilling.set(false);
+            }
+
+            //A shutdown racing the last spawn.
+            if (shutdown)
+                shutdown();
+        });
+    }
+
+    private static final class Commands
+    {
+        private final ConcurrentLinkedQueue<Process> idle = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger idleCount = new AtomicInteger(0);
+        private final AtomicBoolean refilling = new AtomicBoolean(false);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.source;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses the {@code key=value} lines FFmpeg writes with {@code -progress} into a {@link DecoderTelemetry}.
+ * <p>
+ * The output is scanned byte by byte as it arrives from the pipe, so lines can be split across reads. Values are
+ * parsed straight into numbers and keys are compared against preallocated byte arrays, so parsing doesn't allocate.
+ * Lines that aren't progress, like FFmpeg's error messages on the same pipe, are skipped. A report is published to
+ * the telemetry when its closing {@code progress=continue} or {@code progress=end} line arrives.
+ * <p>
+ * Not thread safe, meant to be fed by a single STDerr worker.
+ */
+public class FFmpegProgressParser
+{
+    private static final byte[] OUT_TIME_US = bytes("out_time_us");
+    //Older FFmpeg versions only print this one. Despite the name, it is in microseconds as well.
+    private static final byte[] OUT_TIME_MS = bytes("out_time_ms");
+    private static final byte[] SPEED = bytes("speed");
+    private static final byte[] BITRATE = bytes("bitrate");
+    private static final byte[] TOTAL_SIZE = bytes("total_size");
+    private static final byte[] DROP_FRAMES = bytes("drop_frames");
+    private static final byte[] DUP_FRAMES = bytes("dup_frames");
+    private static final byte[] PROGRESS = bytes("progress");
+
+    //Values are kept with 3 decimals, speed=1.25x becomes 1250.
+    private static final int DECIMALS = 3;
+
+    private final DecoderTelemetry telemetry;
+
+    //Current line
+    private final byte[] key = new byte[32];
+    private int keyLength = 0;
+    private boolean inValue = false;
+    private boolean skipLine = false;
+    private long integerPart = 0;
+    private long fractionPart = 0;
+    private int fractionDigits = 0;
+    private boolean inFraction = false;
+    private boolean hasDigits = false;
+    private boolean invalidValue = false;
+    private boolean numberEnded = false;
+    private byte firstValueByte = 0;
+
+    //Current report. -1 means not reported.
+    private long outTimeMicros = -1;
+    private long speedMillis = -1;
+    private long bitrate = -1;
+    private long totalSize = -1;
+    private long droppedFrames = -1;
+    private long duplicatedFrames = -1;
+
+    public FFmpegProgressParser(DecoderTelemetry telemetry)
+    {
+        if (telemetry == null)
+            throw new NullPointerException("Cannot report progress to null telemetry");
+        this.telemetry = telemetry;
+    }
+
+    public DecoderTelemetry getTelemetry()
+    {
+        return telemetry;
+    }
+
+    /**
+     * Scans the provided output of FFmpeg.
+     *
+     * @param data
+     *      The bytes read from FFmpeg's progress pipe.
+     * @param offset
+     *      Offset of the first byte.
+     * @param length
+     *      Amount of bytes to scan.
+     */
+    public void feed(byte[] data, int offset, int length)
+    {
+        int end = offset + length;
+        for (int i = offset; i < end; i++)
+        {
+            byte b = data[i];
+            if (b == '\n' || b == '\r')
+                endLine();
+            else if (skipLine)
+                continue;
+            else if (!inValue)
+                keyByte(b);
+            else
+                valueByte(b);
+        }
+    }
+
+    private void keyByte(byte b)
+    {
+        if (b == '=')
+        {
+            inValue = true;
+            integerPart = 0;
+            fractionPart = 0;
+            fractionDigits = 0;
+            inFraction = false;
+            hasDigits = false;
+            invalidValue = false;
+            numberEnded = false;
+            firstValueByte = 0;
+        }
+        else if (keyLength < key.length)
+            key[keyLength++] = b;
+        else
+            skipLine = true;    //Too long to be a progress key
+    }
+
+    private void valueByte(byte b)
+    {
+        if (firstValueByte == 0 && b != ' ')
+            firstValueByte = b;
+
+        if (invalidValue || numberEnded)
+            return;
+
+        if (b >= '0' && b <= '9')
+        {
+            hasDigits = true;
+            if (!inFraction)
+                integerPart = integerPart * 10 + (b - '0');
+            else if (fractionDigits < DECIMALS)
+            {
+                fractionPart = fractionPart * 10 + (b - '0');
+                fractionDigits++;
+            }
+        }
+        else if (b == '.' && hasDigits && !inFraction)
+            inFraction = true;
+        else if (b == ' ' && !hasDigits)
+            return;     //FFmpeg pads values such as bitrate=  128.0kbits/s
+        else if (!hasDigits)
+            invalidValue = true;    //N/A, or a value that isn't a number
+        else
+            numberEnded = true;     //Unit suffix such as kbits/s or x
+    }
+
+    private void endLine()
+    {
+        if (inValue && !skipLine)
+            handleValue();
+
+        keyLength = 0;
+        inValue = false;
+        skipLine = false;
+    }
+
+    private void handleValue()
+    {
+        long number = hasDigits && !invalidValue ? integerPart : -1;
+        if (keyIs(OUT_TIME_US) || keyIs(OUT_TIME_MS))
+            outTimeMicros = number;
+        else if (keyIs(SPEED))
+            speedMillis = scaled();
+        else if (keyIs(BITRATE))
+            bitrate = scaled();     //kbit/s with 3 decimals is bit/s
+        else if (keyIs(TOTAL_SIZE))
+            totalSize = number;
+        else if (keyIs(DROP_FRAMES))
+            droppedFrames = number;
+        else if (keyIs(DUP_FRAMES))
+            duplicatedFrames = number;
+        else if (keyIs(PROGRESS))
+        {
+            telemetry.update(outTimeMicros, speedMillis, bitrate, totalSize, droppedFrames, duplicatedFrames,
+                    firstValueByte == 'e');
+            outTimeMicros = -1;
+            speedMillis = -1;
+            bitrate = -1;
+            totalSize = -1;
+            droppedFrames = -1;
+            duplicatedFrames = -1;
+        }
+    }
+
+    private long scaled()
+    {
+        if (!hasDigits || invalidValue)
+            return -1;
+        long fraction = fractionPart;
+        for (int i = fractionDigits; i < DECIMALS; i++)
+            fraction *= 10;
+        return integerPart * 1000 + fraction;
+    }
+
+    private boolean keyIs(byte[] expected)
+    {
+        if (keyLength != expected.length)
+            return false;
+        for (int i = 0; i < keyLength; i++)
+        {
+            if (key[i] != expected[i])
+                return false;
+        }
+        return true;
+    }
+
+    private static byte[] bytes(String key)
+    {
+        return key.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -36,12 +36,32 @@ public class LocalSource implements AudioSource
     public static final List<String> FFMPEG_LAUNCH_ARGS =
         Collections.unmodifiableList(Arrays.asList(
                 "ffmpeg",       //Program launch
+                "-nostats",     //No human readable progress line
+                "-progress",    //Machine readable progress instead, see FFmpegProgressParser
+                "pipe:2",       //Written to STDerr
                 "-f", "s16be",  //Format.  PCM, signed, 16bit, Big Endian
                 "-ac", "2",     //Channels. Specify 2 for stereo audio.
                 "-ar", "48000", //Rate. Opus requires an audio rate of 48000hz
                 "-map", "a",    //Makes sure to only output audio, even if the specified format supports other streams
                 "-"             //Used to specify STDout as the output location (pipe)
         ));
+    public static final List<String> OPUS_FFMPEG_LAUNCH_ARGS =
+        Collections.unmodifiableList(Arrays.asList(
+                "ffmpeg",                   //Program launch
+                "-nostats",                 //No human readable progress line
+                "-progress",                //Machine readable progress instead, see FFmpegProgressParser
+                "pipe:2",                   //Written to STDerr
+                "-ac", "2",                 //Channels. Specify 2 for stereo audio.
+                "-ar", "48000",             //Rate. Opus requires an audio rate of 48000hz
+                "-map", "a",                //Makes sure to only output audio, even if the specified format supports other streams
+                "-c:a", "libopus",          //Encode to Opus in FFmpeg instead of in the JVM
+                "-b:a", "96k",              //Bitrate. Discord voice channels default to 64k, 96k leaves room for higher quality channels
+                "-frame_duration", "20",    //One Opus packet per 20ms frame, as sent to Discord
+                "-application", "audio",    //Tune the encoder for music rather than voice
+                "-f", "ogg",                //Container. Ogg keeps the packet boundaries, see OggOpusReader
+                "-page_duration", "20000",  //Flush an Ogg page for every packet (microseconds) so they can be read right away
+                "-"                         //Used to specify STDout as the output location (pipe)
+        ));
     public static final List<String> FFPROBE_INFO_ARGS =
             Collections.unmodifiableList(Arrays.asList(
                     "ffprobe",
@@ -88,6 +108,7 @@ public class LocalSource implements AudioSource
             return audioInfo;
 
         audioInfo = new AudioInfo();
+        ProcessScheduler.Ticket ticket = null;
         Process ffprobeProcess = null;
         InputStream ffprobeStream = null;
         try
@@ -97,6 +118,7 @@ public class LocalSource implements AudioSource
             infoArgs.add("-i");
             infoArgs.add(file.getCanonicalPath());
 
+            ticket = ProcessScheduler.admit(ProcessScheduler.Priority.METADATA);
             ffprobeProcess = new ProcessBuilder().command(infoArgs).start();
             ffprobeStream = ffprobeProcess.getInputStream();
             byte[] infoData = IOUtils.readFully(ffprobeStream, -1, false);
@@ -152,20 +174,54 @@ public class LocalSource implements AudioSource
                     ffprobeStream.close();
             }
             catch (Throwable ignored) {}
+            if (ticket != null)
+                ticket.close();
         }
         return audioInfo;
     }
 
     @Override
     public AudioStream asStream()
+    {
+        return openStream(FFMPEG_LAUNCH_ARGS, false, null);
+    }
+
+    @Override
+    public AudioStream asOpusStream()
+    {
+        return openStream(OPUS_FFMPEG_LAUNCH_ARGS, true, null);
+    }
+
+    /**
+     * Creates a stream starting at the provided position. FFmpeg seeks in the file before it starts decoding,
+     * so this takes about as long as starting from the beginning.
+     */
+    @Override
+    public AudioStream asStream(AudioTimestamp position)
+    {
+        return openStream(FFMPEG_LAUNCH_ARGS, false, position);
+    }
+
+    @Override
+    public AudioStream asOpusStream(AudioTimestamp position)
+    {
+        return openStream(OPUS_FFMPEG_LAUNCH_ARGS, true, position);
+    }
+
+    private AudioStream openStream(List<String> baseLaunchArgs, boolean opus, AudioTimestamp position)
     {
         List<String> ffmpegLaunchArgs = new LinkedList<>();
-        ffmpegLaunchArgs.addAll(FFMPEG_LAUNCH_ARGS);
+        ffmpegLaunchArgs.addAll(baseLaunchArgs);
         try
         {
+            if (position != null && position.getTotalMilliseconds() > 0)
+            {
+                ffmpegLaunchArgs.add("-ss");    //Input seek. Placed before -i so FFmpeg seeks in the file instead of decoding up to the position
+                ffmpegLaunchArgs.add(position.getFullTimestamp());
+            }
             ffmpegLaunchArgs.add("-i");
             ffmpegLaunchArgs.add(file.getCanonicalPath());
-            return new LocalStream(ffmpegLaunchArgs);
+            return new LocalStream(ffmpegLaunchArgs, opus, position);
         }
         catch (IOException e)
         {
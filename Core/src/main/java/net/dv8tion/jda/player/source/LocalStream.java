@@ -20,20 +20,53 @@ import net.dv8tion.jda.player.AbstractMusicPlayer;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
+import java.util.concurrent.RejectedExecutionException;
 
 public class LocalStream extends AudioStream
 {
     private Process ffmpegProcess;
-    private Thread ffmpegErrGobler;
-    private AudioTimestamp timestamp;
+    private volatile ProcessScheduler.Ticket decoderTicket;
+    private final DecoderTelemetry telemetry = new DecoderTelemetry();
 
-    public LocalStream(List<String> ffmpegLaunchArgs)
+    private final boolean opus;
+
+    public LocalStream(List<String> ffmpegLaunchArgs) throws IOException
+    {
+        this(ffmpegLaunchArgs, false);
+    }
+
+    /**
+     * @param ffmpegLaunchArgs
+     *      The FFmpeg command.
+     * @param opus
+     *      True if the command outputs Ogg Opus rather than PCM.
+     * @throws IOException
+     *      If FFmpeg could not be started, or wasn't admitted by the {@link ProcessScheduler} in time.
+     */
+    public LocalStream(List<String> ffmpegLaunchArgs, boolean opus) throws IOException
+    {
+        this(ffmpegLaunchArgs, opus, null);
+    }
+
+    /**
+     * @param ffmpegLaunchArgs
+     *      The FFmpeg command.
+     * @param opus
+     *      True if the command outputs Ogg Opus rather than PCM.
+     * @param startPosition
+     *      Where in the file the command starts decoding, for commands with an input seek. May be null.
+     * @throws IOException
+     *      If FFmpeg could not be started, or wasn't admitted by the {@link ProcessScheduler} in time.
+     */
+    public LocalStream(List<String> ffmpegLaunchArgs, boolean opus, AudioTimestamp startPosition) throws IOException
     {
+        this.opus = opus;
+        setStartPosition(startPosition);
+        telemetry.setStartPosition(startPosition);
         try
         {
+            decoderTicket = ProcessScheduler.admit(ProcessScheduler.Priority.PLAYBACK);
             ProcessBuilder pBuilder = new ProcessBuilder();
 
             pBuilder.command(ffmpegLaunchArgs);
@@ -42,55 +75,11 @@ public class LocalStream extends AudioStream
 
             final Process ffmpegProcessF = ffmpegProcess;
 
-            ffmpegErrGobler = new Thread("LocalStream ffmpegErrGobler")
-            {
-                @Override
-                public void run()
-                {
-                    InputStream fromFFmpeg = null;
-                    try
-                    {
-                        fromFFmpeg = ffmpegProcessF.getErrorStream();
-                        if (fromFFmpeg == null)
-                            AbstractMusicPlayer.LOG.fatal("LocalStream: ErrGobler: fromFFmpeg is null");
-
-                        byte[] buffer = new byte[1024];
-                        int amountRead = -1;
-                        while (!isInterrupted() && ((amountRead = fromFFmpeg.read(buffer)) > -1))
-                        {
-                            String info = new String(Arrays.copyOf(buffer, amountRead));
-                            if (info.contains("time="))
-                            {
-                                Matcher m = TIME_PATTERN.matcher(info);
-                                if (m.find())
-                                {
-                                    timestamp = AudioTimestamp.fromFFmpegTimestamp(m.group());
-                                }
-                            }
-                        }
-                    }
-                    catch (IOException e)
-                    {
-                        AbstractMusicPlayer.LOG.log(e);
-                    }
-                    finally
-                    {
-                        try
-                        {
-                            if (fromFFmpeg != null)
-                                fromFFmpeg.close();
-                        }
-                        catch (Throwable ignored) {}
-                    }
-                }
-            };
-
-            ffmpegErrGobler.start();
+            startWorker("LocalStream ffmpegErrGobler", () -> gobbleFFmpegErr(ffmpegProcessF));
             this.in = ffmpegProcess.getInputStream();
         }
-        catch (IOException e)
+        catch (IOException | RejectedExecutionException e)
         {
-            AbstractMusicPlayer.LOG.log(e);
             try
             {
                 close();
@@ -99,13 +88,60 @@ public class LocalStream extends AudioStream
             {
                 AbstractMusicPlayer.LOG.log(e1);
             }
+            throw e instanceof IOException ? (IOException) e : new IOException("No worker free to start FFmpeg", e);
         }
     }
 
     @Override
-    public AudioTimestamp getCurrentTimestamp()
+    public DecoderTelemetry getDecoderTelemetry()
+    {
+        return telemetry;
+    }
+
+    @Override
+    public boolean isOpus()
+    {
+        return opus;
+    }
+
+    @Override
+    public void promote(ProcessScheduler.Priority priority)
+    {
+        ProcessScheduler.Ticket ticket = decoderTicket;
+        if (ticket != null)
+            ticket.promote(priority);
+    }
+
+    private void gobbleFFmpegErr(Process ffmpegProcess)
     {
-        return timestamp;
+        InputStream fromFFmpeg = null;
+        try
+        {
+            fromFFmpeg = ffmpegProcess.getErrorStream();
+            if (fromFFmpeg == null)
+                AbstractMusicPlayer.LOG.fatal("LocalStream: ErrGobler: fromFFmpeg is null");
+
+            FFmpegProgressParser progress = new FFmpegProgressParser(telemetry);
+            byte[] buffer = new byte[1024];
+            int amountRead = -1;
+            while (!Thread.currentThread().isInterrupted() && ((amountRead = fromFFmpeg.read(buffer)) > -1))
+            {
+                progress.feed(buffer, 0, amountRead);
+            }
+        }
+        catch (IOException e)
+        {
+            AbstractMusicPlayer.LOG.log(e);
+        }
+        finally
+        {
+            try
+            {
+                if (fromFFmpeg != null)
+                    fromFFmpeg.close();
+            }
+            catch (Throwable ignored) {}
+        }
     }
 
     @Override
@@ -122,11 +158,7 @@ public class LocalStream extends AudioStream
         catch (Throwable ignored) {}
         try
         {
-            if (ffmpegErrGobler != null)
-            {
-                ffmpegErrGobler.interrupt();
-                ffmpegErrGobler = null;
-            }
+            stopWorkers();
         }
         catch (Throwable ignored) {}
         try
@@ -138,6 +170,9 @@ public class LocalStream extends AudioStream
             }
         }
         catch (Throwable ignored) {}
+        ProcessScheduler.Ticket ticket = decoderTicket;
+        if (ticket != null)
+            ticket.close();
         try
         {
             super.close();
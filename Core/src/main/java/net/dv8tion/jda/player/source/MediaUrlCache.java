@@ -0,0 +1,294 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.source;
+
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Process-wide cache of the media URLs that RemoteSource urls resolved to, so replays, reloads and repeats can start
+ * streaming without running youtube-dl again.
+ * <p>
+ * Entries expire with the {@code expire} parameter signed into the media URL. URLs without one are only cached when
+ * the cache was given a TTL for them. Streams invalidate their entry when the media host answers with HTTP 403 or
+ * 410, which is how expired or revoked URLs fail.
+ */
+public class MediaUrlCache
+{
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    //Media URLs that don't say when they expire aren't cached by default.
+    public static final long DEFAULT_TTL = 0;
+    //How long before its expiry a media URL is no longer trusted to last until the stream has started.
+    public static final long EXPIRY_MARGIN = TimeUnit.MINUTES.toMillis(5);
+
+    private static final Pattern EXPIRE_PATTERN = Pattern.compile("[?&/]expires?[=/](\\d+)", Pattern.CASE_INSENSITIVE);
+
+    private static MediaUrlCache defaultCache = new MediaUrlCache(DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+
+    private final int maxEntries;
+    private final long ttl;
+    private final Map<String, MediaUrl> entries;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong invalidations = new AtomicLong(0);
+
+    /**
+     * @param maxEntries
+     *      Maximum amount of media URLs to keep.
+     * @param ttl
+     *      Time in milliseconds to keep media URLs that don't say when they expire, or 0 to not cache those.
+     */
+    public MediaUrlCache(int maxEntries, long ttl)
+    {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("MediaUrlCache must be able to hold at least 1 entry");
+        if (ttl < 0)
+            throw new IllegalArgumentException("MediaUrlCache TTL must not be negative");
+
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<String, MediaUrl>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MediaUrl> eldest)
+            {
+                return size() > MediaUrlCache.this.maxEntries;
+            }
+        };
+    }
+
+    public static synchronized MediaUrlCache getDefault()
+    {
+        return defaultCache;
+    }
+
+    /**
+     * Replaces the cache used by all RemoteSources.
+     *
+     * @param cache
+     *      The new cache, or null to disable caching.
+     */
+    public static synchronized void setDefault(MediaUrlCache cache)
+    {
+        defaultCache = cache;
+    }
+
+    /**
+     * Finds when a media URL expires, from the {@code expire} parameter that YouTube and many CDNs sign into them.
+     *
+     * @param mediaUrl
+     *      The media URL.
+     * @return The expiry time in epoch milliseconds, or -1 if the url doesn't say.
+     */
+    public static long getExpiry(String mediaUrl)
+    {
+        Matcher m = EXPIRE_PATTERN.matcher(mediaUrl);
+        if (!m.find())
+            return -1;
+        try
+        {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(m.group(1)));
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * Gets the media URL the provided source url resolved to.
+     *
+     * @param url
+     *      The url of the RemoteSource.
+     * @return The media URL, or null if there is none that will stay valid for a while.
+     */
+    public synchronized MediaUrl get(String url)
+    {
+        MediaUrl mediaUrl = entries.get(url);
+        if (mediaUrl == null || mediaUrl.isExpired())
+        {
+            if (mediaUrl != null)
+                entries.remove(url);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return mediaUrl;
+    }
+
+    /**
+     * Caches the media URL of youtube-dl info that has one. Info without a media URL is ignored, as are media URLs
+     * that don't say when they expire if this cache has no TTL for them.
+     *
+     * @param url
+     *      The url of the RemoteSource.
+     * @param info
+     *      The youtube-dl info of the selected format, as printed by {@code youtube-dl -j}.
+     */
+    public void put(String url, JSONObject info)
+    {
+        if (info == null || info.optString("url", "").isEmpty())
+            return;
+
+        String mediaUrl = info.getString("url");
+        long expiry = getExpiry(mediaUrl);
+        if (expiry < 0)
+        {
+            //Nothing says how long this one lasts, only keep it if asked to.
+            if (ttl == 0)
+                return;
+            expiry = System.currentTimeMillis() + ttl;
+        }
+
+        //Own copy without the bulky parts. The provided info might be changed by whoever else holds it.
+        JSONObject copy = AudioInfoCache.strip(info);
+
+        synchronized (this)
+        {
+            entries.put(url, new MediaUrl(mediaUrl, copy, expiry));
+        }
+    }
+
+    /**
+     * Removes the media URL of the provided source url, for example because the media host rejected it.
+     *
+     * @param url
+     *      The url of the RemoteSource.
+     */
+    public synchronized void invalidate(String url)
+    {
+        if (entries.remove(url) != null)
+            invalidations.incrementAndGet();
+    }
+
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    public long getInvalidations()
+    {
+        return invalidations.get();
+    }
+
+    public double getHitRate()
+    {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * A resolved media URL along with the details of its format.
+     */
+    public static class MediaUrl
+    {
+        private final String url;
+        private final JSONObject info;
+        private final long expiry;
+
+        private MediaUrl(String url, JSONObject info, long expiry)
+        {
+            this.url = url;
+            this.info = info;
+            this.expiry = expiry;
+        }
+
+        public String getUrl()
+        {
+            return url;
+        }
+
+        /**
+         * The youtube-dl info of the selected format, without the list of all formats, thumbnails and subtitles.
+         * This can be handed back to youtube-dl with {@code --load-info-json}. Must not be modified.
+         *
+         * @return The youtube-dl info.
+         */
+        public JSONObject getInfo()
+        {
+            return info;
+        }
+
+        public String getProtocol()
+        {
+            return info.optString("protocol", "https");
+        }
+
+        public String getFormatId()
+        {
+            return info.optString("format_id", null);
+        }
+
+        public String getExtension()
+        {
+            return info.optString("ext", null);
+        }
+
+        public String getAudioCodec()
+        {
+            return info.optString("acodec", null);
+        }
+
+        /**
+         * The HTTP headers youtube-dl would send when downloading the media.
+         *
+         * @return The headers, or null if there are none.
+         */
+        public JSONObject getHttpHeaders()
+        {
+            return info.optJSONObject("http_headers");
+        }
+
+        /**
+         * @return When this media URL expires in epoch milliseconds.
+         */
+        public long getExpiry()
+        {
+            return expiry;
+        }
+
+        public boolean isExpired()
+        {
+            return expiry - EXPIRY_MARGIN < System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.source;
+
+import net.dv8tion.jda.player.AbstractMusicPlayer;
+import net.dv8tion.jda.player.audio.PcmRingBuffer;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size bounded disk cache of decoded PCM for remote tracks, keyed by {@link AudioInfo} extractor and id.
+ * <p>
+ * The first time a track is played its decoded audio is written next to the playback into a {@code .part} file.
+ * Only once the whole track was read is the file renamed to its final {@code .pcm} name, so a half written entry is
+ * never served. Later plays of the same track are served from a memory-mapped {@link CachedAudioStream}.
+ * The least recently used entries are deleted once the cache grows past its size limit.
+ */
+public class PcmDiskCache
+{
+    private static final String COMPLETE_SUFFIX = ".pcm";
+    private static final String PARTIAL_SUFFIX = ".pcm.part";
+    private static PcmDiskCache defaultCache = null;
+
+    private final File directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> writing = new HashSet<>();
+    private long totalBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+
+    public PcmDiskCache(File directory, long maxBytes)
+    {
+        if (directory == null)
+            throw new NullPointerException("PcmDiskCache directory cannot be null");
+        if (maxBytes < 1)
+            throw new IllegalArgumentException("PcmDiskCache size limit must be positive");
+        if (!directory.exists() && !directory.mkdirs())
+            throw new IllegalArgumentException("Could not create PcmDiskCache directory: " + directory);
+        if (!directory.isDirectory())
+            throw new IllegalArgumentException("Provided PcmDiskCache location is not a directory: " + directory);
+
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        loadExisting();
+    }
+
+    public static synchronized PcmDiskCache getDefault()
+    {
+        return defaultCache;
+    }
+
+    /**
+     * Sets the cache used by RemoteSources. There is no cache by default.
+     *
+     * @param cache
+     *      The cache to use, or null to disable PCM caching.
+     */
+    public static synchronized void setDefault(PcmDiskCache cache)
+    {
+        defaultCache = cache;
+    }
+
+    /**
+     * The cache key for the provided info, or null if the info can't be cached (errors, live streams, no id).
+     *
+     * @param info
+     *      The info of the track.
+     * @return The cache key, or null.
+     */
+    public static String keyOf(AudioInfo info)
+    {
+        if (info == null || info.getError() != null || info.isLive() || info.getId() == null)
+            return null;
+        String key = (info.getExtractor() != null ? info.getExtractor() : "unknown") + "-" + info.getId();
+        return key.replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+
+    /**
+     * Opens a completed cache entry.
+     *
+     * @param key
+     *      The key from {@link #keyOf(AudioInfo)}.
+     * @return A stream over the cached PCM, or null if this key isn't cached.
+     */
+    public AudioStream open(String key)
+    {
+        synchronized (this)
+        {
+            if (entries.get(key) == null)
+            {
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+
+        try
+        {
+            File file = new File(directory, key + COMPLETE_SUFFIX);
+            AudioStream stream = new CachedAudioStream(file);
+            file.setLastModified(System.currentTimeMillis());   //Keeps the LRU order across restarts.
+            hits.incrementAndGet();
+            return stream;
+        }
+        catch (IOException e)
+        {
+            AbstractMusicPlayer.LOG.log(e);
+            synchronized (this)
+            {
+                Long size = entries.remove(key);
+                if (size != null)
+                    totalBytes -= size;
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Wraps a decoding stream so that everything read from it is also written into the cache.
+     * If another stream is already writing this key, or the duration of the track is unknown, the source stream is
+     * returned unwrapped.
+     *
+     * @param key
+     *      The key from {@link #keyOf(AudioInfo)}.
+     * @param source
+     *      The stream producing the decoded PCM.
+     * @param duration
+     *      The expected duration of the track. Streams that end noticeably earlier are not cached. Without it a
+     *      stream cut short by a network error couldn't be told apart from a complete one, so nothing is cached.
+     * @return The stream to read from.
+     */
+    public AudioStream tee(String key, AudioStream source, AudioTimestamp duration)
+    {
+        if (duration == null || duration.getTotalMilliseconds() <= 0)
+            return source;
+        synchronized (this)
+        {
+            if (entries.containsKey(key) || !writing.add(key))
+                return source;
+        }
+
+        try
+        {
+            //Allow for a bit of rounding in the reported duration.
+            long expectedBytes = (long) (duration.getTotalMilliseconds() * PcmRingBuffer.BYTES_PER_MILLISECOND * 0.95);
+            return new CachingAudioStream(key, source, expectedBytes);
+        }
+        catch (IOException e)
+        {
+            AbstractMusicPlayer.LOG.log(e);
+            synchronized (this)
+            {
+                writing.remove(key);
+            }
+            return source;
+        }
+    }
+
+    public synchronized long getSize()
+    {
+        return totalBytes;
+    }
+
+    public synchronized int getEntryCount()
+    {
+        return entries.size();
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    public double getHitRate()
+    {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    private void loadExisting()
+    {
+        File[] files = directory.listFiles();
+        if (files == null)
+            return;
+
+        //Oldest first so that the LinkedHashMap's LRU order roughly matches the last time each entry was used.
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files)
+        {
+            String name = file.getName();
+            if (name.endsWith(PARTIAL_SUFFIX))
+            {
+                //Left behind by a crash. Never completed, so never valid.
+                file.delete();
+            }
+            else if (name.endsWith(COMPLETE_SUFFIX))
+            {
+                entries.put(name.substring(0, name.length() - COMPLETE_SUFFIX.length()), file.length());
+                totalBytes += file.length();
+            }
+        }
+        evict();
+    }
+
+    private synchronized void commit(String key, File partial)
+    {
+        writing.remove(key);
+        File complete = new File(directory, key + COMPLETE_SUFFIX);
+        try
+        {
+            Files.move(partial.toPath(), complete.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            entries.put(key, complete.length());
+            totalBytes += complete.length();
+            evict();
+        }
+        catch (IOException e)
+        {
+            AbstractMusicPlayer.LOG.log(e);
+            partial.delete();
+        }
+    }
+
+    private synchronized void abort(String key, File partial)
+    {
+        writing.remove(key);
+        partial.delete();
+    }
+
+    private void evict()
+    {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext())
+        {
+            Map.Entry<String, Long> eldest = it.next();
+            //Open CachedAudioStreams keep their mapping even after the file is deleted.
+            File file = new File(directory, eldest.getKey() + COMPLETE_SUFFIX);
+            if (!file.delete() && file.exists())
+                continue;
+
+            totalBytes -= eldest.getValue();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Passes reads through from the decoder while writing the same bytes into a partial cache file.
+     */
+    private class CachingAudioStream extends AudioStream
+    {
+        private final String key;
+        private final AudioStream source;
+        private final long expectedBytes;
+        private final File partial;
+        private OutputStream out;
+        private long written = 0;
+        private volatile boolean closing = false;
+
+        private CachingAudioStream(String key, AudioStream source, long expectedBytes) throws IOException
+        {
+            this.key = key;
+            this.source = source;
+            this.expectedBytes = expectedBytes;
+            this.partial = new File(directory, key + PARTIAL_SUFFIX);
+            this.out = new BufferedOutputStream(new FileOutputStream(partial), 64 * 1024);
+        }
+
+        @Override
+        public DecoderTelemetry getDecoderTelemetry()
+        {
+            return source.getDecoderTelemetry();
+        }
+
+        @Override
+        public void promote(ProcessScheduler.Priority priority)
+        {
+            source.promote(priority);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] single = new byte[1];
+            int amountRead = read(single, 0, 1);
+            return amountRead == 1 ? single[0] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int amountRead = source.read(b, off, len);
+            synchronized (this)
+            {
+                if (out == null)
+                    return amountRead;
+                try
+                {
+                    if (amountRead > 0)
+                    {
+                        out.write(b, off, amountRead);
+                        written += amountRead;
+                        //Cached entries are memory-mapped, which is limited to 2GB.
+                        if (written > Integer.MAX_VALUE)
+                            stopWriting(false);
+                    }
+                    else if (amountRead == -1)
+                    {
+                        //A stream closed by us or cut short by a network error also ends with EOF. Don't keep those.
+                        stopWriting(!closing && written >= expectedBytes);
+                    }
+                }
+                catch (IOException e)
+                {
+                    AbstractMusicPlayer.LOG.log(e);
+                    stopWriting(false);
+                }
+            }
+            return amountRead;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            closing = true;
+            try
+            {
+                source.close();
+            }
+            catch (Throwable ignored) {}
+            synchronized (this)
+            {
+                stopWriting(false);
+            }
+            try
+            {
+                super.close();
+            }
+            catch (Throwable ignored) {}
+        }
+
+        private void stopWriting(boolean commit)
+        {
+            OutputStream stream = out;
+            if (stream == null)
+                return;
+            out = null;
+            try
+            {
+                stream.close();
+            }
+            catch (IOException e)
+            {
+                commit = false;
+            }
+
+            if (commit && written > 0)
+                commit(key, partial);
+            else
+                abort(key, partial);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.source;
+
+import net.dv8tion.jda.player.AbstractMusicPlayer;
+import net.dv8tion.jda.player.audio.PcmRingBuffer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Wraps another {@link AudioStream} and reads it ahead into a {@link PcmRingBuffer} from a background worker.
+ * <p>
+ * Reads on this stream never touch the underlying pipe; they only copy whatever is already buffered.
+ * If nothing is buffered yet, reads return 0 instead of blocking so the send thread can fill the frame with silence.
+ * Seeking forward into the audio that is already buffered just drops what lies before it.
+ * <p>
+ * Reads, seeks and close don't lock. A read or seek registers itself in {@code access} for the duration of the
+ * copy, and close only swaps it to closed once no read is in progress, so the ring is never recycled under a reader.
+ * There is one reading side: reads and seeks must not run concurrently with each other.
+ */
+public class PrefetchingAudioStream extends AudioStream
+{
+    private static final long PRODUCER_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final int CLOSED = -1;
+
+    private final AudioStream source;
+    private final PcmRingBuffer ringBuffer;
+    //Amount of reads and seeks in progress, or CLOSED.
+    private final AtomicInteger access = new AtomicInteger(0);
+    private volatile boolean closed = false;
+    //The filler and the reading side each hold the ring until they are done with it, the last one recycles it.
+    private final AtomicInteger ringHolders = new AtomicInteger(2);
+    //Taken by the filler when it starts, or by close() if the filler was cancelled before it ever ran.
+    private final AtomicBoolean fillerClaimed = new AtomicBoolean(false);
+    //Consumer side. Position in the source of the next byte read out of the ring, in bytes of PCM.
+    private long readPosition;
+    //Written by the filler only.
+    private volatile long overrunNanos = 0;
+
+    public PrefetchingAudioStream(AudioStream source, int lookaheadMillis)
+    {
+        if (source == null)
+            throw new NullPointerException("Cannot prefetch a null AudioStream");
+        if (lookaheadMillis < 20)
+            throw new IllegalArgumentException("Lookahead must be at least one 20ms frame. Provided: " + lookaheadMillis);
+
+        this.source = source;
+        this.ringBuffer = PcmRingBuffer.forLookahead(lookaheadMillis);
+        this.readPosition = source.getStartPosition().getTotalMilliseconds() * PcmRingBuffer.BYTES_PER_MILLISECOND;
+        setStartPosition(source.getStartPosition());
+        try
+        {
+            startWorker("PrefetchingAudioStream filler", this::fill);
+        }
+        catch (RejectedExecutionException e)
+        {
+            //The source is still the caller's.
+            ringBuffer.recycle();
+            throw e;
+        }
+    }
+
+    public AudioStream getSource()
+    {
+        return source;
+    }
+
+    @Override
+    public boolean isOpus()
+    {
+        return source.isOpus();
+    }
+
+    @Override
+    public DecoderTelemetry getDecoderTelemetry()
+    {
+        return source.getDecoderTelemetry();
+    }
+
+    @Override
+    public void promote(ProcessScheduler.Priority priority)
+    {
+        source.promote(priority);
+    }
+
+    public long getUnderrunCount()
+    {
+        return ringBuffer.getUnderrunCount();
+    }
+
+    /**
+     * How long the filler was held up because the ring was full. A full ring is the normal state while the decoder
+     * runs ahead of playback, so this grows with the time played. A stream that underruns while this stands still
+     * is starved by its decoder rather than by the ring's size.
+     *
+     * @return The time the filler spent waiting for room in the ring, in nanoseconds.
+     */
+    public long getOverrunNanos()
+    {
+        return overrunNanos;
+    }
+
+    public int getBufferedBytes()
+    {
+        return ringBuffer.available();
+    }
+
+    @Override
+    public boolean seek(AudioTimestamp position)
+    {
+        //Skipping bytes of Ogg would cut a page apart.
+        if (isOpus() || !enter())
+            return false;
+        try
+        {
+            long distance = position.getTotalMilliseconds() * PcmRingBuffer.BYTES_PER_MILLISECOND - readPosition;
+            if (distance < 0 || distance > ringBuffer.available())
+                return false;
+
+            readPosition += ringBuffer.skip((int) distance);
+            setStartPosition(position);
+            return true;
+        }
+        finally
+        {
+            access.decrementAndGet();
+        }
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        //Single bytes are never read on the send thread, so this one waits for the filler like a pipe.
+        byte[] single = new byte[1];
+        int amountRead;
+        while ((amountRead = read(single, 0, 1)) == 0)
+        {
+            if (Thread.interrupted())
+                throw new InterruptedIOException("Interrupted while waiting for the prefetched audio");
+            LockSupport.parkNanos(PRODUCER_BACKOFF_NANOS);
+        }
+        return amountRead == 1 ? single[0] & 0xff : -1;
+    }
+
+    /**
+     * Copies the buffered audio, rounded down to whole PCM frames unless {@code len} is less than a frame.
+     * Never blocks.
+     *
+     * @return The amount of bytes read, 0 if nothing is buffered right now, or -1 at the end of the source.
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (!enter())
+            throw new IOException("Stream closed");
+        try
+        {
+            int amountRead = ringBuffer.read(b, off, len);
+            if (amountRead > 0)
+                readPosition += amountRead;
+            return amountRead;
+        }
+        finally
+        {
+            access.decrementAndGet();
+        }
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        return ringBuffer.available();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        //A read in progress only copies what is buffered, so waiting for it is short. Later ones see CLOSED.
+        int current;
+        while ((current = access.get()) != CLOSED && !access.compareAndSet(0, CLOSED))
+            Thread.yield();
+        if (current == CLOSED)
+            return;
+
+        closed = true;
+        releaseRing();
+        try
+        {
+            stopWorkers();
+        }
+        catch (Throwable ignored) {}
+        //A filler that was cancelled before it started never gives its hold back itself.
+        if (fillerClaimed.compareAndSet(false, true))
+            releaseRing();
+        try
+        {
+            source.close();
+        }
+        catch (Throwable ignored) {}
+        try
+        {
+            super.close();
+        }
+        catch (Throwable ignored) {}
+    }
+
+    private boolean enter()
+    {
+        int current;
+        do
+        {
+            current = access.get();
+            if (current == CLOSED)
+                return false;
+        }
+        while (!access.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private void fill()
+    {
+        if (!fillerClaimed.compareAndSet(false, true))
+            return;
+
+        byte[] chunk = new byte[4096];
+        try
+        {
+            int amountRead;
+            while (!closed && (amountRead = source.read(chunk, 0, chunk.length)) > -1)
+            {
+                int written = 0;
+                while (!closed && written < amountRead)
+                {
+                    written += ringBuffer.write(chunk, written, amountRead - written);
+                    if (written < amountRead)
+                    {
+                        long start = System.nanoTime();
+                        LockSupport.parkNanos(PRODUCER_BACKOFF_NANOS);
+                        overrunNanos += System.nanoTime() - start;
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            if (!closed)
+                AbstractMusicPlayer.LOG.log(e);
+        }
+        finally
+        {
+            ringBuffer.finish();
+            releaseRing();
+        }
+    }
+
+    private void releaseRing()
+    {
+        if (ringHolders.decrementAndGet() == 0)
+            ringBuffer.recycle();
+    }
+}
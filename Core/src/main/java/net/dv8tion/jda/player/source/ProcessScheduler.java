@@ -0,0 +1,459 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.source;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Decides when the external processes of sources and streams may start: FFmpeg decoders, ffprobe and youtube-dl.
+ * <p>
+ * Every process belongs to a {@link Priority} class. At most {@code maxProcesses} run at once over all classes, and
+ * each class has its own cap on top of that. A process that can't start right away queues up. Whenever one finishes,
+ * the waiting processes of the most important class go first, FIFO within a class, so a playlist import never keeps a
+ * guild that is playing silence from getting its decoder. A waiting process fails with an IOException, the same
+ * way a process that couldn't be started does, if it isn't admitted within the admission timeout or is cancelled.
+ * <p>
+ * Decoders hold their {@link Ticket} until the stream is closed, info processes until the process is done.
+ * The long-lived workers of the {@link YoutubeDLResolver} are not scheduled.
+ * <p>
+ * Callers don't pass a priority along, they run with one: {@link #runWith(Priority, Supplier)} sets the class for
+ * every process started by the calling thread, like the player does for preloads. Without one, each kind of process
+ * uses its own default. A preloaded decoder is moved up with {@link Ticket#promote(Priority)} once it starts playing. There is no scheduler by default. {@link net.dv8tion.jda.player.PlayerManager} installs one.
+ */
+public class ProcessScheduler
+{
+    public static final long DEFAULT_ADMISSION_TIMEOUT = 10000;
+    private static final ThreadLocal<Priority> CONTEXT = new ThreadLocal<>();
+    private static ProcessScheduler defaultScheduler = null;
+
+    public enum Priority
+    {
+        /** Decoders of the source that is playing or about to play. The default for decoders. */
+        PLAYBACK,
+        /** Decoders of the next source, started ahead of time. */
+        PREFETCH,
+        /** youtube-dl and ffprobe runs that extract the info of a single source. */
+        METADATA,
+        /** Playlist imports and batch resolutions. */
+        BULK
+    }
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final int maxProcesses;
+    private final long admissionTimeout;
+    private final int[] limits = new int[PRIORITIES.length];
+    private final List<ArrayDeque<Ticket>> waiting = new ArrayList<>(PRIORITIES.length);
+    private int runningTotal = 0;
+
+    //Per class. Guarded by this.
+    private final int[] running = new int[PRIORITIES.length];
+    private final long[] admitted = new long[PRIORITIES.length];
+    private final long[] rejected = new long[PRIORITIES.length];
+    private final long[] cancelled = new long[PRIORITIES.length];
+    private final long[] totalQueueNanos = new long[PRIORITIES.length];
+    private final long[] maxQueueNanos = new long[PRIORITIES.length];
+
+    public ProcessScheduler(int maxProcesses)
+    {
+        this(maxProcesses, DEFAULT_ADMISSION_TIMEOUT);
+    }
+
+    /**
+     * Creates a scheduler that lets playback use every slot, prefetching half of them, and metadata and bulk work
+     * about as many as there are cores. The caps can be changed with {@link #setLimit(Priority, int)}.
+     *
+     * @param maxProcesses
+     *      The maximum amount of processes running at once, over all classes.
+     * @param admissionTimeout
+     *      How many milliseconds a process waits to be admitted before it fails.
+     */
+    public ProcessScheduler(int maxProcesses, long admissionTimeout)
+    {
+        if (maxProcesses < 1)
+            throw new IllegalArgumentException("A ProcessScheduler has to allow at least 1 process");
+        if (admissionTimeout < 0)
+            throw new IllegalArgumentException("The admission timeout cannot be negative");
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.maxProcesses = maxProcesses;
+        this.admissionTimeout = admissionTimeout;
+        for (int i = 0; i < PRIORITIES.length; i++)
+            waiting.add(new ArrayDeque<>());
+        limits[Priority.PLAYBACK.ordinal()] = maxProcesses;
+        limits[Priority.PREFETCH.ordinal()] = Math.max(1, maxProcesses / 2);
+        limits[Priority.METADATA.ordinal()] = Math.max(1, Math.min(maxProcesses, cores * 2));
+        limits[Priority.BULK.ordinal()] = Math.max(1, Math.min(maxProcesses, cores / 2));
+    }
+
+    public static synchronized ProcessScheduler getDefault()
+    {
+        return defaultScheduler;
+    }
+
+    /**
+     * Sets the scheduler that every source and stream goes through. There is none by default.
+     *
+     * @param scheduler
+     *      The scheduler to use, or null to start processes right away.
+     */
+    public static synchronized void setDefault(ProcessScheduler scheduler)
+    {
+        defaultScheduler = scheduler;
+    }
+
+    /**
+     * Runs the task with the provided priority for every process it starts on the calling thread.
+     *
+     * @param priority
+     *      The class of the processes.
+     * @param task
+     *      The task.
+     * @return What the task returned.
+     */
+    public static <T> T runWith(Priority priority, Supplier<T> task)
+    {
+        Priority previous = CONTEXT.get();
+        CONTEXT.set(priority);
+        try
+        {
+            return task.get();
+        }
+        finally
+        {
+            if (previous == null)
+                CONTEXT.remove();
+            else
+                CONTEXT.set(previous);
+        }
+    }
+
+    /**
+     * @param fallback
+     *      The class to use if the calling thread doesn't run with one.
+     * @return The class the calling thread runs with, see {@link #runWith(Priority, Supplier)}.
+     */
+    public static Priority getContextPriority(Priority fallback)
+    {
+        Priority priority = CONTEXT.get();
+        return priority != null ? priority : fallback;
+    }
+
+    /**
+     * Queues a process with the default scheduler without waiting for it to be admitted. Lets the caller keep the
+     * ticket around to cancel it from another thread while {@link Ticket#await()} waits.
+     *
+     * @param fallback
+     *      The class to use if the calling thread doesn't run with one.
+     * @return The ticket of the process. Already admitted if there is no default scheduler.
+     */
+    public static Ticket enqueue(Priority fallback)
+    {
+        ProcessScheduler scheduler = getDefault();
+        Priority priority = getContextPriority(fallback);
+        return scheduler != null ? scheduler.submit(priority) : new Ticket(null, priority, 0);
+    }
+
+    /**
+     * Queues a process with the default scheduler and waits until it may start.
+     *
+     * @param fallback
+     *      The class to use if the calling thread doesn't run with one.
+     * @return The ticket to close once the process is gone.
+     * @throws IOException
+     *      If the process was not admitted in time, was cancelled, or the thread was interrupted.
+     */
+    public static Ticket admit(Priority fallback) throws IOException
+    {
+        Ticket ticket = enqueue(fallback);
+        ticket.await();
+        return ticket;
+    }
+
+    /**
+     * Queues a process of the provided class.
+     *
+     * @param priority
+     *      The class of the process.
+     * @return The ticket of the process. Call {@link Ticket#await()} before starting it.
+     */
+    public synchronized Ticket submit(Priority priority)
+    {
+        if (priority == null)
+            throw new NullPointerException("Cannot schedule a process without a priority");
+        Ticket ticket = new Ticket(this, priority, System.nanoTime());
+        waiting.get(priority.ordinal()).add(ticket);
+        dispatch();
+        return ticket;
+    }
+
+    /**
+     * Changes how many processes of the class may run at once. Never more than the overall maximum.
+     *
+     * @param priority
+     *      The class.
+     * @param limit
+     *      The cap, at least 1.
+     */
+    public synchronized void setLimit(Priority priority, int limit)
+    {
+        if (limit < 1)
+            throw new IllegalArgumentException("Every priority class has to allow at least 1 process");
+        limits[priority.ordinal()] = Math.min(limit, maxProcesses);
+        dispatch();
+    }
+
+    public synchronized int getLimit(Priority priority)
+    {
+        return limits[priority.ordinal()];
+    }
+
+    public int getMaxProcesses()
+    {
+        return maxProcesses;
+    }
+
+    public synchronized int getRunning()
+    {
+        return runningTotal;
+    }
+
+    public synchronized int getRunning(Priority priority)
+    {
+        return running[priority.ordinal()];
+    }
+
+    public synchronized int getWaiting(Priority priority)
+    {
+        return waiting.get(priority.ordinal()).size();
+    }
+
+    public synchronized long getAdmittedCount(Priority priority)
+    {
+        return admitted[priority.ordinal()];
+    }
+
+    /**
+     * @return The amount of processes of the class that were never started because they weren't admitted in time.
+     */
+    public synchronized long getRejectedCount(Priority priority)
+    {
+        return rejected[priority.ordinal()];
+    }
+
+    public synchronized long getCancelledCount(Priority priority)
+    {
+        return cancelled[priority.ordinal()];
+    }
+
+    /**
+     * @return The average milliseconds an admitted process of the class waited in the queue.
+     */
+    public synchronized double getAverageQueueTime(Priority priority)
+    {
+        int i = priority.ordinal();
+        return admitted[i] == 0 ? 0 : totalQueueNanos[i] / (double) admitted[i] / 1000000.0;
+    }
+
+    /**
+     * @return The longest any admitted process of the class waited in the queue, in milliseconds.
+     */
+    public synchronized long getMaxQueueTime(Priority priority)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(maxQueueNanos[priority.ordinal()]);
+    }
+
+    //Admits as many waiting processes as the caps allow, most important class first.
+    private void dispatch()
+    {
+        for (int i = 0; i < PRIORITIES.length && runningTotal < maxProcesses; i++)
+        {
+            ArrayDeque<Ticket> queue = waiting.get(i);
+            while (!queue.isEmpty() && running[i] < limits[i] && runningTotal < maxProcesses)
+            {
+                Ticket ticket = queue.poll();
+                long queueNanos = System.nanoTime() - ticket.submitted;
+                ticket.state = Ticket.RUNNING;
+                ticket.queueNanos = queueNanos;
+                running[i]++;
+                runningTotal++;
+                admitted[i]++;
+                totalQueueNanos[i] += queueNanos;
+                maxQueueNanos[i] = Math.max(maxQueueNanos[i], queueNanos);
+                ticket.admission.countDown();
+            }
+        }
+    }
+
+    private synchronized void promote(Ticket ticket, Priority priority)
+    {
+        int from = ticket.priority.ordinal();
+        int to = priority.ordinal();
+        if (to >= from || ticket.state == Ticket.CLOSED)
+            return;
+        if (ticket.state == Ticket.RUNNING)
+        {
+            //Its slot now counts against the new class, which might let another process of the old one start.
+            running[from]--;
+            running[to]++;
+        }
+        else
+        {
+            waiting.get(from).remove(ticket);
+            waiting.get(to).add(ticket);
+        }
+        ticket.priority = priority;
+        dispatch();
+    }
+
+    private synchronized void close(Ticket ticket)
+    {
+        int i = ticket.priority.ordinal();
+        if (ticket.state == Ticket.RUNNING)
+        {
+            running[i]--;
+            runningTotal--;
+            dispatch();
+        }
+        else if (ticket.state == Ticket.WAITING)
+        {
+            waiting.get(i).remove(ticket);
+            cancelled[i]++;
+        }
+        ticket.state = Ticket.CLOSED;
+        ticket.admission.countDown();
+    }
+
+    //After the wait for admission ended, one way or another.
+    private synchronized void checkAdmission(Ticket ticket) throws IOException
+    {
+        if (ticket.state == Ticket.RUNNING)
+            return;
+        if (ticket.state == Ticket.WAITING)
+        {
+            int i = ticket.priority.ordinal();
+            waiting.get(i).remove(ticket);
+            rejected[i]++;
+            ticket.state = Ticket.CLOSED;
+            throw new IOException("Could not start a " + ticket.priority + " process, none could be admitted for "
+                    + admissionTimeout + "ms");
+        }
+        throw new IOException("The " + ticket.priority + " process was cancelled before it could start");
+    }
+
+    /**
+     * A process' place in the queue, and once admitted its share of the caps. Closing a waiting ticket cancels it,
+     * closing an admitted one frees its slot. Closing more than once does nothing.
+     */
+    public static final class Ticket implements AutoCloseable
+    {
+        private static final int WAITING = 0;
+        private static final int RUNNING = 1;
+        private static final int CLOSED = 2;
+
+        private final ProcessScheduler scheduler;
+        private final long submitted;
+        private final CountDownLatch admission = new CountDownLatch(1);
+        //Only changed while holding the scheduler, volatile so getPriority() doesn't have to.
+        private volatile Priority priority;
+        //Guarded by the scheduler.
+        private int state;
+        private long queueNanos = 0;
+
+        private Ticket(ProcessScheduler scheduler, Priority priority, long submitted)
+        {
+            this.scheduler = scheduler;
+            this.priority = priority;
+            this.submitted = submitted;
+            this.state = scheduler != null ? WAITING : RUNNING;
+        }
+
+        public Priority getPriority()
+        {
+            return priority;
+        }
+
+        /**
+         * Moves the process to a more important class, like a preloaded decoder once its source starts playing.
+         * A waiting process queues up with the new class, an admitted one keeps running and counts against the
+         * new class' cap from now on. Moving to a less important class does nothing.
+         *
+         * @param priority
+         *      The new class.
+         */
+        public void promote(Priority priority)
+        {
+            if (priority == null)
+                throw new NullPointerException("Cannot promote a process to a null priority");
+            if (scheduler == null)
+                this.priority = priority;
+            else
+                scheduler.promote(this, priority);
+        }
+
+        /**
+         * @return How many milliseconds the process waited before it was admitted. 0 while it is still waiting.
+         */
+        public long getQueueTime()
+        {
+            if (scheduler == null)
+                return 0;
+            synchronized (scheduler)
+            {
+                return TimeUnit.NANOSECONDS.toMillis(queueNanos);
+            }
+        }
+
+        /**
+         * Waits until the process may start.
+         *
+         * @throws IOException
+         *      If the process was not admitted within the admission timeout, the ticket was closed while waiting, or
+         *      the thread was interrupted.
+         */
+        public void await() throws IOException
+        {
+            if (scheduler == null)
+                return;
+            try
+            {
+                admission.await(scheduler.admissionTimeout, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                close();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to start a " + priority + " process");
+            }
+            scheduler.checkAdmission(this);
+        }
+
+        @Override
+        public void close()
+        {
+            if (scheduler != null)
+                scheduler.close(this);
+        }
+    }
+}
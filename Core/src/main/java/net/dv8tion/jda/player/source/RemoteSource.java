@@ -22,8 +22,16 @@ import org.json.JSONObject;
 import sun.misc.IOUtils;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 public class RemoteSource implements AudioSource
 {
@@ -43,6 +51,9 @@ public class RemoteSource implements AudioSource
     public static final List<String> FFMPEG_LAUNCH_ARGS =
             Collections.unmodifiableList(Arrays.asList(
                     "ffmpeg",       //Program launch
+                    "-nostats",     //No human readable progress line
+                    "-progress",    //Machine readable progress instead, see FFmpegProgressParser
+                    "pipe:2",       //Written to STDerr
                     "-i", "-",      //Input file, specifies to read from STDin (pipe)
                     "-f", "s16be",  //Format.  PCM, signed, 16bit, Big Endian
                     "-ac", "2",     //Channels. Specify 2 for stereo audio.
@@ -50,6 +61,37 @@ public class RemoteSource implements AudioSource
                     "-map", "a",    //Makes sure to only output audio, even if the specified format supports other streams
                     "-"             //Used to specify STDout as the output location (pipe)
             ));
+    public static final List<String> OPUS_FFMPEG_LAUNCH_ARGS =
+            Collections.unmodifiableList(Arrays.asList(
+                    "ffmpeg",                   //Program launch
+                    "-nostats",                 //No human readable progress line
+                    "-progress",                //Machine readable progress instead, see FFmpegProgressParser
+                    "pipe:2",                   //Written to STDerr
+                    "-i", "-",                  //Input file, specifies to read from STDin (pipe)
+                    "-ac", "2",                 //Channels. Specify 2 for stereo audio.
+                    "-ar", "48000",             //Rate. Opus requires an audio rate of 48000hz
+                    "-map", "a",                //Makes sure to only output audio, even if the specified format supports other streams
+                    "-c:a", "libopus",          //Encode to Opus in FFmpeg instead of in the JVM
+                    "-b:a", "96k",              //Bitrate. Discord voice channels default to 64k, 96k leaves room for higher quality channels
+                    "-frame_duration", "20",    //One Opus packet per 20ms frame, as sent to Discord
+                    "-application", "audio",    //Tune the encoder for music rather than voice
+                    "-f", "ogg",                //Container. Ogg keeps the packet boundaries, see OggOpusReader
+                    "-page_duration", "20000",  //Flush an Ogg page for every packet (microseconds) so they can be read right away
+                    "-"                         //Used to specify STDout as the output location (pipe)
+            ));
+
+    public static final List<String> FFMPEG_RECONNECT_ARGS =
+            Collections.unmodifiableList(Arrays.asList(
+                    "-reconnect", "1",              //Reconnect when the connection to the media URL drops
+                    "-reconnect_streamed", "1",     //Also reconnect for media that can't be seeked
+                    "-reconnect_delay_max", "5"     //Give up after trying to reconnect for 5 seconds
+            ));
+    //youtube-dl protocols that FFmpeg can read on its own.
+    private static final List<String> DIRECT_PROTOCOLS =
+            Collections.unmodifiableList(Arrays.asList("http", "https", "m3u8", "m3u8_native"));
+    private static final Pattern ID_SEPARATOR_PATTERN = Pattern.compile("[/?&=#]");
+
+    private static volatile boolean directStreaming = false;
 
     private final String url;
     private final List<String> ytdlLaunchArgsF;
@@ -77,36 +119,55 @@ public class RemoteSource implements AudioSource
         return url;
     }
 
+    /**
+     * Enables direct streaming for all RemoteSources. youtube-dl is then only used to resolve the media URL and FFmpeg
+     * reads that URL itself, instead of youtube-dl downloading the media and piping it into FFmpeg through the JVM.
+     * Media that FFmpeg can't read itself, like DASH fragments, is still piped.
+     *
+     * @param enabled
+     *      True to let FFmpeg read media URLs directly.
+     */
+    public static void setDirectStreaming(boolean enabled)
+    {
+        directStreaming = enabled;
+    }
+
+    public static boolean isDirectStreaming()
+    {
+        return directStreaming;
+    }
+
     @Override
     public synchronized AudioInfo getInfo()
     {
         if (audioInfo != null)
             return audioInfo;
 
-        List<String> infoArgs = new LinkedList<>();
-        if (ytdlLaunchArgsF != null)
+        AudioInfoCache cache = AudioInfoCache.getDefault();
+        if (cache != null && (audioInfo = cache.get(url)) != null)
+            return audioInfo;
+
+        //A warm youtube-dl worker answers a lot faster than starting a new youtube-dl.
+        YoutubeDLResolver resolver = ytdlLaunchArgsF == null ? YoutubeDLResolver.getDefault() : null;
+        if (resolver != null && (audioInfo = resolveWith(resolver, url)) != null)
         {
-            infoArgs.addAll(ytdlLaunchArgsF);
-            if (!infoArgs.contains("-q"))
-                infoArgs.add("-q");
+            rememberMediaUrl(audioInfo.getJsonInfo());
+            if (cache != null)
+                cache.put(url, audioInfo);
+            return audioInfo;
         }
-        else
-            infoArgs.addAll(YOUTUBE_DL_LAUNCH_ARGS);
 
-        infoArgs.add("--ignore-errors");    //Ignore errors, obviously
-        infoArgs.add("--no-warnings");      //Ignore warnings, because they ruin our JSON
-        infoArgs.add("-j");                 //Dumps the json about the file into STDout
-        infoArgs.add("--skip-download");    //Doesn't actually download the file.
+        List<String> infoArgs = buildInfoArgs(ytdlLaunchArgsF);
         infoArgs.add("--");                 //Url separator. Deals with YT ids that start with --
         infoArgs.add(url);                  //specifies the URL to download.
 
         audioInfo = new AudioInfo();
+        ProcessScheduler.Ticket ticket = null;
         Process ytdlProcess = null;
-        Process ffprobeProcess = null;
         InputStream ytdlStream = null;
-        InputStream ffprobeStream = null;
         try
         {
+            ticket = ProcessScheduler.admit(ProcessScheduler.Priority.METADATA);
             ytdlProcess = new ProcessBuilder().command(infoArgs).start();
             ytdlStream = ytdlProcess.getErrorStream();
             byte[] infoData = IOUtils.readFully(ytdlStream, -1, false);   //YT-DL outputs to STDerr
@@ -120,63 +181,8 @@ public class RemoteSource implements AudioSource
             }
             else
             {
-                JSONObject info = new JSONObject(infoString);
-
-                audioInfo.jsonInfo = info;
-                audioInfo.title = !info.optString("title", "").isEmpty()
-                        ? info.getString("title")
-                        : !info.optString("fulltitle", "").isEmpty()
-                        ? info.getString("fulltitle")
-                        : null;
-                audioInfo.origin = !info.optString("webpage_url", "").isEmpty()
-                        ? info.getString("webpage_url")
-                        : url;
-                audioInfo.id = !info.optString("id", "").isEmpty()
-                        ? info.getString("id")
-                        : null;
-                audioInfo.encoding = !info.optString("acodec", "").isEmpty()
-                        ? info.getString("acodec")
-                        : !info.optString("ext", "").isEmpty()
-                        ? info.getString("ext")
-                        : null;
-                audioInfo.description = !info.optString("description", "").isEmpty()
-                        ? info.getString("description")
-                        : null;
-                audioInfo.extractor = !info.optString("extractor", "").isEmpty()
-                        ? info.getString("extractor")
-                        : !info.optString("extractor_key").isEmpty()
-                        ? info.getString("extractor_key")
-                        : null;
-                audioInfo.thumbnail = !info.optString("thumbnail", "").isEmpty()
-                        ? info.getString("thumbnail")
-                        : null;
-                audioInfo.isLive = info.has("is_live") && !info.isNull("is_live") && info.getBoolean("is_live");
-                audioInfo.duration = info.optInt("duration", -1) != -1
-                        ? AudioTimestamp.fromSeconds(info.getInt("duration"))
-                        : null;
-
-                //Use FFprobe to find the duration because YT-DL didn't give it to us.
-                if (audioInfo.duration == null)
-                {
-                    List<String> ffprobeInfoArgs = new LinkedList<>();
-                    ffprobeInfoArgs.addAll(LocalSource.FFPROBE_INFO_ARGS);
-                    ffprobeInfoArgs.add("-i");
-                    ffprobeInfoArgs.add(info.optString("url", url));
-
-                    ffprobeProcess = new ProcessBuilder().command(ffprobeInfoArgs).start();
-                    ffprobeStream = ffprobeProcess.getInputStream();
-                    infoData = IOUtils.readFully(ffprobeStream, -1, false);
-                    if (infoData != null && infoData.length > 0)
-                    {
-                        info = new JSONObject(new String(infoData)).getJSONObject("format");
-
-                        if (info.optDouble("duration", -1.0) != -1.0)
-                        {
-                            int duration = Math.round((float) info.getDouble("duration"));
-                            audioInfo.duration = AudioTimestamp.fromSeconds(duration);
-                        }
-                    }
-                }
+                fillInfo(audioInfo, new JSONObject(infoString), url);
+                rememberMediaUrl(audioInfo.getJsonInfo());
             }
         }
         catch (IOException | JSONException e)
@@ -198,27 +204,665 @@ public class RemoteSource implements AudioSource
                     ytdlStream.close();
             }
             catch (Throwable ignored) {}
-            try
+            if (ticket != null)
+                ticket.close();
+        }
+
+        if (cache != null)
+            cache.put(url, audioInfo);
+        return audioInfo;
+    }
+
+    /**
+     * Resolves the info of many RemoteSources with a single youtube-dl invocation, amortizing the Python startup
+     * over the whole batch. Sources that already have their info, use custom youtube-dl arguments, or could not be
+     * matched to any of youtube-dl's output fall back to {@link #getInfo()}.
+     *
+     * @param sources
+     *      The sources to resolve.
+     * @param onResolved
+     *      Called for each source as soon as its info is available. May be null.
+     */
+    public static void resolveInfo(List<RemoteSource> sources, Consumer<RemoteSource> onResolved)
+    {
+        AudioInfoCache cache = AudioInfoCache.getDefault();
+        List<RemoteSource> pending = new LinkedList<>();
+        List<RemoteSource> individual = new LinkedList<>();
+        for (RemoteSource source : sources)
+        {
+            synchronized (source)
             {
-                if (ffprobeProcess != null)
-                    ffprobeProcess.destroyForcibly();
+                if (source.audioInfo == null && cache != null)
+                    source.audioInfo = cache.get(source.url);
+                if (source.audioInfo != null)
+                {
+                    if (onResolved != null)
+                        onResolved.accept(source);
+                }
+                else if (source.ytdlLaunchArgsF != null)
+                    individual.add(source);
+                else
+                    pending.add(source);
             }
-            catch (Throwable ignored) {}
+        }
+
+        YoutubeDLResolver resolver = YoutubeDLResolver.getDefault();
+        if (resolver != null && !pending.isEmpty())
+        {
+            //The workers resolve concurrently, so just send every url at once.
+            Map<RemoteSource, CompletableFuture<JSONObject>> futures = new LinkedHashMap<>();
+            for (RemoteSource source : pending)
+                futures.put(source, resolver.resolve(source.url));
+            for (Map.Entry<RemoteSource, CompletableFuture<JSONObject>> entry : futures.entrySet())
+            {
+                RemoteSource source = entry.getKey();
+                AudioInfo audioInfo = toAudioInfo(entry.getValue(), source.url);
+                if (audioInfo == null)
+                {
+                    individual.add(source);
+                    continue;
+                }
+
+                synchronized (source)
+                {
+                    if (source.audioInfo == null)
+                        source.audioInfo = audioInfo;
+                }
+                source.rememberMediaUrl(audioInfo.getJsonInfo());
+                if (cache != null)
+                    cache.put(source.url, audioInfo);
+                if (onResolved != null)
+                    onResolved.accept(source);
+            }
+        }
+        else if (pending.size() == 1)
+            individual.addAll(pending);
+        else if (!pending.isEmpty())
+        {
+            List<String> infoArgs = buildInfoArgs(null);
+            infoArgs.add("--");
+            for (RemoteSource source : pending)
+                infoArgs.add(source.url);
+
+            ProcessScheduler.Ticket ticket = null;
+            Process ytdlProcess = null;
+            BufferedReader reader = null;
             try
             {
-                if (ffprobeStream != null)
-                    ffprobeStream.close();;
+                ticket = ProcessScheduler.admit(ProcessScheduler.Priority.BULK);
+                ytdlProcess = new ProcessBuilder().command(infoArgs).start();
+                reader = new BufferedReader(new InputStreamReader(ytdlProcess.getErrorStream()));   //YT-DL outputs to STDerr
+
+                //youtube-dl prints one JSON line per URL, in order. Failed URLs only print an ERROR line.
+                String line;
+                while ((line = reader.readLine()) != null && !pending.isEmpty())
+                {
+                    if (!line.startsWith("{"))
+                        continue;
+
+                    JSONObject info = new JSONObject(line);
+                    RemoteSource source = findMatch(pending, info);
+                    if (source == null)
+                        continue;
+
+                    AudioInfo audioInfo = new AudioInfo();
+                    try
+                    {
+                        fillInfo(audioInfo, info, source.url);
+                    }
+                    catch (IOException | JSONException e)
+                    {
+                        audioInfo.error = e.getMessage();
+                    }
+
+                    synchronized (source)
+                    {
+                        if (source.audioInfo == null)
+                            source.audioInfo = audioInfo;
+                    }
+                    source.rememberMediaUrl(info);
+                    if (cache != null)
+                        cache.put(source.url, audioInfo);
+                    if (onResolved != null)
+                        onResolved.accept(source);
+                }
             }
-            catch (Throwable ignored) {}
+            catch (IOException | JSONException e)
+            {
+                AbstractMusicPlayer.LOG.log(e);
+            }
+            finally
+            {
+                try
+                {
+                    if (ytdlProcess != null)
+                        ytdlProcess.destroyForcibly();
+                }
+                catch (Throwable ignored) {}
+                try
+                {
+                    if (reader != null)
+                        reader.close();
+                }
+                catch (Throwable ignored) {}
+                if (ticket != null)
+                    ticket.close();
+            }
+            individual.addAll(pending);
+        }
+
+        //Still part of the batch, so it shouldn't hold up the info of a single source someone is waiting on.
+        for (RemoteSource source : individual)
+        {
+            ProcessScheduler.runWith(ProcessScheduler.Priority.BULK, source::getInfo);
+            if (onResolved != null)
+                onResolved.accept(source);
+        }
+    }
+
+    //Removes and returns the first pending source that the provided youtube-dl info belongs to.
+    private static RemoteSource findMatch(List<RemoteSource> pending, JSONObject info)
+    {
+        String id = info.optString("id", "");
+        String webpageUrl = info.optString("webpage_url", "");
+        for (Iterator<RemoteSource> it = pending.iterator(); it.hasNext();)
+        {
+            RemoteSource source = it.next();
+            if (source.url.equals(webpageUrl) || source.url.equals(id) || containsId(source.url, id))
+            {
+                it.remove();
+                return source;
+            }
+        }
+        return null;
+    }
+
+    //Whether the id is a whole path segment or parameter value of the url, like in youtu.be/<id> or watch?v=<id>.
+    private static boolean containsId(String url, String id)
+    {
+        if (id.isEmpty())
+            return false;
+        for (String part : ID_SEPARATOR_PATTERN.split(url))
+        {
+            if (part.equals(id))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Resolves the info of the url with the resolver.
+     *
+     * @return The resolved info, which has its error set if youtube-dl couldn't resolve the url, or null if the
+     *         resolver failed and the url should be resolved with the command line instead.
+     */
+    private static AudioInfo resolveWith(YoutubeDLResolver resolver, String url)
+    {
+        return toAudioInfo(resolver.resolve(url), url);
+    }
+
+    private static AudioInfo toAudioInfo(CompletableFuture<JSONObject> future, String url)
+    {
+        JSONObject info;
+        AudioInfo audioInfo = new AudioInfo();
+        try
+        {
+            info = future.get(YoutubeDLResolver.DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        catch (ExecutionException e)
+        {
+            if (!(e.getCause() instanceof YoutubeDLResolver.ResolveException))
+            {
+                AbstractMusicPlayer.LOG.debug("youtube-dl worker failed, falling back to youtube-dl: " + e.getCause());
+                return null;
+            }
+            audioInfo.error = e.getCause().getMessage();
+            return audioInfo;
+        }
+        catch (InterruptedException | TimeoutException e)
+        {
+            future.cancel(false);
+            if (e instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+            return null;
+        }
+
+        try
+        {
+            fillInfo(audioInfo, info, url);
+        }
+        catch (IOException | JSONException e)
+        {
+            audioInfo.error = e.getMessage();
+            AbstractMusicPlayer.LOG.log(e);
         }
         return audioInfo;
     }
 
+    //Uses info resolved for streaming as this source's AudioInfo, if it doesn't have one yet.
+    private synchronized void adoptInfo(JSONObject info) throws IOException
+    {
+        if (audioInfo != null)
+            return;
+
+        //The resolved json is shared with the media URL cache, so give the AudioInfo its own copy.
+        AudioInfo resolved = new AudioInfo();
+        fillInfo(resolved, new JSONObject(info.toString()), url);
+        audioInfo = resolved;
+        AudioInfoCache cache = AudioInfoCache.getDefault();
+        if (cache != null)
+            cache.put(url, resolved);
+    }
+
+    private static List<String> buildInfoArgs(List<String> ytdlLaunchArgs)
+    {
+        List<String> infoArgs = new LinkedList<>();
+        if (ytdlLaunchArgs != null)
+        {
+            infoArgs.addAll(ytdlLaunchArgs);
+            if (!infoArgs.contains("-q"))
+                infoArgs.add("-q");
+        }
+        else
+            infoArgs.addAll(YOUTUBE_DL_LAUNCH_ARGS);
+
+        infoArgs.add("--ignore-errors");    //Ignore errors, obviously
+        infoArgs.add("--no-warnings");      //Ignore warnings, because they ruin our JSON
+        infoArgs.add("-j");                 //Dumps the json about the file into STDout
+        infoArgs.add("--skip-download");    //Doesn't actually download the file.
+        return infoArgs;
+    }
+
+    private static void fillInfo(AudioInfo audioInfo, JSONObject info, String url) throws IOException
+    {
+        audioInfo.jsonInfo = info;
+        audioInfo.title = !info.optString("title", "").isEmpty()
+                ? info.getString("title")
+                : !info.optString("fulltitle", "").isEmpty()
+                ? info.getString("fulltitle")
+                : null;
+        audioInfo.origin = !info.optString("webpage_url", "").isEmpty()
+                ? info.getString("webpage_url")
+                : url;
+        audioInfo.id = !info.optString("id", "").isEmpty()
+                ? info.getString("id")
+                : null;
+        audioInfo.encoding = !info.optString("acodec", "").isEmpty()
+                ? info.getString("acodec")
+                : !info.optString("ext", "").isEmpty()
+                ? info.getString("ext")
+                : null;
+        audioInfo.description = !info.optString("description", "").isEmpty()
+                ? info.getString("description")
+                : null;
+        audioInfo.extractor = !info.optString("extractor", "").isEmpty()
+                ? info.getString("extractor")
+                : !info.optString("extractor_key").isEmpty()
+                ? info.getString("extractor_key")
+                : null;
+        audioInfo.thumbnail = !info.optString("thumbnail", "").isEmpty()
+                ? info.getString("thumbnail")
+                : null;
+        audioInfo.isLive = info.has("is_live") && !info.isNull("is_live") && info.getBoolean("is_live");
+        audioInfo.duration = info.optInt("duration", -1) != -1
+                ? AudioTimestamp.fromSeconds(info.getInt("duration"))
+                : null;
+
+        //Use FFprobe to find the duration because YT-DL didn't give it to us.
+        if (audioInfo.duration == null)
+        {
+            List<String> ffprobeInfoArgs = new LinkedList<>();
+            ffprobeInfoArgs.addAll(LocalSource.FFPROBE_INFO_ARGS);
+            ffprobeInfoArgs.add("-i");
+            ffprobeInfoArgs.add(info.optString("url", url));
+
+            Process ffprobeProcess = null;
+            InputStream ffprobeStream = null;
+            try
+            {
+                ffprobeProcess = new ProcessBuilder().command(ffprobeInfoArgs).start();
+                ffprobeStream = ffprobeProcess.getInputStream();
+                byte[] infoData = IOUtils.readFully(ffprobeStream, -1, false);
+                if (infoData != null && infoData.length > 0)
+                {
+                    JSONObject format = new JSONObject(new String(infoData)).getJSONObject("format");
+
+                    if (format.optDouble("duration", -1.0) != -1.0)
+                    {
+                        int duration = Math.round((float) format.getDouble("duration"));
+                        audioInfo.duration = AudioTimestamp.fromSeconds(duration);
+                    }
+                }
+            }
+            finally
+            {
+                try
+                {
+                    if (ffprobeProcess != null)
+                        ffprobeProcess.destroyForcibly();
+                }
+                catch (Throwable ignored) {}
+                try
+                {
+                    if (ffprobeStream != null)
+                        ffprobeStream.close();
+                }
+                catch (Throwable ignored) {}
+            }
+        }
+    }
+
     @Override
     public AudioStream asStream()
     {
-        List<String> ytdlLaunchArgs = new ArrayList<>();
+        return asStream(null);
+    }
+
+    /**
+     * Creates a stream starting at the provided position. Tracks in the {@link PcmDiskCache} are opened at the
+     * position right away. Otherwise FFmpeg reads the media URL itself and seeks in it with range requests, so only
+     * FFmpeg is started if the media URL is still cached. Live streams can't be started at a position.
+     */
+    @Override
+    public AudioStream asStream(AudioTimestamp position)
+    {
+        if (position != null && position.getTotalMilliseconds() == 0)
+            position = null;
+
         List<String> ffmpegLaunchArgs = new ArrayList<>();
+        if (ffmpegLaunchArgsF == null)
+            ffmpegLaunchArgs.addAll(FFMPEG_LAUNCH_ARGS);
+        else
+            ffmpegLaunchArgs.addAll(ffmpegLaunchArgsF);
+
+        //Tracks that were fully played before are served from the PCM cache instead of being decoded again.
+        PcmDiskCache pcmCache = ffmpegLaunchArgsF == null ? PcmDiskCache.getDefault() : null;
+        AudioInfo info = audioInfo;
+        String cacheKey = pcmCache != null ? PcmDiskCache.keyOf(info) : null;
+        if (cacheKey != null)
+        {
+            AudioStream cached = pcmCache.open(cacheKey);
+            if (cached != null)
+            {
+                if (position != null)
+                    cached.seek(position);
+                return cached;
+            }
+        }
+
+        AudioStream stream = openStream(ffmpegLaunchArgs, false, position);
+        //Only a stream over the whole track can be cached.
+        if (cacheKey != null && position == null && stream != null)
+            stream = pcmCache.tee(cacheKey, stream, info.getDuration());
+        return stream;
+    }
+
+    /**
+     * Creates a stream of Ogg Opus encoded by FFmpeg using {@link #OPUS_FFMPEG_LAUNCH_ARGS}.
+     * Sources created with custom FFmpeg arguments only provide PCM, as those arguments are assumed to produce PCM.
+     *
+     * @return An Ogg Opus stream, or null if this source was created with custom FFmpeg arguments.
+     */
+    @Override
+    public AudioStream asOpusStream()
+    {
+        if (ffmpegLaunchArgsF != null)
+            return null;
+        return openStream(new ArrayList<>(OPUS_FFMPEG_LAUNCH_ARGS), true, null);
+    }
+
+    @Override
+    public AudioStream asOpusStream(AudioTimestamp position)
+    {
+        if (ffmpegLaunchArgsF != null)
+            return null;
+        if (position != null && position.getTotalMilliseconds() == 0)
+            position = null;
+        return openStream(new ArrayList<>(OPUS_FFMPEG_LAUNCH_ARGS), true, position);
+    }
+
+    private AudioStream openStream(List<String> ffmpegLaunchArgs, boolean opus, AudioTimestamp position)
+    {
+        RemoteStream stream;
+        File infoFile = null;
+        try
+        {
+            if (position != null)
+            {
+                AudioInfo info = audioInfo;
+                List<String> seekingArgs = withInputSeek(ffmpegLaunchArgs, position);
+                if (seekingArgs == null || (info != null && info.isLive()))
+                    return null;
+
+                //Piping through youtube-dl would download everything before the position. FFmpeg reading the media URL
+                //itself can seek with range requests instead.
+                stream = new RemoteStream(() -> buildDirectArgs(seekingArgs), buildYtdlArgs(null), seekingArgs, this.guildId, opus, position);
+            }
+            else if (directStreaming)
+                stream = new RemoteStream(() -> buildDirectArgs(ffmpegLaunchArgs), buildYtdlArgs(null), ffmpegLaunchArgs, this.guildId, opus);
+            else
+            {
+                //If this url was already extracted, let youtube-dl start downloading from that instead of extracting again.
+                infoFile = writeInfoJson(getFreshInfoJson());
+                stream = new RemoteStream(buildYtdlArgs(infoFile), ffmpegLaunchArgs, this.guildId, opus);
+                if (infoFile != null)
+                    stream.deleteOnClose(infoFile);
+            }
+        }
+        catch (IOException e)
+        {
+            //Like not being admitted by the ProcessScheduler in time. The caller decides whether to try again.
+            AbstractMusicPlayer.LOG.log(e);
+            if (infoFile != null)
+                infoFile.delete();
+            return null;
+        }
+        stream.setOnMediaRejected(this::invalidateMediaUrl);
+        return stream;
+    }
+
+    /**
+     * Adds an input seek to the provided FFmpeg command.
+     *
+     * @return The command with the seek, or null if the command has no input to seek in.
+     */
+    private static List<String> withInputSeek(List<String> ffmpegLaunchArgs, AudioTimestamp position)
+    {
+        int inputIndex = ffmpegLaunchArgs.indexOf("-i");
+        if (inputIndex < 0)
+            return null;
+
+        //Placed before -i, so that FFmpeg seeks in the input instead of decoding and dropping everything up to the position.
+        List<String> seekingArgs = new ArrayList<>(ffmpegLaunchArgs);
+        seekingArgs.add(inputIndex, "-ss");
+        seekingArgs.add(inputIndex + 1, position.getFullTimestamp());
+        return seekingArgs;
+    }
+
+    //Remembers the media URL of freshly resolved info, so that streams can start without extracting the url again.
+    private void rememberMediaUrl(JSONObject info)
+    {
+        MediaUrlCache mediaCache = MediaUrlCache.getDefault();
+        //Custom youtube-dl arguments might select another format than the defaults for the same url.
+        if (mediaCache != null && ytdlLaunchArgsF == null && info != null)
+            mediaCache.put(url, info);
+    }
+
+    private void invalidateMediaUrl()
+    {
+        AbstractMusicPlayer.LOG.debug("Media URL of " + url + " was rejected, it will be resolved again next time");
+        MediaUrlCache mediaCache = MediaUrlCache.getDefault();
+        if (mediaCache != null)
+            mediaCache.invalidate(url);
+    }
+
+    /**
+     * The info extracted by {@link #getInfo()}, if its media URL hasn't expired yet and can be used to start a stream
+     * without extracting the url again.
+     * <p>
+     * The info may have been stripped of its formats by the {@link AudioInfoCache} or the {@link MediaUrlCache}.
+     * That doesn't matter: given info without formats, youtube-dl takes the info itself as the only format, which is
+     * the one that was selected when it was extracted. So any info with a top level media URL will do, no matter
+     * which cache it came from.
+     *
+     * @return The extracted info, or null if there is none or its media URL has expired or might expire soon.
+     */
+    private JSONObject getFreshInfoJson()
+    {
+        //The cache knows about media URLs that were rejected, so don't revive those from the AudioInfo.
+        MediaUrlCache mediaCache = MediaUrlCache.getDefault();
+        if (mediaCache != null && ytdlLaunchArgsF == null)
+        {
+            //Only cached with a media URL, and only for as long as it lasts.
+            MediaUrlCache.MediaUrl mediaUrl = mediaCache.get(url);
+            return mediaUrl != null ? mediaUrl.getInfo() : null;
+        }
+
+        AudioInfo info;
+        synchronized (this)
+        {
+            info = audioInfo;
+        }
+        if (info == null || info.getError() != null || info.getJsonInfo() == null)
+            return null;
+
+        JSONObject json = info.getJsonInfo();
+        long expiry = MediaUrlCache.getExpiry(json.optString("url", ""));
+        if (expiry < 0 || expiry - MediaUrlCache.EXPIRY_MARGIN < System.currentTimeMillis())
+            return null;
+        return json;
+    }
+
+    private static File writeInfoJson(JSONObject info)
+    {
+        if (info == null)
+            return null;
+        try
+        {
+            //Deleted by the stream once it is closed, or right away if it couldn't be started.
+            File file = File.createTempFile("youtube-dl-info", ".json");
+            Files.write(file.toPath(), info.toString().getBytes(StandardCharsets.UTF_8));
+            return file;
+        }
+        catch (IOException e)
+        {
+            AbstractMusicPlayer.LOG.log(e);
+            return null;
+        }
+    }
+
+    /**
+     * Resolves the media URL with youtube-dl and turns the FFmpeg command reading from STDin into one that reads
+     * the URL itself.
+     *
+     * @param ffmpegLaunchArgs
+     *      FFmpeg command that reads from STDin ({@code -i -}).
+     * @return The FFmpeg command reading the media URL, or null if FFmpeg can't read this media directly.
+     */
+    private List<String> buildDirectArgs(List<String> ffmpegLaunchArgs)
+    {
+        int inputIndex = ffmpegLaunchArgs.indexOf("-i");
+        if (inputIndex < 0 || inputIndex + 1 >= ffmpegLaunchArgs.size() || !ffmpegLaunchArgs.get(inputIndex + 1).equals("-"))
+            return null;
+
+        JSONObject info = getFreshInfoJson();
+        if (info == null)
+            info = resolveMediaInfo();
+        if (info == null || info.optString("url", "").isEmpty()
+                || !DIRECT_PROTOCOLS.contains(info.optString("protocol", "https")))
+            return null;
+
+        List<String> directArgs = new ArrayList<>(ffmpegLaunchArgs.subList(0, inputIndex));
+        directArgs.addAll(FFMPEG_RECONNECT_ARGS);
+        JSONObject headers = info.optJSONObject("http_headers");
+        if (headers != null && headers.length() > 0)
+        {
+            //Some sites only serve the media to the client that resolved it.
+            StringBuilder headerString = new StringBuilder();
+            for (String name : headers.keySet())
+                headerString.append(name).append(": ").append(headers.getString(name)).append("\r\n");
+            directArgs.add("-headers");
+            directArgs.add(headerString.toString());
+        }
+        directArgs.add("-i");
+        directArgs.add(info.getString("url"));
+        directArgs.addAll(ffmpegLaunchArgs.subList(inputIndex + 2, ffmpegLaunchArgs.size()));
+        return directArgs;
+    }
+
+    /**
+     * Runs youtube-dl once to get the info of the format that would be downloaded, which includes its media URL.
+     * The info is also used as this source's AudioInfo if it wasn't resolved yet.
+     *
+     * @return The youtube-dl info, or null if it couldn't be resolved.
+     */
+    private JSONObject resolveMediaInfo()
+    {
+        YoutubeDLResolver resolver = ytdlLaunchArgsF == null ? YoutubeDLResolver.getDefault() : null;
+        if (resolver != null)
+        {
+            try
+            {
+                JSONObject info = resolver.getInfo(url);
+                rememberMediaUrl(info);
+                adoptInfo(info);
+                return info;
+            }
+            catch (YoutubeDLResolver.ResolveException e)
+            {
+                AbstractMusicPlayer.LOG.debug("Could not resolve media url: " + e.getMessage());
+                return null;
+            }
+            catch (IOException | JSONException e)
+            {
+                AbstractMusicPlayer.LOG.debug("youtube-dl worker failed, falling back to youtube-dl: " + e.getMessage());
+            }
+        }
+
+        List<String> infoArgs = buildInfoArgs(ytdlLaunchArgsF);
+        infoArgs.add("--");
+        infoArgs.add(url);
+
+        ProcessScheduler.Ticket ticket = null;
+        Process ytdlProcess = null;
+        try
+        {
+            ticket = ProcessScheduler.admit(ProcessScheduler.Priority.METADATA);
+            ytdlProcess = new ProcessBuilder().command(infoArgs).start();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(ytdlProcess.getErrorStream()));   //YT-DL outputs to STDerr
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                if (!line.startsWith("{"))
+                    continue;
+
+                JSONObject info = new JSONObject(line);
+                rememberMediaUrl(info);
+                adoptInfo(info);
+                return info;
+            }
+        }
+        catch (IOException | JSONException e)
+        {
+            AbstractMusicPlayer.LOG.log(e);
+        }
+        finally
+        {
+            try
+            {
+                if (ytdlProcess != null)
+                    ytdlProcess.destroyForcibly();
+            }
+            catch (Throwable ignored) {}
+            if (ticket != null)
+                ticket.close();
+        }
+        return null;
+    }
+
+    private List<String> buildYtdlArgs(File infoFile)
+    {
+        List<String> ytdlLaunchArgs = new ArrayList<>();
         if (ytdlLaunchArgsF == null)
             ytdlLaunchArgs.addAll(YOUTUBE_DL_LAUNCH_ARGS);
         else
@@ -228,15 +872,17 @@ public class RemoteSource implements AudioSource
                 ytdlLaunchArgs.add("-q");
         }
 
-        if (ffmpegLaunchArgsF == null)
-            ffmpegLaunchArgs.addAll(FFMPEG_LAUNCH_ARGS);
+        if (infoFile != null)
+        {
+            ytdlLaunchArgs.add("--load-info-json");         //Download using the already extracted info
+            ytdlLaunchArgs.add(infoFile.getAbsolutePath());
+        }
         else
-            ffmpegLaunchArgs.addAll(ffmpegLaunchArgsF);
-
-        ytdlLaunchArgs.add("--");   //Url separator. Deals with YT ids that start with --
-        ytdlLaunchArgs.add(url);    //specifies the URL to download.
-
-        return new RemoteStream(ytdlLaunchArgs, ffmpegLaunchArgs, this.guildId);
+        {
+            ytdlLaunchArgs.add("--");   //Url separator. Deals with YT ids that start with --
+            ytdlLaunchArgs.add(url);    //specifies the URL to download.
+        }
+        return ytdlLaunchArgs;
     }
 
     @Override
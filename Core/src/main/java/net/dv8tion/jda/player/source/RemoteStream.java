@@ -21,30 +21,176 @@ import net.dv8tion.jda.player.AbstractMusicPlayer;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 
 public class RemoteStream extends AudioStream
 {
+    //How FFmpeg and youtube-dl report that the media host rejected an expired or revoked media URL.
+    private static final Pattern MEDIA_REJECTED_PATTERN =
+            Pattern.compile("(?:HTTP error|Server returned) 4(?:03|10)", Pattern.CASE_INSENSITIVE);
+    //The end of each STDerr read is kept in front of the next one, so a message split across reads is still found.
+    //Long enough for the longest match of MEDIA_REJECTED_PATTERN.
+    private static final int REJECTION_CARRY = 32;
+
     //Represent the processes that control the Python Youtube-dl and the FFmpeg program.
     private Process ytdlProcess;
     private Process ffmpegProcess;
-
-    //Async threads that deal with the piping of the outputs of the processes.
-    private Thread ytdlToFFmpegThread;
-    private Thread ytdlErrGobler;
-    private Thread ffmpegErrGobler;
+    private volatile ProcessScheduler.Ticket decoderTicket;
 
     private List<String> ytdlLaunchArgs;
     private List<String> ffmpegLaunchArgs;
-    private AudioTimestamp timestamp = AudioTimestamp.fromSeconds(0);
 
-    protected RemoteStream(List<String> ytdlLaunchArgs, List<String> ffmpegLaunchArgs, String guildId)
+    private final boolean opus;
+    //Captured on creation, the processes might be started by a worker.
+    private volatile ProcessScheduler.Priority priority = ProcessScheduler.getContextPriority(ProcessScheduler.Priority.PLAYBACK);
+    private final DecoderTelemetry telemetry = new DecoderTelemetry();
+    private final List<File> tempFiles = new CopyOnWriteArrayList<>();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private volatile boolean closed = false;
+    private volatile Runnable onMediaRejected;
+
+    protected RemoteStream(List<String> ytdlLaunchArgs, List<String> ffmpegLaunchArgs, String guildId) throws IOException
     {
+        this(ytdlLaunchArgs, ffmpegLaunchArgs, guildId, false);
+    }
+
+    protected RemoteStream(List<String> ytdlLaunchArgs, List<String> ffmpegLaunchArgs, String guildId, boolean opus)
+            throws IOException
+    {
+        this(ytdlLaunchArgs, ffmpegLaunchArgs, guildId, opus, null);
+    }
+
+    /**
+     * Starts youtube-dl piped into FFmpeg.
+     *
+     * @throws IOException
+     *      If the processes could not be started, or weren't admitted by the {@link ProcessScheduler} in time.
+     */
+    protected RemoteStream(List<String> ytdlLaunchArgs, List<String> ffmpegLaunchArgs, String guildId, boolean opus,
+                           AudioTimestamp startPosition) throws IOException
+    {
+        this.opus = opus;
+        setStartPosition(startPosition);
+        telemetry.setStartPosition(startPosition);
         try
         {
+            admitDecoder();
+            start(ytdlLaunchArgs, ffmpegLaunchArgs, guildId);
+        }
+        catch (IOException | RejectedExecutionException e)
+        {
+            closeQuietly();
+            throw e instanceof IOException ? (IOException) e : new IOException("No worker free to start the stream", e);
+        }
+        finally
+        {
+            started.countDown();
+        }
+    }
+
+    /**
+     * Creates a stream that lets FFmpeg read the media itself. The direct FFmpeg command is resolved on a worker,
+     * since that takes a youtube-dl run, and reads block until it was started. If no direct command could be resolved,
+     * the stream falls back to piping youtube-dl into FFmpeg.
+     *
+     * @param directLaunchArgs
+     *      Resolves the FFmpeg command that reads the media URL itself, or returns null if that isn't possible.
+     * @param ytdlLaunchArgs
+     *      The youtube-dl command for the fallback.
+     * @param ffmpegLaunchArgs
+     *      The FFmpeg command for the fallback, reading from STDin.
+     * @param guildId
+     *      The guild this stream is for.
+     * @param opus
+     *      True if the FFmpeg commands output Ogg Opus rather than PCM.
+     * @throws IOException
+     *      If the stream wasn't admitted by the {@link ProcessScheduler} in time, or there was no worker to start it.
+     */
+    protected RemoteStream(Supplier<List<String>> directLaunchArgs, List<String> ytdlLaunchArgs,
+                           List<String> ffmpegLaunchArgs, String guildId, boolean opus) throws IOException
+    {
+        this(directLaunchArgs, ytdlLaunchArgs, ffmpegLaunchArgs, guildId, opus, null);
+    }
+
+    /**
+     * Like {@link #RemoteStream(Supplier, List, List, String, boolean)}, for FFmpeg commands that seek to the
+     * provided position before they start decoding.
+     */
+    protected RemoteStream(Supplier<List<String>> directLaunchArgs, List<String> ytdlLaunchArgs,
+                           List<String> ffmpegLaunchArgs, String guildId, boolean opus, AudioTimestamp startPosition)
+            throws IOException
+    {
+        this.opus = opus;
+        setStartPosition(startPosition);
+        telemetry.setStartPosition(startPosition);
+        try
+        {
+            //Admitted on the calling thread, so that a stream that gets no decoder is never handed out.
+            admitDecoder();
+            startWorker("RemoteStream direct URL resolver", () ->
+            {
+                try
+                {
+                    List<String> directArgs = ProcessScheduler.runWith(priority, directLaunchArgs);
+                    if (directArgs != null)
+                        start(null, directArgs, guildId);
+                    else
+                    {
+                        AbstractMusicPlayer.LOG.debug("Could not stream the media URL directly, piping it through youtube-dl instead");
+                        start(ytdlLaunchArgs, ffmpegLaunchArgs, guildId);
+                    }
+                }
+                catch (IOException | RejectedExecutionException e)
+                {
+                    //A start that was cancelled by close() has nothing to report.
+                    if (!closed)
+                        AbstractMusicPlayer.LOG.log(e);
+                    closeQuietly();
+                }
+                finally
+                {
+                    started.countDown();
+                }
+            });
+        }
+        catch (IOException | RejectedExecutionException e)
+        {
+            closeQuietly();
+            started.countDown();
+            throw e instanceof IOException ? (IOException) e : new IOException("No worker free to start the stream", e);
+        }
+    }
+
+    private void admitDecoder() throws IOException
+    {
+        //Waiting outside of the lock keeps close() from waiting along. close() cancels the wait instead.
+        ProcessScheduler.Ticket ticket = ProcessScheduler.enqueue(priority);
+        decoderTicket = ticket;
+        ticket.await();
+    }
+
+    private void start(List<String> ytdlLaunchArgs, List<String> ffmpegLaunchArgs, String guildId) throws IOException
+    {
+        //FFmpeg only gets its input through STDin when piped, so an idle one from the pool can take over.
+        FFmpegProcessPool pool = ytdlLaunchArgs != null ? FFmpegProcessPool.getDefault() : null;
+        Process warmFFmpeg = pool != null ? pool.take(ffmpegLaunchArgs) : null;
+        synchronized (started)
+        {
+            if (closed)
+            {
+                if (warmFFmpeg != null)
+                    warmFFmpeg.destroyForcibly();
+                return;
+            }
+
             File directory = new File("cache/" + guildId);
             if(!directory.exists()) {
                 directory.mkdirs();
@@ -52,226 +198,321 @@ public class RemoteStream extends AudioStream
                 directory.delete();
                 directory.mkdirs();
             }
+            //Owned by this stream from here on, so that close() also kills it if youtube-dl fails to start.
+            if (warmFFmpeg != null)
+            {
+                AbstractMusicPlayer.LOG.debug("Took over an idle FFmpeg: " + ffmpegLaunchArgs);
+                ffmpegProcess = warmFFmpeg;
+            }
             ProcessBuilder pBuilder = new ProcessBuilder();
             pBuilder.directory(directory);
-            pBuilder.command(ytdlLaunchArgs);
-            AbstractMusicPlayer.LOG.debug("Command: " + pBuilder.command());
-            ytdlProcess = pBuilder.start();
+            if (ytdlLaunchArgs != null)
+            {
+                pBuilder.command(ytdlLaunchArgs);
+                AbstractMusicPlayer.LOG.debug("Command: " + pBuilder.command());
+                ytdlProcess = pBuilder.start();
+            }
 
-            pBuilder.command(ffmpegLaunchArgs);
-            AbstractMusicPlayer.LOG.debug("Command: " + pBuilder.command());
-            ffmpegProcess = pBuilder.start();
+            if (warmFFmpeg == null)
+            {
+                pBuilder.command(ffmpegLaunchArgs);
+                AbstractMusicPlayer.LOG.debug("Command: " + pBuilder.command());
+                ffmpegProcess = pBuilder.start();
+            }
 
             final Process ytdlProcessF = ytdlProcess;
             final Process ffmpegProcessF = ffmpegProcess;
 
-            ytdlToFFmpegThread = new Thread("RemoteSource ytdlToFFmpeg Bridge")
+            //The piping of the outputs of the processes is serviced by the shared StreamWorkerPool.
+            //When FFmpeg reads the media URL itself, there is nothing to bridge and no youtube-dl process.
+            if (ytdlProcessF != null)
             {
-                @Override
-                public void run()
-                {
-                    InputStream fromYTDL = null;
-                    OutputStream toFFmpeg = null;
-                    try
-                    {
-                        fromYTDL = ytdlProcessF.getInputStream();
-                        toFFmpeg = ffmpegProcessF.getOutputStream();
-
-                        byte[] buffer = new byte[1024];
-                        int amountRead = -1;
-                        while (!isInterrupted() && ((amountRead = fromYTDL.read(buffer)) > -1))
-                        {
-                            toFFmpeg.write(buffer, 0, amountRead);
-                        }
-                        toFFmpeg.flush();
-                    }
-                    catch (IOException e)
-                    {
-                        //If the pipe being closed caused this problem, it was because it tried to write when it closed.
-                        String msg = e.getMessage().toLowerCase();
-                        if (e.getMessage().contains("The pipe has been ended") || e.getMessage().contains("Broken pipe"))
-                            AbstractMusicPlayer.LOG.trace("RemoteStream encountered an 'error' : " + e.getMessage() + " (not really an error.. probably)");
-                        else
-                            AbstractMusicPlayer.LOG.log(e);
-                    }
-                    finally
-                    {
-                        try
-                        {
-                            if (fromYTDL != null)
-                                fromYTDL.close();
-                        }
-                        catch (Throwable e) {}
-                        try
-                        {
-                            if (toFFmpeg != null)
-                                toFFmpeg.close();
-                        }
-                        catch (Throwable e) {}
-                    }
-                }
-            };
-
-            ytdlErrGobler = new Thread("RemoteStream ytdlErrGobler")
-            {
-                @Override
-                public void run()
-                {
-                    InputStream fromYTDL = null;
-                    try
-                    {
-                        fromYTDL = ytdlProcessF.getErrorStream();
-                        if (fromYTDL == null)
-                            AbstractMusicPlayer.LOG.fatal("RemoteStream: YTDL-ErrGobler: fromYTDL is null");
-
-                        byte[] buffer = new byte[1024];
-                        int amountRead = -1;
-                        while (!isInterrupted() && ((amountRead = fromYTDL.read(buffer)) > -1))
-                        {
-                            AbstractMusicPlayer.LOG.warn("ERR YTDL: " + new String(Arrays.copyOf(buffer, amountRead)));
-                        }
-                    }
-                    catch (IOException e)
-                    {
-                        AbstractMusicPlayer.LOG.log(e);
-                    }
-                    finally
-                    {
-                        try
-                        {
-                            if (fromYTDL != null)
-                                fromYTDL.close();
-                        }
-                        catch (Throwable ignored) {}
-                    }
-                }
-            };
-
-            ffmpegErrGobler = new Thread("RemoteStream ffmpegErrGobler")
-            {
-                @Override
-                public void run()
-                {
-                    InputStream fromFFmpeg = null;
-                    try
-                    {
-                        fromFFmpeg = ffmpegProcessF.getErrorStream();
-                        if (fromFFmpeg == null)
-                            AbstractMusicPlayer.LOG.fatal("RemoteStream: FFmpeg-ErrGobler: fromYTDL is null");
-
-                        byte[] buffer = new byte[1024];
-                        int amountRead = -1;
-                        while (!isInterrupted() && ((amountRead = fromFFmpeg.read(buffer)) > -1))
-                        {
-                            String info = new String(Arrays.copyOf(buffer, amountRead));
-                            if (info.contains("time="))
-                            {
-                                Matcher m = TIME_PATTERN.matcher(info);
-                                if (m.find())
-                                {
-                                    timestamp = AudioTimestamp.fromFFmpegTimestamp(m.group());
-                                }
-                            }
-                        }
-                    }
-                    catch (IOException e)
-                    {
-                        AbstractMusicPlayer.LOG.log(e);
-                    }
-                    finally
-                    {
-                        try
-                        {
-                            if (fromFFmpeg != null)
-                                fromFFmpeg.close();
-                        }
-                        catch (Throwable ignored) {}
-                    }
-                }
-            };
-
-            ytdlToFFmpegThread.start();
-            ytdlErrGobler.start();
-            ffmpegErrGobler.start();
+                startWorker("RemoteStream ytdlToFFmpeg Bridge", () -> bridgeYtdlToFFmpeg(ytdlProcessF, ffmpegProcessF));
+                startWorker("RemoteStream ytdlErrGobler", () -> gobbleYtdlErr(ytdlProcessF));
+            }
+            startWorker("RemoteStream ffmpegErrGobler", () -> gobbleFFmpegErr(ffmpegProcessF));
             this.in = ffmpegProcess.getInputStream();
         }
+    }
+
+    private void closeQuietly()
+    {
+        try
+        {
+            close();
+        }
         catch (IOException e)
         {
             AbstractMusicPlayer.LOG.log(e);
-            try
-            {
-                close();
-            }
-            catch (IOException e1)
-            {
-                AbstractMusicPlayer.LOG.log(e1);
-            }
         }
     }
 
     @Override
-    public AudioTimestamp getCurrentTimestamp()
+    public void promote(ProcessScheduler.Priority priority)
+    {
+        if (priority.ordinal() < this.priority.ordinal())
+            this.priority = priority;
+        ProcessScheduler.Ticket ticket = decoderTicket;
+        if (ticket != null)
+            ticket.promote(priority);
+    }
+
+    /**
+     * Deletes the provided file once this stream is closed, for files that the processes of this stream need
+     * while they run.
+     *
+     * @param file
+     *      The file to delete.
+     */
+    protected void deleteOnClose(File file)
+    {
+        tempFiles.add(file);
+        if (closed)
+            file.delete();
+    }
+
+    /**
+     * Sets what to run when the media host answers with HTTP 403 or 410, which means that the media URL this stream
+     * was started with has expired or was revoked. Runs at most once.
+     *
+     * @param onMediaRejected
+     *      Called from a worker of this stream.
+     */
+    protected void setOnMediaRejected(Runnable onMediaRejected)
+    {
+        this.onMediaRejected = onMediaRejected;
+    }
+
+    //Looks for the status codes of MEDIA_REJECTED_PATTERN without decoding the output.
+    private static boolean mayBeRejection(byte[] output, int start, int end)
+    {
+        //The status code follows a space in both messages, progress values follow a '='.
+        for (int i = start + 1; i + 2 < end; i++)
+        {
+            if (output[i - 1] == ' ' && output[i] == '4'
+                    && ((output[i + 1] == '0' && output[i + 2] == '3') || (output[i + 1] == '1' && output[i + 2] == '0')))
+                return true;
+        }
+        return false;
+    }
+
+    private void checkMediaRejected(String output)
+    {
+        Runnable callback = onMediaRejected;
+        if (callback == null || !MEDIA_REJECTED_PATTERN.matcher(output).find())
+            return;
+
+        onMediaRejected = null;
+        callback.run();
+    }
+
+    @Override
+    public int read() throws IOException
     {
-        return timestamp;
+        awaitStart();
+        return super.read();
     }
 
     @Override
-    public void close() throws IOException
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        awaitStart();
+        return super.read(b, off, len);
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        //Never blocks. Nothing is available until FFmpeg was started.
+        return started.getCount() == 0 ? super.available() : 0;
+    }
+
+    private void awaitStart() throws IOException
     {
+        if (started.getCount() == 0)
+            return;
         try
         {
-            if (in != null)
+            started.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for FFmpeg to start");
+        }
+    }
+
+    @Override
+    public boolean isOpus()
+    {
+        return opus;
+    }
+
+    private void bridgeYtdlToFFmpeg(Process ytdlProcess, Process ffmpegProcess)
+    {
+        InputStream fromYTDL = null;
+        OutputStream toFFmpeg = null;
+        try
+        {
+            fromYTDL = ytdlProcess.getInputStream();
+            toFFmpeg = ffmpegProcess.getOutputStream();
+
+            byte[] buffer = new byte[1024];
+            int amountRead = -1;
+            while (!Thread.currentThread().isInterrupted() && ((amountRead = fromYTDL.read(buffer)) > -1))
             {
-                in.close();
-                in = null;
+                toFFmpeg.write(buffer, 0, amountRead);
             }
+            toFFmpeg.flush();
         }
-        catch (Throwable ignored) {}
-        try
+        catch (IOException e)
+        {
+            //If the pipe being closed caused this problem, it was because it tried to write when it closed.
+            String msg = e.getMessage().toLowerCase();
+            if (e.getMessage().contains("The pipe has been ended") || e.getMessage().contains("Broken pipe"))
+                AbstractMusicPlayer.LOG.trace("RemoteStream encountered an 'error' : " + e.getMessage() + " (not really an error.. probably)");
+            else
+                AbstractMusicPlayer.LOG.log(e);
+        }
+        finally
         {
-            if (ytdlToFFmpegThread != null)
+            try
+            {
+                if (fromYTDL != null)
+                    fromYTDL.close();
+            }
+            catch (Throwable e) {}
+            try
             {
-                ytdlToFFmpegThread.interrupt();
-                ytdlToFFmpegThread = null;
+                if (toFFmpeg != null)
+                    toFFmpeg.close();
             }
+            catch (Throwable e) {}
         }
-        catch (Throwable ignored) {}
+    }
+
+    private void gobbleYtdlErr(Process ytdlProcess)
+    {
+        InputStream fromYTDL = null;
         try
         {
-            if (ytdlErrGobler != null)
+            fromYTDL = ytdlProcess.getErrorStream();
+            if (fromYTDL == null)
+                AbstractMusicPlayer.LOG.fatal("RemoteStream: YTDL-ErrGobler: fromYTDL is null");
+
+            byte[] buffer = new byte[1024];
+            int amountRead = -1;
+            while (!Thread.currentThread().isInterrupted() && ((amountRead = fromYTDL.read(buffer)) > -1))
             {
-                ytdlErrGobler.interrupt();
-                ytdlErrGobler = null;
+                String error = new String(Arrays.copyOf(buffer, amountRead));
+                AbstractMusicPlayer.LOG.warn("ERR YTDL: " + error);
+                checkMediaRejected(error);
             }
         }
-        catch (Throwable ignored) {}
+        catch (IOException e)
+        {
+            AbstractMusicPlayer.LOG.log(e);
+        }
+        finally
+        {
+            try
+            {
+                if (fromYTDL != null)
+                    fromYTDL.close();
+            }
+            catch (Throwable ignored) {}
+        }
+    }
+
+    private void gobbleFFmpegErr(Process ffmpegProcess)
+    {
+        InputStream fromFFmpeg = null;
         try
         {
-            if (ffmpegErrGobler != null)
+            fromFFmpeg = ffmpegProcess.getErrorStream();
+            if (fromFFmpeg == null)
+                AbstractMusicPlayer.LOG.fatal("RemoteStream: FFmpeg-ErrGobler: fromYTDL is null");
+
+            FFmpegProgressParser progress = new FFmpegProgressParser(telemetry);
+            byte[] buffer = new byte[REJECTION_CARRY + 1024];
+            int carried = 0;
+            int amountRead = -1;
+            while (!Thread.currentThread().isInterrupted()
+                    && ((amountRead = fromFFmpeg.read(buffer, REJECTION_CARRY, 1024)) > -1))
             {
-                ffmpegErrGobler.interrupt();
-                ffmpegErrGobler = null;
+                progress.feed(buffer, REJECTION_CARRY, amountRead);
+                //FFmpeg prints progress all the time, only look at the output as text if it could be a rejection.
+                int start = REJECTION_CARRY - carried;
+                int end = REJECTION_CARRY + amountRead;
+                if (mayBeRejection(buffer, start, end))
+                    checkMediaRejected(new String(buffer, start, end - start));
+
+                carried = Math.min(REJECTION_CARRY, end - start);
+                System.arraycopy(buffer, end - carried, buffer, REJECTION_CARRY - carried, carried);
             }
         }
-        catch (Throwable ignored) {}
+        catch (IOException e)
+        {
+            AbstractMusicPlayer.LOG.log(e);
+        }
+        finally
+        {
+            try
+            {
+                if (fromFFmpeg != null)
+                    fromFFmpeg.close();
+            }
+            catch (Throwable ignored) {}
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        closed = true;
+        started.countDown();
         try
         {
-            if (ffmpegProcess != null)
+            if (in != null)
             {
-                ffmpegProcess.destroyForcibly();
-                ffmpegProcess = null;
+                in.close();
+                in = null;
             }
         }
         catch (Throwable ignored) {}
         try
         {
-            if (ytdlProcess != null)
+            stopWorkers();
+        }
+        catch (Throwable ignored) {}
+        //Waits for a direct stream that is starting its processes right now, later starts see the closed flag.
+        synchronized (started)
+        {
+            try
+            {
+                if (ffmpegProcess != null)
+                {
+                    ffmpegProcess.destroyForcibly();
+                    ffmpegProcess = null;
+                }
+            }
+            catch (Throwable ignored) {}
+            try
             {
-                ytdlProcess.destroyForcibly();
-                ytdlProcess = null;
+                if (ytdlProcess != null)
+                {
+                    ytdlProcess.destroyForcibly();
+                    ytdlProcess = null;
+                }
             }
+            catch (Throwable ignored) {}
         }
-        catch (Throwable ignored) {}
+        //Frees the slot of the processes, or cancels a start that is still waiting for one.
+        ProcessScheduler.Ticket ticket = decoderTicket;
+        if (ticket != null)
+            ticket.close();
+        for (File file : tempFiles)
+            file.delete();
         try
         {
             super.close();
@@ -0,0 +1,207 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.source;
+
+import net.dv8tion.jda.player.AbstractMusicPlayer;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared, bounded executor that services the process pipes (stdout bridges and stderr gobblers) of every
+ * {@link AudioStream}, instead of each stream spawning its own set of platform threads.
+ * <p>
+ * The workers are daemon platform threads with a small stack. On a JDK that supports virtual threads they can be
+ * virtual threads instead by setting {@code preferVirtualThreads}, but the default pool doesn't: reading a process
+ * pipe is a blocking file read, which holds on to the carrier thread of a virtual thread for as long as it waits.
+ * The JDK only adds carriers for those up to {@code jdk.virtualThreadScheduler.maxPoolSize}, 256 by default, so
+ * past that many waiting pipes every other virtual thread stalls. Either way at most {@code maxWorkers} tasks run
+ * at once.
+ * <p>
+ * Pipe workers live as long as their stream, so a task is never queued behind them: a queued stderr gobbler would
+ * let the pipe of its process fill up and stall the decoder without any error. Once every worker is busy, further
+ * tasks are rejected right away and the stream that needed them fails to start instead.
+ */
+public class StreamWorkerPool
+{
+    //A playing guild needs up to 5 workers: the pipes of youtube-dl and FFmpeg, the prefetch filler and a preload.
+    public static final int DEFAULT_MAX_WORKERS = 4096;
+    //Pipe workers only copy between streams, they don't need the default 1MB stack.
+    private static final long PLATFORM_STACK_SIZE = 256 * 1024;
+    private static StreamWorkerPool defaultPool;
+
+    private final ThreadPoolExecutor executor;
+    private final int maxWorkers;
+    private final boolean virtual;
+    private final AtomicInteger activeWorkers = new AtomicInteger(0);
+    private final AtomicInteger peakWorkers = new AtomicInteger(0);
+    private final AtomicLong rejectedTasks = new AtomicLong(0);
+    private volatile boolean warnedSaturated = false;
+
+    /**
+     * @param maxWorkers
+     *      The most tasks that run at once.
+     * @param preferVirtualThreads
+     *      True to use virtual threads where the JDK has them. Only worth it with a carrier pool that is raised to
+     *      the amount of pipes read at once, see the class description.
+     */
+    public StreamWorkerPool(int maxWorkers, boolean preferVirtualThreads)
+    {
+        if (maxWorkers < 1)
+            throw new IllegalArgumentException("A StreamWorkerPool requires at least 1 worker. Provided: " + maxWorkers);
+
+        ThreadFactory factory = preferVirtualThreads ? createVirtualThreadFactory() : null;
+        this.virtual = factory != null;
+        if (factory == null)
+        {
+            final AtomicInteger threadCount = new AtomicInteger(0);
+            factory = r ->
+            {
+                Thread t = new Thread(null, r, "StreamWorker-" + threadCount.incrementAndGet(), PLATFORM_STACK_SIZE);
+                t.setDaemon(true);
+                return t;
+            };
+        }
+
+        this.maxWorkers = maxWorkers;
+        this.executor = new ThreadPoolExecutor(0, maxWorkers, 30, TimeUnit.SECONDS, new SynchronousQueue<>(), factory);
+    }
+
+    /**
+     * The pool used by all streams, created with {@link #DEFAULT_MAX_WORKERS} platform threads unless one was
+     * provided with {@link #setDefault(StreamWorkerPool)}.
+     *
+     * @return The default pool.
+     */
+    public static synchronized StreamWorkerPool getDefault()
+    {
+        if (defaultPool == null)
+            defaultPool = new StreamWorkerPool(DEFAULT_MAX_WORKERS, false);
+        return defaultPool;
+    }
+
+    public static synchronized void setDefault(StreamWorkerPool pool)
+    {
+        if (pool == null)
+            throw new NullPointerException("Cannot set the default StreamWorkerPool to null");
+        defaultPool = pool;
+    }
+
+    /**
+     * Starts a pipe servicing task on a free worker. The worker that runs it is renamed to {@code name} for the
+     * duration of the task so that thread dumps still show which stream it belongs to.
+     *
+     * @param name
+     *      The name to give the worker while it runs the task.
+     * @param task
+     *      The task to run.
+     * @return A Future that can be cancelled (interrupting the worker) when the stream closes.
+     * @throws RejectedExecutionException
+     *      If all workers are busy or the pool was shut down.
+     */
+    public Future<?> submit(String name, Runnable task)
+    {
+        Future<?> future;
+        try
+        {
+            future = executor.submit(() -> run(name, task));
+        }
+        catch (RejectedExecutionException e)
+        {
+            rejectedTasks.incrementAndGet();
+            if (!warnedSaturated && !executor.isShutdown())
+            {
+                warnedSaturated = true;
+                AbstractMusicPlayer.LOG.warn("StreamWorkerPool is saturated (" + maxWorkers + " workers). " +
+                        "New streams can't be started, consider raising the worker cap.");
+            }
+            throw e;
+        }
+        return future;
+    }
+
+    private void run(String name, Runnable task)
+    {
+        int active = activeWorkers.incrementAndGet();
+        peakWorkers.accumulateAndGet(active, Math::max);
+
+        Thread current = Thread.currentThread();
+        String oldName = current.getName();
+        current.setName(name);
+        try
+        {
+            task.run();
+        }
+        finally
+        {
+            current.setName(oldName);
+            activeWorkers.decrementAndGet();
+        }
+    }
+
+    public int getMaxWorkers()
+    {
+        return maxWorkers;
+    }
+
+    public int getActiveWorkers()
+    {
+        return activeWorkers.get();
+    }
+
+    public int getPeakWorkers()
+    {
+        return peakWorkers.get();
+    }
+
+    /**
+     * @return The amount of tasks that were rejected because all workers were busy.
+     */
+    public long getRejectedCount()
+    {
+        return rejectedTasks.get();
+    }
+
+    public boolean isVirtual()
+    {
+        return virtual;
+    }
+
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    //Thread.ofVirtual() only exists on JDK 21+, so we go through reflection to stay Java 8 compatible.
+    private static ThreadFactory createVirtualThreadFactory()
+    {
+        try
+        {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method name = builderClass.getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, "StreamWorker-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        }
+        catch (ReflectiveOperationException | LinkageError e)
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,562 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.source;
+
+import net.dv8tion.jda.player.AbstractMusicPlayer;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps a small pool of warm youtube-dl worker processes to resolve info and playlists, instead of starting
+ * {@code python ./youtube-dl} for every request.
+ * <p>
+ * Each worker runs an embedded script that imports youtube-dl once and then serves JSON requests, tagged with an id,
+ * over its STDin and STDout. Requests are spread over the workers by their amount of pending requests and run
+ * concurrently inside a worker. Workers are health checked with pings, are restarted when they crash or stop
+ * responding, and pending requests of a lost worker fail with an IOException.
+ * <p>
+ * There is no resolver by default. Set one with {@link #setDefault(YoutubeDLResolver)} to have RemoteSource and
+ * Playlist use it. Sources created with custom youtube-dl arguments keep using the command line.
+ */
+public class YoutubeDLResolver
+{
+    public static final int DEFAULT_POOL_SIZE = 2;
+    public static final long DEFAULT_TIMEOUT = TimeUnit.SECONDS.toMillis(60);
+    public static final long HEALTH_CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+    public static final long HEALTH_CHECK_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+    public static final List<String> PYTHON_LAUNCH_ARGS =
+            Collections.unmodifiableList(Arrays.asList(
+                    "python"            //Launch python executor
+            ));
+    private static final String WORKER_SCRIPT = "youtube-dl-worker.py";
+    private static YoutubeDLResolver defaultResolver = null;
+    private static File scriptFile = null;
+
+    private final List<String> launchArgs;
+    private final long timeout;
+    private final Worker[] workers;
+    private final ScheduledExecutorService healthChecker;
+    private volatile boolean shutdown = false;
+
+    private final AtomicLong nextId = new AtomicLong(0);
+    private final AtomicLong requests = new AtomicLong(0);
+    private final AtomicLong restarts = new AtomicLong(0);
+
+    public YoutubeDLResolver()
+    {
+        this(DEFAULT_POOL_SIZE, "./youtube-dl", DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * @param poolSize
+     *      Amount of worker processes to keep running.
+     * @param youtubeDlPath
+     *      Path to the youtube-dl program file, like {@code ./youtube-dl}.
+     * @param timeout
+     *      Time in milliseconds that the blocking methods wait for an answer. Playlist listings wait this long for
+     *      each next entry.
+     * @throws IllegalStateException
+     *      If the worker script can't be loaded.
+     */
+    public YoutubeDLResolver(int poolSize, String youtubeDlPath, long timeout)
+    {
+        if (poolSize < 1)
+            throw new IllegalArgumentException("YoutubeDLResolver needs at least 1 worker");
+        if (timeout < 1)
+            throw new IllegalArgumentException("YoutubeDLResolver timeout must be positive");
+
+        this.launchArgs = new ArrayList<>(PYTHON_LAUNCH_ARGS);
+        this.launchArgs.add(getScriptFile().getAbsolutePath());
+        this.launchArgs.add(youtubeDlPath);
+        this.timeout = timeout;
+        this.workers = new Worker[poolSize];
+        for (int i = 0; i < poolSize; i++)
+            workers[i] = new Worker(i);
+
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread t = new Thread(r, "YoutubeDLResolver health check");
+            t.setDaemon(true);
+            return t;
+        });
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, 0, HEALTH_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized YoutubeDLResolver getDefault()
+    {
+        return defaultResolver;
+    }
+
+    /**
+     * Sets the resolver used by RemoteSource and Playlist. There is none by default.
+     *
+     * @param resolver
+     *      The resolver to use, or null to start youtube-dl for every request.
+     */
+    public static synchronized void setDefault(YoutubeDLResolver resolver)
+    {
+        defaultResolver = resolver;
+    }
+
+    /**
+     * Resolves the youtube-dl info of a single url, the same info {@code youtube-dl -j} prints.
+     *
+     * @param url
+     *      The url to resolve.
+     * @return A future completed with the info. It fails with a {@link ResolveException} if youtube-dl could not
+     *         resolve the url, or another IOException if the worker failed.
+     */
+    public CompletableFuture<JSONObject> resolve(String url)
+    {
+        Request request = new Request(null);
+        JSONObject json = new JSONObject();
+        json.put("op", "info");
+        json.put("url", url);
+        submit(request, json);
+        return request.future.thenApply(result -> result.getJSONObject("result"));
+    }
+
+    /**
+     * Blocking version of {@link #resolve(String)}.
+     *
+     * @param url
+     *      The url to resolve.
+     * @return The youtube-dl info.
+     * @throws IOException
+     *      A {@link ResolveException} if youtube-dl could not resolve the url, or another IOException if the worker
+     *      failed or didn't answer in time.
+     */
+    public JSONObject getInfo(String url) throws IOException
+    {
+        return await(resolve(url), timeout);
+    }
+
+    /**
+     * Lists the entries of a playlist, the same as {@code youtube-dl -j --flat-playlist}. If the url is not a
+     * playlist, its full info is handed to {@code onEntry} as the only entry. Blocks until the whole playlist was
+     * listed.
+     *
+     * @param url
+     *      The url of the playlist or single source.
+     * @param onEntry
+     *      Called with each entry as youtube-dl lists it, along with whether it is a flat playlist entry.
+     * @throws IOException
+     *      A {@link ResolveException} if youtube-dl could not list the url, or another IOException if the worker
+     *      failed or listed no further entry in time.
+     */
+    public void listPlaylist(String url, PlaylistEntryConsumer onEntry) throws IOException
+    {
+        Request request = new Request(onEntry);
+        JSONObject json = new JSONObject();
+        json.put("op", "playlist");
+        json.put("url", url);
+        submit(request, json);
+        //Large playlists can take a while to list, so the timeout only applies between entries.
+        await(request.future, timeout, () -> request.lastProgress);
+    }
+
+    public int getPoolSize()
+    {
+        return workers.length;
+    }
+
+    public long getRequestCount()
+    {
+        return requests.get();
+    }
+
+    public long getRestartCount()
+    {
+        return restarts.get();
+    }
+
+    public int getPendingRequests()
+    {
+        int pending = 0;
+        for (Worker worker : workers)
+            pending += worker.pending.size();
+        return pending;
+    }
+
+    /**
+     * Stops all workers. Pending requests fail and new requests are rejected.
+     */
+    public void shutdown()
+    {
+        shutdown = true;
+        healthChecker.shutdownNow();
+        for (Worker worker : workers)
+            worker.stop();
+    }
+
+    private void submit(Request request, JSONObject json)
+    {
+        if (shutdown)
+        {
+            request.fail(new IOException("YoutubeDLResolver was shut down"));
+            return;
+        }
+
+        Worker worker = workers[0];
+        for (Worker candidate : workers)
+        {
+            if (candidate.pending.size() < worker.pending.size())
+                worker = candidate;
+        }
+
+        requests.incrementAndGet();
+        json.put("id", request.id);
+        try
+        {
+            worker.send(request, json);
+        }
+        catch (IOException e)
+        {
+            request.fail(e);
+        }
+    }
+
+    private <T> T await(CompletableFuture<T> future, long timeout) throws IOException
+    {
+        long start = System.nanoTime();
+        return await(future, timeout, () -> start);
+    }
+
+    //Fails once there was no progress for the timeout, progress being the System.nanoTime() of the last one.
+    private <T> T await(CompletableFuture<T> future, long timeout, LongSupplier progress) throws IOException
+    {
+        try
+        {
+            while (true)
+            {
+                long idle = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - progress.getAsLong());
+                if (idle >= timeout)
+                    throw new TimeoutException();
+                try
+                {
+                    return future.get(timeout - idle, TimeUnit.MILLISECONDS);
+                }
+                catch (TimeoutException e)
+                {
+                    //Checked again above, there may have been progress while waiting.
+                }
+            }
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+        catch (TimeoutException e)
+        {
+            future.cancel(false);
+            throw new IOException("youtube-dl worker did not answer within " + timeout + "ms");
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            future.cancel(false);
+            throw new InterruptedIOException("Interrupted while waiting on youtube-dl");
+        }
+    }
+
+    private void checkHealth()
+    {
+        for (Worker worker : workers)
+        {
+            if (shutdown)
+                return;
+            try
+            {
+                worker.ensureStarted();
+            }
+            catch (IOException e)
+            {
+                AbstractMusicPlayer.LOG.warn("Could not start youtube-dl worker: " + e.getMessage());
+                continue;
+            }
+
+            Request ping = new Request(null);
+            JSONObject json = new JSONObject();
+            json.put("op", "ping");
+            json.put("id", ping.id);
+            try
+            {
+                worker.send(ping, json);
+                ping.future.get(HEALTH_CHECK_TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+            catch (TimeoutException e)
+            {
+                AbstractMusicPlayer.LOG.warn("youtube-dl worker " + worker.index + " stopped responding, restarting it");
+                worker.stop();
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            catch (IOException | ExecutionException e)
+            {
+                //The worker died while we were checking it. The next check or request starts it again.
+                AbstractMusicPlayer.LOG.debug("youtube-dl worker " + worker.index + " failed its health check: " + e.getMessage());
+            }
+        }
+    }
+
+    //The script lives inside our jar, but python needs a file to run.
+    private static synchronized File getScriptFile()
+    {
+        if (scriptFile != null && scriptFile.exists())
+            return scriptFile;
+
+        try (InputStream in = YoutubeDLResolver.class.getClassLoader().getResourceAsStream(WORKER_SCRIPT))
+        {
+            if (in == null)
+                throw new IllegalStateException("Could not find " + WORKER_SCRIPT + " on the classpath");
+
+            File file = File.createTempFile("youtube-dl-worker", ".py");
+            file.deleteOnExit();
+            try (OutputStream out = new FileOutputStream(file))
+            {
+                byte[] buffer = new byte[4096];
+                int amountRead;
+                while ((amountRead = in.read(buffer)) > -1)
+                    out.write(buffer, 0, amountRead);
+            }
+            scriptFile = file;
+            return file;
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Could not extract " + WORKER_SCRIPT, e);
+        }
+    }
+
+    /**
+     * Receives playlist entries from {@link #listPlaylist(String, PlaylistEntryConsumer)}.
+     */
+    public interface PlaylistEntryConsumer
+    {
+        /**
+         * @param entry
+         *      The youtube-dl info of the entry.
+         * @param playlistEntry
+         *      True for a flat playlist entry, which has a {@code url}. False for the full info of a url that
+         *      wasn't a playlist, which has a {@code webpage_url}.
+         */
+        void accept(JSONObject entry, boolean playlistEntry);
+    }
+
+    /**
+     * youtube-dl itself could not resolve the url. The message is youtube-dl's error.
+     */
+    public static class ResolveException extends IOException
+    {
+        private static final long serialVersionUID = 1L;
+
+        public ResolveException(String message)
+        {
+            super(message);
+        }
+    }
+
+    private class Request
+    {
+        private final long id = nextId.incrementAndGet();
+        private final PlaylistEntryConsumer onEntry;
+        private final CompletableFuture<JSONObject> future = new CompletableFuture<>();
+        private volatile long lastProgress = System.nanoTime();
+
+        private Request(PlaylistEntryConsumer onEntry)
+        {
+            this.onEntry = onEntry;
+        }
+
+        private void fail(IOException e)
+        {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private class Worker
+    {
+        private final int index;
+        private final Map<Long, Request> pending = new ConcurrentHashMap<>();
+        private Process process;
+        private Writer stdin;
+        private boolean startedBefore = false;
+
+        private Worker(int index)
+        {
+            this.index = index;
+        }
+
+        private synchronized void ensureStarted() throws IOException
+        {
+            if (process != null && process.isAlive())
+                return;
+            if (shutdown)
+                throw new IOException("YoutubeDLResolver was shut down");
+
+            if (startedBefore)
+                restarts.incrementAndGet();
+            startedBefore = true;
+            Process started = new ProcessBuilder().command(launchArgs).start();
+            process = started;
+            stdin = new BufferedWriter(new OutputStreamWriter(started.getOutputStream(), StandardCharsets.UTF_8));
+            AbstractMusicPlayer.LOG.debug("Started youtube-dl worker " + index);
+
+            //These live as long as the process, so they get their own threads instead of holding pool workers.
+            startDaemon("YoutubeDLResolver worker " + index + " reader", () -> readResponses(started));
+            startDaemon("YoutubeDLResolver worker " + index + " errGobler", () -> gobbleErr(started));
+        }
+
+        private void startDaemon(String name, Runnable task)
+        {
+            Thread t = new Thread(task, name);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        private void send(Request request, JSONObject json) throws IOException
+        {
+            synchronized (this)
+            {
+                ensureStarted();
+                pending.put(request.id, request);
+                //Requests that time out or are cancelled shouldn't leak.
+                request.future.whenComplete((r, t) -> pending.remove(request.id));
+                try
+                {
+                    stdin.write(json.toString());
+                    stdin.write('\n');
+                    stdin.flush();
+                }
+                catch (IOException e)
+                {
+                    pending.remove(request.id);
+                    throw e;
+                }
+            }
+        }
+
+        private void stop()
+        {
+            Process current;
+            synchronized (this)
+            {
+                current = process;
+            }
+            //The reader sees the end of the stream and fails everything that is pending.
+            if (current != null)
+                current.destroyForcibly();
+        }
+
+        private void readResponses(Process owner)
+        {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(owner.getInputStream(), StandardCharsets.UTF_8)))
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    try
+                    {
+                        handleResponse(new JSONObject(line));
+                    }
+                    catch (JSONException e)
+                    {
+                        AbstractMusicPlayer.LOG.debug("youtube-dl worker " + index + " sent a malformed response: " + e.getMessage());
+                    }
+                }
+            }
+            catch (IOException ignored) {}
+            finally
+            {
+                lost(owner);
+            }
+        }
+
+        private void handleResponse(JSONObject response)
+        {
+            if (response.isNull("id"))
+            {
+                AbstractMusicPlayer.LOG.debug("youtube-dl worker " + index + ": " + response.optString("error"));
+                return;
+            }
+
+            Request request = pending.get(response.getLong("id"));
+            if (request == null)
+                return;     //Timed out or cancelled.
+
+            if (response.has("entry"))
+            {
+                request.lastProgress = System.nanoTime();
+                try
+                {
+                    request.onEntry.accept(response.getJSONObject("entry"), response.optBoolean("playlist", false));
+                }
+                catch (Throwable t)
+                {
+                    AbstractMusicPlayer.LOG.log(t);
+                }
+            }
+            else if (response.has("error"))
+                request.fail(new ResolveException(response.getString("error")));
+            else
+                request.future.complete(response);
+        }
+
+        private void lost(Process owner)
+        {
+            synchronized (this)
+            {
+                if (process == owner)
+                {
+                    process = null;
+                    stdin = null;
+                }
+            }
+            owner.destroyForcibly();
+
+            IOException e = new IOException("youtube-dl worker " + index + " exited");
+            for (Request request : pending.values())
+                request.fail(e);
+        }
+
+        private void gobbleErr(Process owner)
+        {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(owner.getErrorStream(), StandardCharsets.UTF_8)))
+            {
+                String line;
+                while ((line = reader.readLine()) != null)
+                    AbstractMusicPlayer.LOG.trace("ERR YTDL worker " + index + ": " + line);
+            }
+            catch (IOException ignored) {}
+        }
+    }
+}
@@ -0,0 +1,141 @@
+#     Copyright 2016 Austin Keener
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+# Long-lived youtube-dl worker used by YoutubeDLResolver. Works with Python 2.6+ and 3.
+# Usage: python youtube-dl-worker.py <path to youtube-dl>
+#
+# Reads one JSON request per line from STDin and answers with JSON lines on STDout, tagged with the request id.
+# Requests run on a fixed set of threads, so answers can arrive in any order. Pings are answered right away, even
+# while all threads are busy, so that a busy worker passes its health check.
+#   {"id": 1, "op": "ping"}                     -> {"id": 1, "ok": true}
+#   {"id": 2, "op": "info", "url": "..."}       -> {"id": 2, "result": {...}}
+#   {"id": 3, "op": "playlist", "url": "..."}   -> {"id": 3, "entry": {...}, "playlist": true} per entry, then {"id": 3, "ok": true}
+# A failed request is answered with {"id": n, "error": "..."}.
+
+import json
+import sys
+import threading
+
+try:
+    import queue
+except ImportError:
+    import Queue as queue
+
+sys.path.insert(0, sys.argv[1] if len(sys.argv) > 1 else './youtube-dl')
+
+# youtube-dl may print to STDout, which would corrupt the protocol. Keep STDout to ourselves.
+protocol_out = sys.stdout
+sys.stdout = sys.stderr
+
+import youtube_dl
+
+# The same behaviour as the command line arguments in RemoteSource.YOUTUBE_DL_LAUNCH_ARGS.
+BASE_OPTIONS = {
+    'format': 'bestaudio/best',
+    'noplaylist': True,
+    'cachedir': False,
+    'quiet': True,
+    'no_warnings': True,
+    'source_address': '0.0.0.0',
+}
+
+# Requests beyond this wait in the queue instead of each starting a thread.
+REQUEST_THREADS = 8
+
+write_lock = threading.Lock()
+requests = queue.Queue()
+
+
+def send(message):
+    line = json.dumps(message, default=str)
+    write_lock.acquire()
+    try:
+        protocol_out.write(line + '\n')
+        protocol_out.flush()
+    finally:
+        write_lock.release()
+
+
+def resolve_info(url):
+    ydl = youtube_dl.YoutubeDL(dict(BASE_OPTIONS))
+    return ydl.extract_info(url, download=False)
+
+
+def list_playlist(request_id, url):
+    options = dict(BASE_OPTIONS)
+    options['noplaylist'] = False
+    options['extract_flat'] = 'in_playlist'
+    ydl = youtube_dl.YoutubeDL(options)
+
+    info = ydl.extract_info(url, download=False, process=False)
+    # Follow redirects to the extractor that actually handles the url.
+    for _ in range(5):
+        if info.get('_type') not in ('url', 'url_transparent'):
+            break
+        info = ydl.extract_info(info['url'], download=False, process=False, ie_key=info.get('ie_key'))
+
+    if info.get('_type') in ('playlist', 'multi_video'):
+        # Entries are often a generator that fetches the playlist page by page, so send them as they come.
+        for entry in info.get('entries') or []:
+            if entry:
+                send({'id': request_id, 'entry': entry, 'playlist': True})
+    else:
+        send({'id': request_id, 'entry': ydl.process_ie_result(info, download=False), 'playlist': False})
+
+
+def handle(request):
+    request_id = request.get('id')
+    try:
+        op = request.get('op')
+        if op == 'info':
+            send({'id': request_id, 'result': resolve_info(request['url'])})
+        elif op == 'playlist':
+            list_playlist(request_id, request['url'])
+            send({'id': request_id, 'ok': True})
+        else:
+            send({'id': request_id, 'error': 'Unknown op: %s' % op})
+    except BaseException as e:
+        send({'id': request_id, 'error': str(e) or e.__class__.__name__})
+
+
+def run_requests():
+    while True:
+        handle(requests.get())
+
+
+def main():
+    for _ in range(REQUEST_THREADS):
+        thread = threading.Thread(target=run_requests)
+        thread.daemon = True
+        thread.start()
+
+    while True:
+        line = sys.stdin.readline()
+        if not line:
+            break
+        line = line.strip()
+        if not line:
+            continue
+        try:
+            request = json.loads(line)
+        except ValueError as e:
+            send({'id': None, 'error': 'Malformed request: %s' % e})
+            continue
+        if request.get('op') == 'ping':
+            send({'id': request.get('id'), 'ok': True})
+        else:
+            requests.put(request)
+
+
+main()
@@ -0,0 +1,197 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class PlayerMailboxTest
+{
+    @Test
+    public void executeRunsTheCommandOnTheCallingThread()
+    {
+        PlayerMailbox mailbox = new PlayerMailbox();
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+        mailbox.execute(() -> ranOn.set(Thread.currentThread()));
+        assertSame(Thread.currentThread(), ranOn.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void executeRethrowsWhatTheCommandThrew()
+    {
+        new PlayerMailbox().execute(() ->
+        {
+            throw new IllegalStateException("Expected");
+        });
+    }
+
+    @Test
+    public void commandsWithinCommandsRunInline()
+    {
+        PlayerMailbox mailbox = new PlayerMailbox();
+        List<String> order = new ArrayList<>();
+        mailbox.execute(() ->
+        {
+            order.add("outer");
+            mailbox.execute(() -> order.add("inner"));
+            order.add("after");
+        });
+        assertEquals("[outer, inner, after]", order.toString());
+    }
+
+    @Test
+    public void framesAreSkippedWhileACommandRuns() throws InterruptedException
+    {
+        PlayerMailbox mailbox = new PlayerMailbox();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread commandThread = new Thread(() -> mailbox.execute(() ->
+        {
+            running.countDown();
+            awaitQuietly(release);
+        }));
+        commandThread.start();
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        assertFalse(mailbox.tryAcquireFrame());
+        release.countDown();
+        commandThread.join(5000);
+
+        assertTrue(mailbox.tryAcquireFrame());
+        mailbox.releaseFrame();
+    }
+
+    @Test
+    public void commandsWaitForTheFrameAndRunOffTheSendThread() throws InterruptedException
+    {
+        PlayerMailbox mailbox = new PlayerMailbox();
+        assertTrue(mailbox.tryAcquireFrame());
+
+        AtomicBoolean frameDone = new AtomicBoolean(false);
+        AtomicBoolean ranAfterFrame = new AtomicBoolean(false);
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+        Thread commandThread = new Thread(() -> mailbox.execute(() ->
+        {
+            ranAfterFrame.set(frameDone.get());
+            ranOn.set(Thread.currentThread());
+        }));
+        commandThread.start();
+
+        Thread.sleep(50);
+        assertNull("Ran during the frame", ranOn.get());
+        frameDone.set(true);
+        mailbox.releaseFrame();
+
+        commandThread.join(5000);
+        assertFalse(commandThread.isAlive());
+        assertTrue(ranAfterFrame.get());
+        assertNotSame(Thread.currentThread(), ranOn.get());
+    }
+
+    @Test
+    public void commandsFromWithinAFrameRunOnceItIsDone() throws InterruptedException
+    {
+        PlayerMailbox mailbox = new PlayerMailbox();
+        CountDownLatch ran = new CountDownLatch(1);
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+
+        assertTrue(mailbox.tryAcquireFrame());
+        //Like a listener that skips when the frame's source ended. It doesn't wait, nobody may block the send thread.
+        mailbox.execute(() ->
+        {
+            ranOn.set(Thread.currentThread());
+            ran.countDown();
+        });
+        assertEquals(1, ran.getCount());
+        mailbox.releaseFrame();
+
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), ranOn.get());
+    }
+
+    @Test
+    public void commandsAndFramesNeverOverlap() throws InterruptedException
+    {
+        PlayerMailbox mailbox = new PlayerMailbox();
+        AtomicInteger inside = new AtomicInteger(0);
+        AtomicInteger overlaps = new AtomicInteger(0);
+        AtomicInteger commandsRun = new AtomicInteger(0);
+        AtomicBoolean done = new AtomicBoolean(false);
+
+        Thread send = new Thread(() ->
+        {
+            while (!done.get())
+            {
+                if (!mailbox.tryAcquireFrame())
+                    continue;
+                if (inside.incrementAndGet() != 1)
+                    overlaps.incrementAndGet();
+                inside.decrementAndGet();
+                mailbox.releaseFrame();
+            }
+        });
+        send.start();
+
+        List<Thread> commandThreads = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+        {
+            Thread t = new Thread(() ->
+            {
+                for (int j = 0; j < 500; j++)
+                {
+                    mailbox.execute(() ->
+                    {
+                        if (inside.incrementAndGet() != 1)
+                            overlaps.incrementAndGet();
+                        commandsRun.incrementAndGet();
+                        inside.decrementAndGet();
+                    });
+                }
+            });
+            commandThreads.add(t);
+            t.start();
+        }
+        for (Thread t : commandThreads)
+            t.join(10000);
+        done.set(true);
+        send.join(5000);
+
+        assertEquals(2000, commandsRun.get());
+        assertEquals(0, overlaps.get());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
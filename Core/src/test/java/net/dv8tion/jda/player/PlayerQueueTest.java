@@ -0,0 +1,253 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player;
+
+import net.dv8tion.jda.player.source.AudioInfo;
+import net.dv8tion.jda.player.source.AudioSource;
+import net.dv8tion.jda.player.source.AudioStream;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class PlayerQueueTest
+{
+    @Test
+    public void behavesLikeAList()
+    {
+        //Random operations against an ArrayList, so the tree gets rotated in every way.
+        Random random = new Random(42);
+        PlayerQueue queue = new PlayerQueue();
+        List<AudioSource> expected = new ArrayList<>();
+        for (int i = 0; i < 5000; i++)
+        {
+            int op = random.nextInt(10);
+            if (op < 4 || expected.isEmpty())
+            {
+                int index = random.nextInt(expected.size() + 1);
+                AudioSource source = source(i);
+                queue.add(index, source);
+                expected.add(index, source);
+            }
+            else if (op < 6)
+            {
+                AudioSource source = source(i);
+                queue.add(source);
+                expected.add(source);
+            }
+            else if (op < 8)
+            {
+                int index = random.nextInt(expected.size());
+                assertSame(expected.remove(index), queue.remove(index));
+            }
+            else if (op < 9)
+            {
+                int index = random.nextInt(expected.size());
+                AudioSource source = source(i);
+                assertSame(expected.set(index, source), queue.set(index, source));
+            }
+            else
+            {
+                assertSame(expected.isEmpty() ? null : expected.remove(0), queue.poll());
+            }
+            assertEquals(expected.size(), queue.size());
+        }
+        assertEquals(expected, new ArrayList<>(queue));
+        for (int i = 0; i < expected.size(); i++)
+            assertSame(expected.get(i), queue.get(i));
+    }
+
+    @Test
+    public void snapshotsDontSeeLaterChanges()
+    {
+        PlayerQueue queue = new PlayerQueue(Arrays.asList(source(0), source(1), source(2)));
+        List<AudioSource> snapshot = queue.snapshot();
+        Iterator<AudioSource> iterator = queue.iterator();
+
+        queue.poll();
+        queue.add(source(3));
+
+        assertEquals(3, snapshot.size());
+        assertEquals("0", snapshot.get(0).getSource());
+        assertEquals("0", iterator.next().getSource());
+        assertEquals("1", queue.peek().getSource());
+    }
+
+    @Test
+    public void addAllKeepsTheOrder()
+    {
+        PlayerQueue queue = new PlayerQueue(Arrays.asList(source(0), source(3)));
+        queue.addAll(1, Arrays.asList(source(1), source(2)));
+
+        assertEquals(Arrays.asList("0", "1", "2", "3"), names(queue));
+    }
+
+    @Test
+    public void removeIfRemovesEveryMatch()
+    {
+        PlayerQueue queue = new PlayerQueue();
+        for (int i = 0; i < 100; i++)
+            queue.add(source(i));
+        assertTrue(queue.removeIf(source -> Integer.parseInt(source.getSource()) % 2 == 0));
+
+        assertEquals(50, queue.size());
+        assertEquals("1", queue.get(0).getSource());
+        assertEquals("99", queue.get(49).getSource());
+        assertFalse(queue.removeIf(source -> false));
+    }
+
+    @Test
+    public void pollRandomTakesThePeekedEntry()
+    {
+        PlayerQueue queue = new PlayerQueue();
+        for (int i = 0; i < 20; i++)
+            queue.add(source(i));
+
+        AudioSource peeked = queue.peekRandom();
+        assertSame(peeked, queue.peekRandom());
+        assertSame(peeked, queue.pollRandom());
+        assertFalse(queue.contains(peeked));
+    }
+
+    @Test
+    public void pollRandomTakesEveryEntryOnce()
+    {
+        PlayerQueue queue = new PlayerQueue();
+        for (int i = 0; i < 50; i++)
+            queue.add(source(i));
+
+        Set<String> polled = new HashSet<>();
+        AudioSource source;
+        while ((source = queue.pollRandom()) != null)
+            assertTrue(polled.add(source.getSource()));
+        assertEquals(50, polled.size());
+        assertNull(queue.peekRandom());
+    }
+
+    @Test
+    public void pollIfNextOnlyTakesTheExpectedEntry()
+    {
+        PlayerQueue queue = new PlayerQueue();
+        AudioSource first = source(1);
+        queue.add(first);
+        queue.add(source(2));
+
+        assertFalse(queue.pollIfNext(queue.get(1), false));
+        //Another source cut in line after the first one was checked.
+        queue.add(0, source(0));
+        assertFalse(queue.pollIfNext(first, false));
+        assertEquals(3, queue.size());
+
+        AudioSource front = queue.peek();
+        assertTrue(queue.pollIfNext(front, false));
+        assertSame(first, queue.peek());
+    }
+
+    @Test
+    public void pollIfNextTakesTheRandomPickOnly()
+    {
+        PlayerQueue queue = new PlayerQueue();
+        for (int i = 0; i < 20; i++)
+            queue.add(source(i));
+
+        //Nothing was picked yet.
+        assertFalse(queue.pollIfNext(queue.get(3), true));
+        AudioSource picked = queue.peekRandom();
+        queue.add(0, source(20));
+        assertSame("The pick follows its entry", picked, queue.peekRandom());
+        assertTrue(queue.pollIfNext(picked, true));
+        assertFalse(queue.contains(picked));
+        assertEquals(20, queue.size());
+    }
+
+    @Test
+    public void concurrentModificationsAreNotLost() throws InterruptedException
+    {
+        PlayerQueue queue = new PlayerQueue();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++)
+        {
+            int offset = t * 1000;
+            Thread thread = new Thread(() ->
+            {
+                for (int i = 0; i < 1000; i++)
+                {
+                    queue.add(i % 2 == 0 ? 0 : queue.size() / 2, source(offset + i));
+                    if (i % 3 == 0)
+                        queue.pollRandom();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join(10000);
+
+        //Every thread added 1000 and polled 334.
+        assertEquals(4 * (1000 - 334), queue.size());
+        assertEquals(queue.size(), new HashSet<>(names(queue)).size());
+    }
+
+    private static List<String> names(List<AudioSource> sources)
+    {
+        List<String> names = new ArrayList<>();
+        for (AudioSource source : sources)
+            names.add(source.getSource());
+        return names;
+    }
+
+    private static AudioSource source(int id)
+    {
+        return new TestSource(String.valueOf(id));
+    }
+
+    private static class TestSource implements AudioSource
+    {
+        private final String name;
+
+        private TestSource(String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public String getSource()
+        {
+            return name;
+        }
+
+        @Override
+        public AudioInfo getInfo()
+        {
+            return null;
+        }
+
+        @Override
+        public AudioStream asStream()
+        {
+            return null;
+        }
+
+        @Override
+        public File asFile(String path, boolean deleteOnExists)
+        {
+            return null;
+        }
+    }
+}
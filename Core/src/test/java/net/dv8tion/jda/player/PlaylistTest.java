@@ -0,0 +1,88 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player;
+
+import net.dv8tion.jda.player.source.AudioInfo;
+import net.dv8tion.jda.player.source.AudioSource;
+import net.dv8tion.jda.player.source.AudioStream;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PlaylistTest
+{
+    @Test
+    public void aSourceListedTwiceIsDeliveredTwiceInOrder() throws Exception
+    {
+        NamedSource repeated = new NamedSource("repeated");
+        NamedSource other = new NamedSource("other");
+        Playlist playlist = new Playlist("Duplicates", null);
+        playlist.sources = new ArrayList<>(Arrays.asList(repeated, other, repeated));
+
+        List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<AudioInfo>> futures =
+                playlist.resolveInfo(2, 1, (source, info) -> delivered.add(source.getSource()));
+
+        assertEquals(3, futures.size());
+        for (CompletableFuture<AudioInfo> future : futures)
+            assertNotNull(future.get(5, TimeUnit.SECONDS));
+        assertEquals("[test:repeated, test:other, test:repeated]", delivered.toString());
+    }
+
+    private static class NamedSource implements AudioSource
+    {
+        private final String name;
+        private final AudioInfo info = new AudioInfo();
+
+        private NamedSource(String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public String getSource()
+        {
+            return "test:" + name;
+        }
+
+        @Override
+        public AudioInfo getInfo()
+        {
+            return info;
+        }
+
+        @Override
+        public AudioStream asStream()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public File asFile(String path, boolean deleteOnExists)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AudioMixerTest
+{
+    @Test
+    public void mixedSamplesSaturateInsteadOfWrapping()
+    {
+        AudioMixer mixer = new AudioMixer();
+        mixer.play(constant(Short.MAX_VALUE, 4), 1.0F);
+        mixer.play(constant(Short.MAX_VALUE, 4), 1.0F);
+        byte[] pcm = new byte[16];
+        assertTrue(mixer.mix(pcm, 0, pcm.length, false));
+        for (int i = 0; i < pcm.length; i += 2)
+            assertEquals(Short.MAX_VALUE, sample(pcm, i));
+
+        mixer = new AudioMixer();
+        mixer.play(constant(Short.MIN_VALUE, 4), 1.0F);
+        pcm = constant(Short.MIN_VALUE, 4).pcm;
+        mixer.mix(pcm, 0, pcm.length, true);
+        assertEquals(Short.MIN_VALUE, sample(pcm, 0));
+    }
+
+    @Test
+    public void overlayAddsToTheFrame()
+    {
+        AudioMixer mixer = new AudioMixer();
+        mixer.play(constant(1000, 2), 1.0F);
+        byte[] pcm = constant(-300, 2).pcm;
+        mixer.mix(pcm, 0, pcm.length, true);
+        assertEquals(700, sample(pcm, 0));
+
+        mixer.play(constant(1000, 2), 1.0F);
+        pcm = constant(-300, 2).pcm;
+        mixer.mix(pcm, 0, pcm.length, false);
+        assertEquals(1000, sample(pcm, 0));
+    }
+
+    @Test
+    public void finishedInputsAreRemoved()
+    {
+        AudioMixer mixer = new AudioMixer();
+        AudioMixer.Input input = mixer.play(constant(1000, 2), 1.0F);
+        byte[] pcm = new byte[16];
+        mixer.mix(pcm, 0, pcm.length, false);
+        assertTrue(input.isFinished());
+        assertFalse(mixer.isActive());
+        //The clip ended halfway into the frame, the rest stays silent.
+        assertEquals(0, sample(pcm, 8));
+        assertFalse(mixer.mix(pcm, 0, pcm.length, false));
+    }
+
+    @Test
+    public void skipMovesInputsWithoutMixing()
+    {
+        AudioMixer mixer = new AudioMixer();
+        mixer.play(constant(1000, 4), 1.0F);
+        mixer.skip(8);
+        assertTrue(mixer.isActive());
+        mixer.skip(8);
+        assertFalse(mixer.isActive());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void playRejectsInputsPastTheCap()
+    {
+        AudioMixer mixer = new AudioMixer(2);
+        mixer.play(constant(0, 1), 1.0F);
+        mixer.play(constant(0, 1), 1.0F);
+        mixer.play(constant(0, 1), 1.0F);
+    }
+
+    //A clip of the provided amount of stereo samples, all at the same value.
+    private static PcmClip constant(int value, int frames)
+    {
+        byte[] pcm = new byte[frames * PcmRingBuffer.PCM_FRAME_SIZE];
+        for (int i = 0; i < pcm.length; i += 2)
+        {
+            pcm[i] = (byte) (value >> 8);
+            pcm[i + 1] = (byte) value;
+        }
+        return new PcmClip("constant", pcm);
+    }
+
+    private static int sample(byte[] pcm, int index)
+    {
+        return (short) ((pcm[index] << 8) | (pcm[index + 1] & 0xff));
+    }
+}
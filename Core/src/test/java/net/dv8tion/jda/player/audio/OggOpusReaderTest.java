@@ -0,0 +1,196 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.audio;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+public class OggOpusReaderTest
+{
+    private static final byte[] HEAD = "OpusHead".getBytes();
+    private static final byte[] TAGS = "OpusTags".getBytes();
+
+    @Test
+    public void skipsTheHeadersAndSplitsPackets() throws IOException
+    {
+        byte[] first = packet(1, 100);
+        byte[] second = packet(2, 3);
+        OggOpusReader reader = new OggOpusReader(new ByteArrayInputStream(
+                concat(page(HEAD), page(TAGS), page(first, second))));
+
+        assertArrayEquals(first, reader.readPacket());
+        assertArrayEquals(second, reader.readPacket());
+        assertNull(reader.readPacket());
+        assertTrue(reader.isFinished());
+        assertEquals(2, reader.getPacketCount());
+    }
+
+    @Test
+    public void reusesTheArrayForPacketsOfTheSameLength() throws IOException
+    {
+        byte[] first = packet(7, 120);
+        byte[] second = packet(8, 120);
+        OggOpusReader reader = new OggOpusReader(new ByteArrayInputStream(
+                concat(page(HEAD), page(TAGS), page(first, second))));
+
+        byte[] read = reader.readPacket();
+        assertArrayEquals(first, read);
+        assertSame(read, reader.readPacket());
+        assertArrayEquals(second, read);
+    }
+
+    @Test
+    public void joinsPacketsLongerThanASegment() throws IOException
+    {
+        //255 + 255 + 90, the two full segments continue the packet.
+        byte[] large = packet(3, 600);
+        OggOpusReader reader = new OggOpusReader(new ByteArrayInputStream(concat(page(HEAD), page(TAGS), page(large))));
+
+        assertArrayEquals(large, reader.readPacket());
+    }
+
+    @Test
+    public void joinsPacketsContinuedOnTheNextPage() throws IOException
+    {
+        byte[] large = packet(4, 300);
+        byte[] firstPart = new byte[255];
+        byte[] rest = new byte[45];
+        System.arraycopy(large, 0, firstPart, 0, 255);
+        System.arraycopy(large, 255, rest, 0, 45);
+        //The first page ends on a full segment, which means the packet goes on in the next page.
+        byte[] pages = concat(page(HEAD), page(TAGS), rawPage(new int[] {255}, firstPart), rawPage(new int[] {45}, rest));
+        OggOpusReader reader = new OggOpusReader(new ByteArrayInputStream(pages));
+
+        assertArrayEquals(large, reader.readPacket());
+    }
+
+    @Test
+    public void continuesWhereItStoppedWhenTheStreamIsStarved() throws IOException
+    {
+        byte[] first = packet(5, 50);
+        byte[] second = packet(6, 70);
+        StarvingInputStream in = new StarvingInputStream(concat(page(HEAD), page(TAGS), page(first), page(second)));
+        OggOpusReader reader = new OggOpusReader(in);
+
+        int attempts = 0;
+        byte[][] read = new byte[2][];
+        int count = 0;
+        while (count < 2 && attempts++ < 1000)
+        {
+            byte[] packet = reader.readPacket();
+            if (packet != null)
+                read[count++] = packet;
+            else
+                assertFalse(reader.isFinished());
+        }
+        assertArrayEquals(first, read[0]);
+        assertArrayEquals(second, read[1]);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsDataThatIsNotOgg() throws IOException
+    {
+        new OggOpusReader(new ByteArrayInputStream(new byte[64])).readPacket();
+    }
+
+    private static byte[] packet(int seed, int length)
+    {
+        byte[] packet = new byte[length];
+        for (int i = 0; i < length; i++)
+            packet[i] = (byte) (seed * 31 + i);
+        return packet;
+    }
+
+    //A page holding the provided complete packets.
+    private static byte[] page(byte[]... packets)
+    {
+        int segments = 0;
+        for (byte[] packet : packets)
+            segments += packet.length / 255 + 1;
+        int[] lacing = new int[segments];
+        int i = 0;
+        for (byte[] packet : packets)
+        {
+            for (int left = packet.length; left >= 0; left -= 255)
+                lacing[i++] = Math.min(left, 255);
+        }
+        return rawPage(lacing, concat(packets));
+    }
+
+    private static byte[] rawPage(int[] lacing, byte[] body)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('O');
+        out.write('g');
+        out.write('g');
+        out.write('S');
+        //Version, type, granule position, serial, sequence and CRC, none of which the reader looks at.
+        out.write(new byte[22], 0, 22);
+        out.write(lacing.length);
+        for (int lace : lacing)
+            out.write(lace);
+        out.write(body, 0, body.length);
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts)
+            out.write(part, 0, part.length);
+        return out.toByteArray();
+    }
+
+    //Hands out a few bytes at a time, with nothing available on every other read, like a starved prefetch buffer.
+    private static class StarvingInputStream extends InputStream
+    {
+        private final byte[] data;
+        private int position = 0;
+        private boolean starve = false;
+
+        private StarvingInputStream(byte[] data)
+        {
+            this.data = data;
+        }
+
+        @Override
+        public int read()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            starve = !starve;
+            if (starve)
+                return 0;
+            if (position == data.length)
+                return -1;
+            int amount = Math.min(Math.min(len, 7), data.length - position);
+            System.arraycopy(data, position, b, off, amount);
+            position += amount;
+            return amount;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PcmRingBufferTest
+{
+    @Test
+    public void capacityIsRoundedUpToAPowerOfTwo()
+    {
+        assertEquals(16, new PcmRingBuffer(16).capacity());
+        assertEquals(32, new PcmRingBuffer(17).capacity());
+    }
+
+    @Test
+    public void readsWhatWasWrittenAcrossTheWrap()
+    {
+        PcmRingBuffer ring = new PcmRingBuffer(16);
+        byte[] out = new byte[16];
+        assertEquals(12, ring.write(sequence(0, 12), 0, 12));
+        assertEquals(12, ring.read(out, 0, 12));
+
+        //Starts at index 12 of 16, so this wraps around.
+        assertEquals(8, ring.write(sequence(12, 8), 0, 8));
+        assertEquals(8, ring.read(out, 0, 8));
+        assertArrayEquals(sequence(12, 8), slice(out, 8));
+    }
+
+    @Test
+    public void writeOnlyTakesWhatFits()
+    {
+        PcmRingBuffer ring = new PcmRingBuffer(16);
+        assertEquals(16, ring.write(new byte[24], 0, 24));
+        assertEquals(0, ring.write(new byte[4], 0, 4));
+        assertEquals(16, ring.available());
+    }
+
+    @Test
+    public void readIsRoundedDownToWholeFrames()
+    {
+        PcmRingBuffer ring = new PcmRingBuffer(16);
+        ring.write(sequence(0, 6), 0, 6);
+        byte[] out = new byte[8];
+        assertEquals(4, ring.read(out, 0, 8));
+        assertEquals(2, ring.available());
+    }
+
+    @Test
+    public void readsOfLessThanAFrameAreServedAsTheyAre()
+    {
+        PcmRingBuffer ring = new PcmRingBuffer(16);
+        ring.write(sequence(0, 2), 0, 2);
+        byte[] out = new byte[1];
+        assertEquals(1, ring.read(out, 0, 1));
+        assertEquals(0, out[0]);
+        assertEquals(1, ring.read(out, 0, 1));
+        assertEquals(1, out[0]);
+        assertEquals(0, ring.read(out, 0, 1));
+    }
+
+    @Test
+    public void finishedRingHandsOutTheRestThenEnds()
+    {
+        PcmRingBuffer ring = new PcmRingBuffer(16);
+        ring.write(sequence(0, 6), 0, 6);
+        ring.finish();
+        byte[] out = new byte[8];
+        //Once finished, a trailing partial frame is handed out as well.
+        assertEquals(6, ring.read(out, 0, 8));
+        assertEquals(-1, ring.read(out, 0, 8));
+    }
+
+    @Test
+    public void underrunsAreOnlyCountedOnceDataArrived()
+    {
+        PcmRingBuffer ring = new PcmRingBuffer(16);
+        byte[] out = new byte[8];
+        assertEquals(0, ring.read(out, 0, 8));
+        assertEquals(0, ring.getUnderrunCount());
+
+        ring.write(sequence(0, 4), 0, 4);
+        assertEquals(4, ring.read(out, 0, 8));
+        assertEquals(1, ring.getUnderrunCount());
+    }
+
+    @Test
+    public void skipIsRoundedDownToWholeFrames()
+    {
+        PcmRingBuffer ring = new PcmRingBuffer(16);
+        ring.write(sequence(0, 10), 0, 10);
+        assertEquals(8, ring.skip(10));
+        assertEquals(2, ring.available());
+    }
+
+    @Test
+    public void recycleGivesTheArrayBackOnce()
+    {
+        PcmBufferPool pool = new PcmBufferPool(1024);
+        PcmRingBuffer ring = new PcmRingBuffer(64, pool);
+        ring.recycle();
+        ring.recycle();
+        assertEquals(64, pool.getIdleBytes());
+
+        new PcmRingBuffer(64, pool);
+        assertEquals(1, pool.getHits());
+        assertEquals(0, pool.getIdleBytes());
+    }
+
+    private static byte[] sequence(int start, int length)
+    {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = (byte) (start + i);
+        return bytes;
+    }
+
+    private static byte[] slice(byte[] bytes, int length)
+    {
+        byte[] copy = new byte[length];
+        System.arraycopy(bytes, 0, copy, 0, length);
+        return copy;
+    }
+}
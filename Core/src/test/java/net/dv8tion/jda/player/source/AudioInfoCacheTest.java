@@ -0,0 +1,118 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.source;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AudioInfoCacheTest
+{
+    private static final long TTL = TimeUnit.HOURS.toMillis(1);
+    private static final String URL = "https://www.youtube.com/watch?v=abc";
+    private static final String SHORT_URL = "https://youtu.be/abc";
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException
+    {
+        file = File.createTempFile("audio-info", ".jsonl");
+        file.delete();
+    }
+
+    @After
+    public void deleteFile()
+    {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void persistedEntriesAreLoadedAgain()
+    {
+        AudioInfoCache cache = new AudioInfoCache(10, TTL, file);
+        cache.put(URL, info("abc", "Title"));
+
+        AudioInfoCache reloaded = new AudioInfoCache(10, TTL, file);
+        assertEquals("Title", reloaded.get(URL).getTitle());
+    }
+
+    @Test
+    public void invalidatedEntriesStayGoneAfterARestart() throws IOException
+    {
+        AudioInfoCache cache = new AudioInfoCache(10, TTL, file);
+        cache.put(URL, info("abc", "Title"));
+        cache.invalidate(URL);
+        assertNull(cache.get(URL));
+        assertEquals(2, lines());
+
+        AudioInfoCache reloaded = new AudioInfoCache(10, TTL, file);
+        assertNull(reloaded.get(URL));
+        assertEquals(0, reloaded.size());
+        assertEquals("Compaction drops the entry and its removal", 0, lines());
+    }
+
+    @Test
+    public void anEntryPutAfterItsInvalidationIsKept()
+    {
+        AudioInfoCache cache = new AudioInfoCache(10, TTL, file);
+        cache.put(URL, info("abc", "Old"));
+        cache.invalidate(URL);
+        cache.put(URL, info("abc", "New"));
+
+        AudioInfoCache reloaded = new AudioInfoCache(10, TTL, file);
+        assertEquals("New", reloaded.get(URL).getTitle());
+    }
+
+    @Test
+    public void invalidatingOneUrlRemovesTheSharedEntry()
+    {
+        AudioInfoCache cache = new AudioInfoCache(10, TTL, file);
+        cache.put(URL, info("abc", "Title"));
+        cache.put(SHORT_URL, info("abc", "Title"));
+        cache.invalidate(SHORT_URL);
+        assertNull(cache.get(URL));
+
+        AudioInfoCache reloaded = new AudioInfoCache(10, TTL, file);
+        assertNull(reloaded.get(URL));
+        assertNull(reloaded.get(SHORT_URL));
+    }
+
+    private int lines() throws IOException
+    {
+        return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size();
+    }
+
+    private static AudioInfo info(String id, String title)
+    {
+        JSONObject json = new JSONObject();
+        json.put("id", id);
+        json.put("extractor", "youtube");
+        json.put("title", title);
+        return AudioInfo.fromJson(json);
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.source;
+
+import net.dv8tion.jda.player.audio.PcmRingBuffer;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class BroadcastSourceTest
+{
+    private static final int JOIN_BYTES = BroadcastSource.JOIN_MILLIS * PcmRingBuffer.BYTES_PER_MILLISECOND;
+
+    @Test
+    public void latecomersJoinAtTheLiveEdge() throws IOException
+    {
+        FedSource fed = new FedSource("edge");
+        BroadcastSource broadcast = new BroadcastSource(fed);
+        try (AudioStream first = broadcast.asStream())
+        {
+            int fedBytes = 300 * PcmRingBuffer.BYTES_PER_MILLISECOND;
+            fed.stream.feed(sequence(fedBytes));
+            waitFor(() -> available(first) == fedBytes);
+
+            try (AudioStream second = broadcast.asStream())
+            {
+                assertEquals(2, broadcast.getListenerCount());
+                assertEquals(JOIN_BYTES, second.available());
+
+                byte[] out = new byte[JOIN_BYTES];
+                assertEquals(JOIN_BYTES, second.read(out, 0, out.length));
+                for (int i = 0; i < out.length; i++)
+                    assertEquals((byte) (fedBytes - JOIN_BYTES + i), out[i]);
+            }
+            //The first listener's cursor didn't move.
+            assertEquals(fedBytes, first.available());
+        }
+    }
+
+    @Test
+    public void readsReturnNothingInsteadOfWaiting() throws IOException
+    {
+        FedSource fed = new FedSource("starved");
+        BroadcastSource broadcast = new BroadcastSource(fed);
+        try (AudioStream stream = broadcast.asStream())
+        {
+            byte[] out = new byte[3840];
+            long start = System.nanoTime();
+            assertEquals(0, stream.read(out, 0, out.length));
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50));
+
+            fed.stream.feed(sequence(3840));
+            waitFor(() -> available(stream) == 3840);
+            assertEquals(3840, stream.read(out, 0, out.length));
+            assertEquals(0, stream.read(out, 0, out.length));
+        }
+    }
+
+    @Test
+    public void readsWholeFramesOnly() throws IOException
+    {
+        FedSource fed = new FedSource("frames");
+        BroadcastSource broadcast = new BroadcastSource(fed);
+        try (AudioStream stream = broadcast.asStream())
+        {
+            fed.stream.feed(sequence(10));
+            waitFor(() -> available(stream) == 10);
+            assertEquals(8, stream.read(new byte[16], 0, 16));
+        }
+    }
+
+    @Test
+    public void endsOnceTheSourceEndedAndWasRead() throws IOException
+    {
+        FedSource fed = new FedSource("end");
+        BroadcastSource broadcast = new BroadcastSource(fed);
+        try (AudioStream stream = broadcast.asStream())
+        {
+            fed.stream.feed(sequence(400));
+            fed.stream.end();
+            waitFor(() -> !broadcast.isDecoding());
+
+            byte[] out = new byte[1024];
+            assertEquals(400, stream.read(out, 0, out.length));
+            assertEquals(-1, stream.read(out, 0, out.length));
+            assertEquals(-1, stream.read());
+        }
+    }
+
+    @Test
+    public void theLastListenerStopsTheDecoder() throws IOException
+    {
+        FedSource fed = new FedSource("stop");
+        BroadcastSource broadcast = new BroadcastSource(fed);
+        AudioStream first = broadcast.asStream();
+        AudioStream second = broadcast.asStream();
+
+        first.close();
+        assertTrue(broadcast.isDecoding());
+        assertFalse(fed.stream.closed);
+
+        second.close();
+        assertFalse(broadcast.isDecoding());
+        assertEquals(0, broadcast.getListenerCount());
+        assertTrue(fed.stream.closed);
+    }
+
+    @Test(expected = IOException.class)
+    public void closedStreamsCantBeRead() throws IOException
+    {
+        AudioStream stream = new BroadcastSource(new FedSource("closed")).asStream();
+        stream.close();
+        stream.read(new byte[4], 0, 4);
+    }
+
+    @Test
+    public void aRetiredBroadcastJoinsItsReplacement() throws IOException
+    {
+        FedSource fed = new FedSource("retired");
+        BroadcastSource shared = BroadcastSource.of(fed);
+        assertSame(shared, BroadcastSource.of(fed));
+
+        shared.asStream().close();
+        BroadcastSource replacement = BroadcastSource.of(fed);
+        assertNotSame(shared, replacement);
+
+        //Like a player that got the old broadcast from of() right before its last listener left.
+        try (AudioStream stream = shared.asStream())
+        {
+            assertEquals(0, shared.getListenerCount());
+            assertEquals(1, replacement.getListenerCount());
+        }
+    }
+
+    private static int available(AudioStream stream)
+    {
+        try
+        {
+            return stream.available();
+        }
+        catch (IOException e)
+        {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition)
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean())
+        {
+            if (System.nanoTime() > deadline)
+                fail("Timed out waiting for the broadcast");
+            try
+            {
+                Thread.sleep(1);
+            }
+            catch (InterruptedException e)
+            {
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    private static byte[] sequence(int length)
+    {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = (byte) i;
+        return bytes;
+    }
+
+    //A source whose single stream hands out whatever the test feeds it, like a decoder's pipe.
+    private static class FedSource implements AudioSource
+    {
+        private final String name;
+        private final FedStream stream = new FedStream();
+
+        private FedSource(String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public String getSource()
+        {
+            return "test:" + name;
+        }
+
+        @Override
+        public AudioInfo getInfo()
+        {
+            return null;
+        }
+
+        @Override
+        public AudioStream asStream()
+        {
+            return stream;
+        }
+
+        @Override
+        public File asFile(String path, boolean deleteOnExists)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class FedStream extends AudioStream
+    {
+        private static final byte[] END = new byte[0];
+
+        private final LinkedBlockingQueue<byte[]> chunks = new LinkedBlockingQueue<>();
+        private byte[] current = null;
+        private int offset = 0;
+        private volatile boolean closed = false;
+
+        private void feed(byte[] bytes)
+        {
+            chunks.add(bytes);
+        }
+
+        private void end()
+        {
+            chunks.add(END);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == 1 ? single[0] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            try
+            {
+                if (current == null || offset == current.length)
+                {
+                    current = chunks.take();
+                    offset = 0;
+                }
+            }
+            catch (InterruptedException e)
+            {
+                throw new IOException("Interrupted", e);
+            }
+            if (current == END)
+                return -1;
+            int amount = Math.min(len, current.length - offset);
+            System.arraycopy(current, offset, b, off, amount);
+            offset += amount;
+            return amount;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.source;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class FFmpegProgressParserTest
+{
+    private static final String REPORT =
+            "bitrate=  1536.0kbits/s\n"
+            + "total_size=960000\n"
+            + "out_time_us=5000000\n"
+            + "out_time=00:00:05.000000\n"
+            + "dup_frames=1\n"
+            + "drop_frames=2\n"
+            + "speed=1.25x\n"
+            + "progress=continue\n";
+
+    @Test
+    public void parsesAReport()
+    {
+        DecoderTelemetry telemetry = feed(REPORT);
+
+        assertEquals(1, telemetry.getUpdateCount());
+        assertEquals(5000000, telemetry.getOutTimeMicros());
+        assertEquals(1.25F, telemetry.getSpeed(), 0.0001);
+        assertEquals(1536000, telemetry.getBitrate());
+        assertEquals(960000, telemetry.getTotalSize());
+        assertEquals(1, telemetry.getDuplicatedFrames());
+        assertEquals(2, telemetry.getDroppedFrames());
+        assertFalse(telemetry.isFinished());
+    }
+
+    @Test
+    public void reportsCanBeSplitAnywhere()
+    {
+        DecoderTelemetry telemetry = new DecoderTelemetry();
+        FFmpegProgressParser parser = new FFmpegProgressParser(telemetry);
+        byte[] bytes = REPORT.getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < bytes.length; i++)
+            parser.feed(bytes, i, 1);
+
+        assertEquals(1, telemetry.getUpdateCount());
+        assertEquals(5000000, telemetry.getOutTimeMicros());
+        assertEquals(1.25F, telemetry.getSpeed(), 0.0001);
+    }
+
+    @Test
+    public void unknownValuesKeepThePreviousOnes()
+    {
+        DecoderTelemetry telemetry = feed(REPORT + "bitrate=N/A\nspeed=N/A\nout_time_ms=6000000\nprogress=continue\n");
+
+        assertEquals(2, telemetry.getUpdateCount());
+        assertEquals(1536000, telemetry.getBitrate());
+        assertEquals(1.25F, telemetry.getSpeed(), 0.0001);
+        //Older FFmpeg versions only print out_time_ms, which is in microseconds as well.
+        assertEquals(6000000, telemetry.getOutTimeMicros());
+    }
+
+    @Test
+    public void endOfProgressFinishes()
+    {
+        DecoderTelemetry telemetry = feed("out_time_us=1000\r\nprogress=end\r\n");
+
+        assertTrue(telemetry.isFinished());
+    }
+
+    @Test
+    public void ignoresOtherOutput()
+    {
+        DecoderTelemetry telemetry = feed("Input #0, matroska,webm, from 'pipe:0':\n"
+                + "  Duration: N/A, start: 0.000000, bitrate: N/A\n"
+                + "a_key_that_is_far_too_long_to_be_one_of_ffmpegs_progress_keys=12\n");
+
+        assertEquals(0, telemetry.getUpdateCount());
+    }
+
+    @Test
+    public void fallingBehindIsJudgedByTheLeadOverPlayback()
+    {
+        AudioTimestamp played = AudioTimestamp.fromSeconds(5);
+        DecoderTelemetry telemetry = feed("out_time_us=5500000\nspeed=4x\nprogress=continue\n");
+        assertFalse("Only judged after the startup report", telemetry.isFallingBehind(played));
+
+        telemetry = feed("out_time_us=5000000\nspeed=4x\nprogress=continue\n"
+                + "out_time_us=5500000\nspeed=4x\nprogress=continue\n");
+        assertEquals(500, telemetry.getLeadMillis(played));
+        assertTrue("Fast, but barely ahead", telemetry.isFallingBehind(played));
+    }
+
+    @Test
+    public void aThrottledDecoderIsntFallingBehind()
+    {
+        //Paused playback: the decoder waited on a full buffer, which drags its average speed down.
+        DecoderTelemetry telemetry = feed("out_time_us=30000000\nspeed=0.5x\nprogress=continue\n"
+                + "out_time_us=30000000\nspeed=0.3x\nprogress=continue\n");
+        assertFalse(telemetry.isFallingBehind(AudioTimestamp.fromSeconds(10)));
+    }
+
+    @Test
+    public void theLeadCountsFromWhereTheDecoderStarted()
+    {
+        DecoderTelemetry telemetry = new DecoderTelemetry();
+        telemetry.setStartPosition(AudioTimestamp.fromSeconds(60));
+        byte[] bytes = "out_time_us=2000000\nprogress=continue\n".getBytes(StandardCharsets.US_ASCII);
+        new FFmpegProgressParser(telemetry).feed(bytes, 0, bytes.length);
+
+        assertEquals(62000, telemetry.getDecodedPosition().getTotalMilliseconds());
+        assertEquals(1500, telemetry.getLeadMillis(AudioTimestamp.fromMilliseconds(60500)));
+    }
+
+    private static DecoderTelemetry feed(String output)
+    {
+        DecoderTelemetry telemetry = new DecoderTelemetry();
+        byte[] bytes = output.getBytes(StandardCharsets.US_ASCII);
+        new FFmpegProgressParser(telemetry).feed(bytes, 0, bytes.length);
+        return telemetry;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.source;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MediaUrlCacheTest
+{
+    @Test
+    public void readsTheExpiryParameter()
+    {
+        assertEquals(1700000000000L,
+                MediaUrlCache.getExpiry("https://r1.googlevideo.com/videoplayback?expire=1700000000&ei=abc&itag=251"));
+        assertEquals(1700000000000L, MediaUrlCache.getExpiry("https://cdn.example.com/audio.m4a?token=x&expires=1700000000"));
+        //YouTube's manifest URLs carry it as a path segment.
+        assertEquals(1700000000000L, MediaUrlCache.getExpiry("https://manifest.googlevideo.com/api/manifest/dash/expire/1700000000/ei/abc"));
+        assertEquals(1700000000000L, MediaUrlCache.getExpiry("https://cdn.example.com/a.mp3?EXPIRE=1700000000"));
+    }
+
+    @Test
+    public void urlsWithoutAnExpiryHaveNone()
+    {
+        assertEquals(-1, MediaUrlCache.getExpiry("https://cdn.example.com/audio.mp3"));
+        assertEquals(-1, MediaUrlCache.getExpiry("https://cdn.example.com/audio.mp3?noexpire=1700000000"));
+        assertEquals(-1, MediaUrlCache.getExpiry("https://cdn.example.com/audio.mp3?expire=soon"));
+        assertEquals(-1, MediaUrlCache.getExpiry("https://cdn.example.com/audio.mp3?expire=99999999999999999999"));
+    }
+
+    @Test
+    public void keepsUrlsUntilShortlyBeforeTheyExpire()
+    {
+        MediaUrlCache cache = new MediaUrlCache(10, 0);
+        long soon = System.currentTimeMillis() + MediaUrlCache.EXPIRY_MARGIN / 2;
+        long later = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(6);
+        cache.put("soon", info("https://cdn.example.com/a?expire=" + TimeUnit.MILLISECONDS.toSeconds(soon)));
+        cache.put("later", info("https://cdn.example.com/b?expire=" + TimeUnit.MILLISECONDS.toSeconds(later)));
+
+        assertNull(cache.get("soon"));
+        assertEquals("https://cdn.example.com/b?expire=" + TimeUnit.MILLISECONDS.toSeconds(later), cache.get("later").getUrl());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void urlsWithoutAnExpiryNeedATtl()
+    {
+        MediaUrlCache withoutTtl = new MediaUrlCache(10, 0);
+        withoutTtl.put("url", info("https://cdn.example.com/a.mp3"));
+        assertNull(withoutTtl.get("url"));
+
+        MediaUrlCache withTtl = new MediaUrlCache(10, TimeUnit.HOURS.toMillis(1));
+        withTtl.put("url", info("https://cdn.example.com/a.mp3"));
+        assertNotNull(withTtl.get("url"));
+    }
+
+    @Test
+    public void keepsACopyWithoutTheBulkyParts()
+    {
+        MediaUrlCache cache = new MediaUrlCache(10, TimeUnit.HOURS.toMillis(1));
+        JSONObject info = info("https://cdn.example.com/a.mp3");
+        info.put("formats", new Object[] {"format"});
+        info.put("acodec", "opus");
+        cache.put("url", info);
+        info.put("acodec", "changed");
+
+        MediaUrlCache.MediaUrl mediaUrl = cache.get("url");
+        assertEquals("opus", mediaUrl.getAudioCodec());
+        assertFalse(mediaUrl.getInfo().has("formats"));
+        assertTrue(info.has("formats"));
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsed()
+    {
+        MediaUrlCache cache = new MediaUrlCache(2, TimeUnit.HOURS.toMillis(1));
+        cache.put("a", info("https://cdn.example.com/a"));
+        cache.put("b", info("https://cdn.example.com/b"));
+        cache.get("a");
+        cache.put("c", info("https://cdn.example.com/c"));
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void invalidatedUrlsAreGone()
+    {
+        MediaUrlCache cache = new MediaUrlCache(10, TimeUnit.HOURS.toMillis(1));
+        cache.put("url", info("https://cdn.example.com/a.mp3"));
+        cache.invalidate("url");
+
+        assertNull(cache.get("url"));
+        assertEquals(1, cache.getInvalidations());
+    }
+
+    private static JSONObject info(String mediaUrl)
+    {
+        JSONObject info = new JSONObject();
+        info.put("url", mediaUrl);
+        info.put("format_id", "251");
+        return info;
+    }
+}
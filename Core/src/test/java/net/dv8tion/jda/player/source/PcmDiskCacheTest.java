@@ -0,0 +1,215 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.source;
+
+import net.dv8tion.jda.player.audio.PcmRingBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class PcmDiskCacheTest
+{
+    private static final AudioTimestamp DURATION = AudioTimestamp.fromMilliseconds(100);
+    private static final int TRACK_BYTES = 100 * PcmRingBuffer.BYTES_PER_MILLISECOND;
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException
+    {
+        directory = Files.createTempDirectory("pcm-cache").toFile();
+    }
+
+    @After
+    public void deleteDirectory()
+    {
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+                file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void aFullyReadTrackIsCommitted() throws IOException
+    {
+        PcmDiskCache cache = new PcmDiskCache(directory, 1 << 20);
+        byte[] audio = sequence(TRACK_BYTES);
+        try (AudioStream stream = cache.tee("track", new MemoryStream(audio), DURATION))
+        {
+            readFully(stream);
+        }
+
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(TRACK_BYTES, cache.getSize());
+        assertTrue(new File(directory, "track.pcm").isFile());
+        assertFalse(new File(directory, "track.pcm.part").exists());
+        try (AudioStream cached = cache.open("track"))
+        {
+            assertNotNull(cached);
+            assertArrayEquals(audio, readFully(cached));
+        }
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void aTrackCutShortIsAborted() throws IOException
+    {
+        PcmDiskCache cache = new PcmDiskCache(directory, 1 << 20);
+        //Ends at half the duration, like a decoder whose connection dropped.
+        try (AudioStream stream = cache.tee("track", new MemoryStream(sequence(TRACK_BYTES / 2)), DURATION))
+        {
+            readFully(stream);
+        }
+
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, directory.listFiles().length);
+        assertNull(cache.open("track"));
+    }
+
+    @Test
+    public void closingBeforeTheEndAborts() throws IOException
+    {
+        PcmDiskCache cache = new PcmDiskCache(directory, 1 << 20);
+        MemoryStream source = new MemoryStream(sequence(TRACK_BYTES));
+        AudioStream stream = cache.tee("track", source, DURATION);
+        assertEquals(3840, stream.read(new byte[3840], 0, 3840));
+        assertTrue(new File(directory, "track.pcm.part").exists());
+
+        stream.close();
+        assertTrue(source.closed);
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void tracksOfUnknownLengthArentCached() throws IOException
+    {
+        PcmDiskCache cache = new PcmDiskCache(directory, 1 << 20);
+        MemoryStream source = new MemoryStream(sequence(TRACK_BYTES));
+        assertSame(source, cache.tee("track", source, null));
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void aTrackIsOnlyWrittenByOneStream() throws IOException
+    {
+        PcmDiskCache cache = new PcmDiskCache(directory, 1 << 20);
+        try (AudioStream first = cache.tee("track", new MemoryStream(sequence(TRACK_BYTES)), DURATION))
+        {
+            MemoryStream second = new MemoryStream(sequence(TRACK_BYTES));
+            assertSame(second, cache.tee("track", second, DURATION));
+            readFully(first);
+        }
+
+        MemoryStream third = new MemoryStream(sequence(TRACK_BYTES));
+        assertSame("Already cached", third, cache.tee("track", third, DURATION));
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @Test
+    public void theLeastRecentlyUsedEntryIsEvicted() throws IOException
+    {
+        PcmDiskCache cache = new PcmDiskCache(directory, TRACK_BYTES * 2);
+        for (String key : new String[] {"a", "b"})
+        {
+            try (AudioStream stream = cache.tee(key, new MemoryStream(sequence(TRACK_BYTES)), DURATION))
+            {
+                readFully(stream);
+            }
+        }
+        cache.open("a").close();
+
+        try (AudioStream stream = cache.tee("c", new MemoryStream(sequence(TRACK_BYTES)), DURATION))
+        {
+            readFully(stream);
+        }
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(1, cache.getEvictions());
+        assertFalse(new File(directory, "b.pcm").exists());
+        assertTrue(new File(directory, "a.pcm").exists());
+    }
+
+    @Test
+    public void leftoverPartialFilesAreDeletedOnLoad() throws IOException
+    {
+        File partial = new File(directory, "crashed.pcm.part");
+        Files.write(partial.toPath(), sequence(16));
+        Files.write(new File(directory, "done.pcm").toPath(), sequence(16));
+
+        PcmDiskCache cache = new PcmDiskCache(directory, 1 << 20);
+        assertFalse(partial.exists());
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(16, cache.getSize());
+    }
+
+    private static byte[] readFully(AudioStream stream) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] frame = new byte[3840];
+        int amountRead;
+        while ((amountRead = stream.read(frame, 0, frame.length)) != -1)
+            out.write(frame, 0, amountRead);
+        return out.toByteArray();
+    }
+
+    private static byte[] sequence(int length)
+    {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = (byte) (i * 3);
+        return bytes;
+    }
+
+    private static class MemoryStream extends AudioStream
+    {
+        private final byte[] audio;
+        private int position = 0;
+        private volatile boolean closed = false;
+
+        private MemoryStream(byte[] audio)
+        {
+            this.audio = audio;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (position == audio.length)
+                return -1;
+            int amount = Math.min(len, audio.length - position);
+            System.arraycopy(audio, position, b, off, amount);
+            position += amount;
+            return amount;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            closed = true;
+        }
+    }
+}
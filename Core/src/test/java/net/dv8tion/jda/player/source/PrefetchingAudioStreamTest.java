@@ -0,0 +1,220 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.source;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class PrefetchingAudioStreamTest
+{
+    @Test
+    public void readsTheWholeSourceThenEnds() throws IOException
+    {
+        byte[] audio = sequence(50000);
+        try (PrefetchingAudioStream stream = new PrefetchingAudioStream(new MemoryStream(audio), 100))
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] frame = new byte[3840];
+            int amountRead;
+            long deadline = deadline();
+            while ((amountRead = stream.read(frame, 0, frame.length)) != -1)
+            {
+                assertEquals("Only whole frames before the end", 0, out.size() % 4);
+                out.write(frame, 0, amountRead);
+                assertTrue("Timed out reading", System.nanoTime() < deadline);
+            }
+            assertArrayEquals(audio, out.toByteArray());
+        }
+    }
+
+    @Test
+    public void singleBytesCanBeRead() throws IOException
+    {
+        byte[] audio = sequence(10);
+        try (PrefetchingAudioStream stream = new PrefetchingAudioStream(new MemoryStream(audio), 20))
+        {
+            for (byte b : audio)
+                assertEquals(b & 0xff, stream.read());
+            assertEquals(-1, stream.read());
+        }
+    }
+
+    @Test
+    public void readsReturnNothingWhileTheSourceIsStarved() throws IOException
+    {
+        BlockedStream source = new BlockedStream();
+        try (PrefetchingAudioStream stream = new PrefetchingAudioStream(source, 20))
+        {
+            assertEquals(0, stream.read(new byte[3840], 0, 3840));
+        }
+        assertTrue(source.closed);
+    }
+
+    @Test
+    public void closeStopsTheFillerAndClosesTheSource() throws IOException
+    {
+        MemoryStream source = new MemoryStream(sequence(8));
+        PrefetchingAudioStream stream = new PrefetchingAudioStream(source, 20);
+        stream.close();
+        stream.close();
+
+        assertTrue(source.closed);
+        waitFor(() -> stream.getActiveWorkers() == 0);
+        try
+        {
+            stream.read(new byte[4], 0, 4);
+            fail("Read a closed stream");
+        }
+        catch (IOException expected) {}
+        assertFalse(stream.seek(AudioTimestamp.fromMilliseconds(0)));
+    }
+
+    @Test
+    public void aFullRingCountsAsOverrunAndStillCloses() throws IOException
+    {
+        EndlessStream source = new EndlessStream();
+        PrefetchingAudioStream stream = new PrefetchingAudioStream(source, 20);
+        waitFor(() -> stream.getOverrunNanos() > 0);
+        assertEquals(stream.getBufferedBytes(), stream.available());
+
+        stream.close();
+        assertTrue(source.closed);
+        waitFor(() -> stream.getActiveWorkers() == 0);
+    }
+
+    @Test
+    public void seeksForwardWithinTheBuffer() throws IOException
+    {
+        byte[] audio = sequence(192 * 50);
+        try (PrefetchingAudioStream stream = new PrefetchingAudioStream(new MemoryStream(audio), 100))
+        {
+            waitFor(() -> stream.getBufferedBytes() == audio.length);
+            assertTrue(stream.seek(AudioTimestamp.fromMilliseconds(10)));
+            assertFalse("Already skipped past it", stream.seek(AudioTimestamp.fromMilliseconds(5)));
+
+            byte[] frame = new byte[4];
+            assertEquals(4, stream.read(frame, 0, 4));
+            assertEquals(audio[1920], frame[0]);
+        }
+    }
+
+    private static long deadline()
+    {
+        return System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    }
+
+    private static void waitFor(BooleanSupplier condition)
+    {
+        long deadline = deadline();
+        while (!condition.getAsBoolean())
+        {
+            if (System.nanoTime() > deadline)
+                fail("Timed out waiting for the filler");
+            Thread.yield();
+        }
+    }
+
+    private static byte[] sequence(int length)
+    {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = (byte) (i * 7);
+        return bytes;
+    }
+
+    private static class MemoryStream extends AudioStream
+    {
+        private final byte[] audio;
+        private int position = 0;
+        private volatile boolean closed = false;
+
+        private MemoryStream(byte[] audio)
+        {
+            this.audio = audio;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (position == audio.length)
+                return -1;
+            //Short, odd reads, like a pipe that doesn't care about frames.
+            int amount = Math.min(Math.min(len, 999), audio.length - position);
+            System.arraycopy(audio, position, b, off, amount);
+            position += amount;
+            return amount;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            closed = true;
+        }
+    }
+
+    private static class EndlessStream extends AudioStream
+    {
+        private volatile boolean closed = false;
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            return len;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            closed = true;
+        }
+    }
+
+    //A decoder that hasn't produced anything yet. Its read only returns once the stream is closed.
+    private static class BlockedStream extends AudioStream
+    {
+        private final CountDownLatch closedLatch = new CountDownLatch(1);
+        private volatile boolean closed = false;
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            try
+            {
+                closedLatch.await();
+            }
+            catch (InterruptedException e)
+            {
+                throw new IOException("Interrupted", e);
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            closed = true;
+            closedLatch.countDown();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.dv8tion.jda.player.source;
+
+import net.dv8tion.jda.player.source.ProcessScheduler.Priority;
+import net.dv8tion.jda.player.source.ProcessScheduler.Ticket;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class ProcessSchedulerTest
+{
+    @Test
+    public void admitsUpToTheMaximum() throws IOException
+    {
+        ProcessScheduler scheduler = new ProcessScheduler(2, 50);
+        Ticket first = admitted(scheduler, Priority.PLAYBACK);
+        Ticket second = admitted(scheduler, Priority.PLAYBACK);
+        Ticket third = scheduler.submit(Priority.PLAYBACK);
+
+        assertEquals(2, scheduler.getRunning());
+        assertEquals(1, scheduler.getWaiting(Priority.PLAYBACK));
+
+        first.close();
+        third.await();
+        assertEquals(2, scheduler.getRunning());
+        second.close();
+        third.close();
+        assertEquals(0, scheduler.getRunning());
+    }
+
+    @Test
+    public void morePressingClassesGoFirst() throws IOException
+    {
+        ProcessScheduler scheduler = new ProcessScheduler(1, 50);
+        Ticket running = admitted(scheduler, Priority.PLAYBACK);
+        Ticket bulk = scheduler.submit(Priority.BULK);
+        Ticket playback = scheduler.submit(Priority.PLAYBACK);
+
+        running.close();
+        playback.await();
+        assertEquals(1, scheduler.getWaiting(Priority.BULK));
+
+        playback.close();
+        bulk.await();
+        bulk.close();
+    }
+
+    @Test
+    public void classesAreCappedOnTheirOwn() throws IOException
+    {
+        ProcessScheduler scheduler = new ProcessScheduler(4, 50);
+        scheduler.setLimit(Priority.BULK, 1);
+        Ticket bulk = admitted(scheduler, Priority.BULK);
+        Ticket secondBulk = scheduler.submit(Priority.BULK);
+        Ticket metadata = admitted(scheduler, Priority.METADATA);
+
+        assertEquals(1, scheduler.getWaiting(Priority.BULK));
+        bulk.close();
+        secondBulk.await();
+        secondBulk.close();
+        metadata.close();
+    }
+
+    @Test
+    public void waitingTooLongFails()
+    {
+        ProcessScheduler scheduler = new ProcessScheduler(1, 20);
+        Ticket running = admitted(scheduler, Priority.PLAYBACK);
+        try
+        {
+            scheduler.submit(Priority.PLAYBACK).await();
+            fail("A process was admitted past the maximum");
+        }
+        catch (IOException expected) {}
+
+        assertEquals(1, scheduler.getRejectedCount(Priority.PLAYBACK));
+        assertEquals(0, scheduler.getWaiting(Priority.PLAYBACK));
+        running.close();
+    }
+
+    @Test
+    public void closingAWaitingTicketCancelsIt()
+    {
+        ProcessScheduler scheduler = new ProcessScheduler(1, 1000);
+        Ticket running = admitted(scheduler, Priority.PLAYBACK);
+        Ticket waiting = scheduler.submit(Priority.PREFETCH);
+        waiting.close();
+        try
+        {
+            waiting.await();
+            fail("A cancelled process was admitted");
+        }
+        catch (IOException expected) {}
+
+        assertEquals(1, scheduler.getCancelledCount(Priority.PREFETCH));
+        running.close();
+        assertEquals(0, scheduler.getRunning());
+    }
+
+    @Test
+    public void promotingARunningTicketMovesItsSlot() throws IOException
+    {
+        ProcessScheduler scheduler = new ProcessScheduler(4, 50);
+        scheduler.setLimit(Priority.PREFETCH, 1);
+        Ticket preloaded = admitted(scheduler, Priority.PREFETCH);
+        Ticket next = scheduler.submit(Priority.PREFETCH);
+
+        preloaded.promote(Priority.PLAYBACK);
+        assertEquals(Priority.PLAYBACK, preloaded.getPriority());
+        assertEquals(1, scheduler.getRunning(Priority.PLAYBACK));
+        //The promoted ticket no longer counts against the prefetch cap.
+        next.await();
+        assertEquals(1, scheduler.getRunning(Priority.PREFETCH));
+
+        preloaded.close();
+        next.close();
+        assertEquals(0, scheduler.getRunning(Priority.PLAYBACK));
+        assertEquals(0, scheduler.getRunning(Priority.PREFETCH));
+    }
+
+    @Test
+    public void promotingAWaitingTicketRequeuesIt() throws IOException
+    {
+        ProcessScheduler scheduler = new ProcessScheduler(1, 50);
+        Ticket running = admitted(scheduler, Priority.PLAYBACK);
+        Ticket bulk = scheduler.submit(Priority.BULK);
+        Ticket prefetch = scheduler.submit(Priority.PREFETCH);
+
+        bulk.promote(Priority.PLAYBACK);
+        running.close();
+        bulk.await();
+        assertEquals(1, scheduler.getWaiting(Priority.PREFETCH));
+
+        //Never demoted.
+        bulk.promote(Priority.BULK);
+        assertEquals(Priority.PLAYBACK, bulk.getPriority());
+        bulk.close();
+        prefetch.await();
+        prefetch.close();
+    }
+
+    @Test
+    public void withoutASchedulerEverythingIsAdmitted() throws IOException
+    {
+        ProcessScheduler previous = ProcessScheduler.getDefault();
+        ProcessScheduler.setDefault(null);
+        try
+        {
+            Ticket ticket = ProcessScheduler.admit(Priority.PLAYBACK);
+            assertEquals(Priority.PLAYBACK, ticket.getPriority());
+            assertEquals(Priority.PREFETCH,
+                    ProcessScheduler.runWith(Priority.PREFETCH, () -> ProcessScheduler.enqueue(Priority.PLAYBACK)).getPriority());
+            ticket.close();
+        }
+        finally
+        {
+            ProcessScheduler.setDefault(previous);
+        }
+    }
+
+    private static Ticket admitted(ProcessScheduler scheduler, Priority priority)
+    {
+        Ticket ticket = scheduler.submit(priority);
+        assertEquals("The process should have been admitted right away", 0, scheduler.getWaiting(priority));
+        return ticket;
+    }
+}
@@ -16,6 +16,7 @@
 
 package net.dv8tion.d4j.player;
 
+import net.dv8tion.jda.player.PlayerManager;
 import net.dv8tion.jda.player.Playlist;
 import net.dv8tion.jda.player.source.AudioInfo;
 import net.dv8tion.jda.player.source.AudioSource;
@@ -26,7 +27,6 @@ import sx.blah.discord.api.ClientBuilder;
 import sx.blah.discord.api.IDiscordClient;
 import sx.blah.discord.api.events.EventSubscriber;
 import sx.blah.discord.handle.audio.IAudioManager;
-import sx.blah.discord.handle.audio.impl.DefaultProvider;
 import sx.blah.discord.handle.impl.events.MessageReceivedEvent;
 import sx.blah.discord.handle.obj.IMessage;
 import sx.blah.discord.handle.obj.IVoiceChannel;
@@ -38,14 +38,21 @@ import sx.blah.discord.util.RateLimitException;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Bot
 {
     public static final float DEFAULT_VOLUME = 0.35f;
 
+    private final PlayerManager<MusicPlayer> players = new PlayerManager<>(guildId ->
+    {
+        MusicPlayer player = new MusicPlayer();
+        player.setVolume(DEFAULT_VOLUME);
+        return player;
+    });
+
     public static void main(String[] args)
     {
         try
@@ -121,17 +128,10 @@ public class Bot
 
         String message = event.getMessage().getContent();
         IAudioManager manager = msg.getGuild().getAudioManager();
-        MusicPlayer player;
-        if (manager.getAudioProvider() instanceof DefaultProvider)
-        {
-            player = new MusicPlayer();
-            player.setVolume(DEFAULT_VOLUME);
+        //The manager might have evicted the old player of this guild for being idle.
+        MusicPlayer player = players.getPlayer(msg.getGuild().getID());
+        if (manager.getAudioProvider() != player)
             manager.setAudioProvider(player);
-        }
-        else
-        {
-            player = (MusicPlayer) manager.getAudioProvider();
-        }
 
         if (message.startsWith("volume "))
         {
@@ -143,7 +143,7 @@ public class Bot
 
         if (message.equals("list"))
         {
-            List<AudioSource> queue = player.getAudioQueue();
+            List<AudioSource> queue = player.getAudioQueue().snapshot();
             if (queue.isEmpty())
             {
                 msg.getChannel().sendMessage("The queue is currently empty!");
@@ -277,9 +277,8 @@ public class Bot
 
         if (message.equals("reset"))
         {
-            player.stop();
-            player = new MusicPlayer();
-            player.setVolume(DEFAULT_VOLUME);
+            players.removePlayer(msg.getGuild().getID());
+            player = players.getPlayer(msg.getGuild().getID());
             manager.setAudioProvider(player);
             msg.getChannel().sendMessage("Music player has been completely reset.");
         }
@@ -325,62 +324,40 @@ public class Bot
                     msg.getChannel().sendMessage("Found a playlist with **" + sources.size() + "** entries.\n" +
                             "Proceeding to gather information and queue sources. This may take some time...");
                     final MusicPlayer fPlayer = player;
-                    Thread thread = new Thread()
+                    AtomicInteger processed = new AtomicInteger(0);
+                    AtomicInteger queued = new AtomicInteger(0);
+                    playlist.resolveInfo((source, info) ->
                     {
-                        @Override
-                        public void run()
+                        try
                         {
-                            for (Iterator<AudioSource> it = sources.iterator(); it.hasNext();)
+                            if (info != null && info.getError() == null)
                             {
-                                AudioSource source = it.next();
-                                AudioInfo info = source.getInfo();
-                                List<AudioSource> queue = fPlayer.getAudioQueue();
-                                if (info.getError() == null)
-                                {
-                                    queue.add(source);
-                                    if (fPlayer.isStopped())
-                                        fPlayer.play();
-                                }
-                                else
-                                {
-                                    try
-                                    {
-                                        msg.getChannel().sendMessage("Error detected, skipping source. Error:\n" + info.getError());
-                                    }
-                                    catch (MissingPermissionsException e)
-                                    {
-                                        e.printStackTrace();
-                                    }
-                                    catch (RateLimitException e)
-                                    {
-                                        e.printStackTrace();
-                                    }
-                                    catch (DiscordException e)
-                                    {
-                                        e.printStackTrace();
-                                    }
-                                    it.remove();
-                                }
+                                fPlayer.getAudioQueue().add(source);
+                                queued.incrementAndGet();
+                                if (fPlayer.isStopped())
+                                    fPlayer.play();
                             }
-                            try
+                            else
                             {
-                                msg.getChannel().sendMessage("Finished queuing provided playlist. Successfully queued **" + sources.size() + "** sources");
-                            }
-                            catch (MissingPermissionsException e)
-                            {
-                                e.printStackTrace();
-                            }
-                            catch (RateLimitException e)
-                            {
-                                e.printStackTrace();
-                            }
-                            catch (DiscordException e)
-                            {
-                                e.printStackTrace();
+                                msg.getChannel().sendMessage("Error detected, skipping source. Error:\n" +
+                                        (info != null ? info.getError() : "Could not resolve source info"));
                             }
+                            if (processed.incrementAndGet() == sources.size())
+                                msg.getChannel().sendMessage("Finished queuing provided playlist. Successfully queued **" + queued.get() + "** sources");
+                        }
+                        catch (MissingPermissionsException e)
+                        {
+                            e.printStackTrace();
+                        }
+                        catch (RateLimitException e)
+                        {
+                            e.printStackTrace();
+                        }
+                        catch (DiscordException e)
+                        {
+                            e.printStackTrace();
                         }
-                    };
-                    thread.start();
+                    });
                 }
                 else
                 {
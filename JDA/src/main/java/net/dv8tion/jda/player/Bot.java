@@ -33,14 +33,21 @@ import javax.security.auth.login.LoginException;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Bot extends ListenerAdapter
 {
     public static final float DEFAULT_VOLUME = 0.35f;
 
+    private final PlayerManager<MusicPlayer> players = new PlayerManager<>(guildId ->
+    {
+        MusicPlayer player = new MusicPlayer();
+        player.setVolume(DEFAULT_VOLUME);
+        return player;
+    });
+
     public static void main(String[] args)
     {
         try
@@ -119,17 +126,10 @@ public class Bot extends ListenerAdapter
 
         String message = event.getMessage().getContent();
         AudioManager manager = event.getGuild().getAudioManager();
-        MusicPlayer player;
-        if (manager.getSendingHandler() == null)
-        {
-            player = new MusicPlayer();
-            player.setVolume(DEFAULT_VOLUME);
+        //The manager might have evicted the old player of this guild for being idle.
+        MusicPlayer player = players.getPlayer(event.getGuild().getId());
+        if (manager.getSendingHandler() != player)
             manager.setSendingHandler(player);
-        }
-        else
-        {
-            player = (MusicPlayer) manager.getSendingHandler();
-        }
 
         if (message.startsWith("volume "))
         {
@@ -141,7 +141,7 @@ public class Bot extends ListenerAdapter
 
         if (message.equals("list"))
         {
-            List<AudioSource> queue = player.getAudioQueue();
+            List<AudioSource> queue = player.getAudioQueue().snapshot();
             if (queue.isEmpty())
             {
                 event.getChannel().sendMessage("The queue is currently empty!");
@@ -269,9 +269,8 @@ public class Bot extends ListenerAdapter
 
         if (message.equals("reset"))
         {
-            player.stop();
-            player = new MusicPlayer();
-            player.setVolume(DEFAULT_VOLUME);
+            players.removePlayer(event.getGuild().getId());
+            player = players.getPlayer(event.getGuild().getId());
             manager.setSendingHandler(player);
             event.getChannel().sendMessage("Music player has been completely reset.");
         }
@@ -317,32 +316,25 @@ public class Bot extends ListenerAdapter
                     event.getChannel().sendMessage("Found a playlist with **" + sources.size() + "** entries.\n" +
                             "Proceeding to gather information and queue sources. This may take some time...");
                     final MusicPlayer fPlayer = player;
-                    Thread thread = new Thread()
+                    AtomicInteger processed = new AtomicInteger(0);
+                    AtomicInteger queued = new AtomicInteger(0);
+                    playlist.resolveInfo((source, info) ->
                     {
-                        @Override
-                        public void run()
+                        if (info != null && info.getError() == null)
+                        {
+                            fPlayer.getAudioQueue().add(source);
+                            queued.incrementAndGet();
+                            if (fPlayer.isStopped())
+                                fPlayer.play();
+                        }
+                        else
                         {
-                            for (Iterator<AudioSource> it = sources.iterator(); it.hasNext();)
-                            {
-                                AudioSource source = it.next();
-                                AudioInfo info = source.getInfo();
-                                List<AudioSource> queue = fPlayer.getAudioQueue();
-                                if (info.getError() == null)
-                                {
-                                    queue.add(source);
-                                    if (fPlayer.isStopped())
-                                        fPlayer.play();
-                                }
-                                else
-                                {
-                                    event.getChannel().sendMessage("Error detected, skipping source. Error:\n" + info.getError());
-                                    it.remove();
-                                }
-                            }
-                            event.getChannel().sendMessage("Finished queuing provided playlist. Successfully queued **" + sources.size() + "** sources");
+                            event.getChannel().sendMessage("Error detected, skipping source. Error:\n" +
+                                    (info != null ? info.getError() : "Could not resolve source info"));
                         }
-                    };
-                    thread.start();
+                        if (processed.incrementAndGet() == sources.size())
+                            event.getChannel().sendMessage("Finished queuing provided playlist. Successfully queued **" + queued.get() + "** sources");
+                    });
                 }
                 else
                 {
@@ -16,8 +16,6 @@
 
 package net.dv8tion.jda.player;
 
-import java.io.IOException;
-import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.Random;
 
@@ -35,12 +33,17 @@ public class MusicPlayer extends AbstractMusicPlayer implements AudioSendHandler
 {
 
     public static final int PCM_FRAME_SIZE = 4;
+
+    //Older JDA builds have no AudioSendHandler#isOpus and encode whatever they get as PCM, so Opus frames would come
+    // out as noise. Only pass Opus through when the running JDA can be told about it.
+    private static final boolean JDA_ACCEPTS_OPUS = hasIsOpus();
+
     private byte[] buffer = new byte[AudioConnection.OPUS_FRAME_SIZE * PCM_FRAME_SIZE];
 
     @Override
     public boolean canProvide()
     {
-        return state.equals(State.PLAYING);
+        return hasAudioToProvide();
     }
 
     @Override
@@ -49,36 +52,31 @@ public class MusicPlayer extends AbstractMusicPlayer implements AudioSendHandler
 //        if (currentAudioStream == null || audioFormat == null)
 //            throw new IllegalStateException("The Audio source was never set for this player!\n" +
 //                    "Please provide an AudioInputStream using setAudioSource.");
+        return provideAudio(buffer);
+    }
+
+    //Tells JDA whether the frame that was just provided is already Opus encoded.
+    //No @Override as the JDA version this is built against doesn't declare it, newer ones pick it up at runtime.
+    public boolean isOpus()
+    {
+        return isProvidingOpus();
+    }
+
+    @Override
+    protected boolean supportsOpus()
+    {
+        return JDA_ACCEPTS_OPUS;
+    }
+
+    private static boolean hasIsOpus()
+    {
         try
         {
-            int amountRead = currentAudioStream.read(buffer, 0, buffer.length);
-            if (amountRead > -1)
-            {
-                if (amountRead < buffer.length) {
-                    Arrays.fill(buffer, amountRead, buffer.length - 1, (byte) 0);
-                }
-                if (volume != 1) {
-                    short sample;
-                    for (int i = 0; i < buffer.length; i+=2) {
-                        sample = (short)((buffer[i + 1] & 0xff) | (buffer[i] << 8));
-                        sample = (short) (sample * volume);
-                        buffer[i + 1] = (byte)(sample & 0xff);
-                        buffer[i] = (byte)((sample >> 8) & 0xff);
-                    }
-                }
-                return buffer;
-            }
-            else
-            {
-                sourceFinished();
-                return null;
-            }
+            return AudioSendHandler.class.getMethod("isOpus").getReturnType() == boolean.class;
         }
-        catch (IOException e)
+        catch (NoSuchMethodException e)
         {
-            LOG.debug("A source closed unexpectantly? Oh well I guess...");
-            sourceFinished();
+            return false;
         }
-        return null;
     }
 }